@@ -0,0 +1,34 @@
+package com.blezede.compressor;
+
+import java.io.IOException;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/23 11:00
+ * Description: One measured configuration. {@link #run()} is called over and over between
+ * {@link #setUp()} and {@link #tearDown()} and reports the bytes it produced, so the runner can
+ * track output size next to throughput and allocation.
+ */
+abstract class Benchmark {
+
+    private final String mName;
+
+    Benchmark(String name) {
+        this.mName = name;
+    }
+
+    String getName() {
+        return mName;
+    }
+
+    void setUp() throws IOException {
+    }
+
+    /**
+     * @return the number of bytes this operation wrote, 0 if it has no output
+     */
+    abstract long run() throws IOException;
+
+    void tearDown() {
+    }
+}
@@ -0,0 +1,140 @@
+package com.blezede.compressor;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/23 11:10
+ * Description: A small JMH-style harness. Every benchmark gets timed warmup iterations to let the JIT
+ * settle, then measured iterations that each run the operation until the iteration time is used up.
+ * Allocation is read from the per-thread counter of HotSpot, so it only covers the calling thread.
+ */
+class BenchmarkRunner {
+
+    private final int mWarmupIterations;
+    private final int mIterations;
+    private final long mIterationNanos;
+    private final com.sun.management.ThreadMXBean mThreads;
+
+    BenchmarkRunner(int warmupIterations, int iterations, long iterationMillis) {
+        this.mWarmupIterations = warmupIterations;
+        this.mIterations = Math.max(1, iterations);
+        this.mIterationNanos = iterationMillis * 1000000L;
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+            ((com.sun.management.ThreadMXBean) threads).setThreadAllocatedMemoryEnabled(true);
+            this.mThreads = (com.sun.management.ThreadMXBean) threads;
+        } else {
+            this.mThreads = null;
+        }
+    }
+
+    Result run(Benchmark benchmark) throws IOException {
+        benchmark.setUp();
+        try {
+            for (int i = 0; i < mWarmupIterations; i++) {
+                iterate(benchmark);
+            }
+            double[] throughput = new double[mIterations];
+            long operations = 0;
+            long allocated = 0;
+            long output = 0;
+            for (int i = 0; i < mIterations; i++) {
+                Iteration iteration = iterate(benchmark);
+                throughput[i] = iteration.operations * 1e9 / iteration.nanos;
+                operations += iteration.operations;
+                allocated += iteration.allocated;
+                output += iteration.output;
+            }
+            return new Result(benchmark.getName(), throughput,
+                    mThreads != null ? allocated / operations : -1, output / operations);
+        } finally {
+            benchmark.tearDown();
+        }
+    }
+
+    private Iteration iterate(Benchmark benchmark) throws IOException {
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = mThreads != null ? mThreads.getThreadAllocatedBytes(threadId) : 0;
+        long start = System.nanoTime();
+        long elapsed;
+        long operations = 0;
+        long output = 0;
+        do {
+            output += benchmark.run();
+            operations++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < mIterationNanos);
+        long allocated = mThreads != null ? mThreads.getThreadAllocatedBytes(threadId) - allocatedBefore : 0;
+        return new Iteration(operations, elapsed, allocated, output);
+    }
+
+    private static class Iteration {
+        final long operations;
+        final long nanos;
+        final long allocated;
+        final long output;
+
+        Iteration(long operations, long nanos, long allocated, long output) {
+            this.operations = operations;
+            this.nanos = nanos;
+            this.allocated = allocated;
+            this.output = output;
+        }
+    }
+
+    static class Result {
+        final String name;
+        /**
+         * Mean operations per second over the measured iterations.
+         */
+        final double opsPerSecond;
+        /**
+         * Standard deviation of the per-iteration throughput.
+         */
+        final double error;
+        /**
+         * Bytes allocated by one operation, -1 if the JVM can not tell.
+         */
+        final long allocatedPerOp;
+        /**
+         * Bytes written by one operation.
+         */
+        final long outputPerOp;
+
+        Result(String name, double[] throughput, long allocatedPerOp, long outputPerOp) {
+            this.name = name;
+            double sum = 0;
+            for (double value : throughput) {
+                sum += value;
+            }
+            double mean = sum / throughput.length;
+            double squares = 0;
+            for (double value : throughput) {
+                squares += (value - mean) * (value - mean);
+            }
+            this.opsPerSecond = mean;
+            this.error = throughput.length > 1 ? Math.sqrt(squares / (throughput.length - 1)) : 0;
+            this.allocatedPerOp = allocatedPerOp;
+            this.outputPerOp = outputPerOp;
+        }
+
+        Result(String name, double opsPerSecond, long allocatedPerOp, long outputPerOp) {
+            this.name = name;
+            this.opsPerSecond = opsPerSecond;
+            this.error = 0;
+            this.allocatedPerOp = allocatedPerOp;
+            this.outputPerOp = outputPerOp;
+        }
+
+        /**
+         * Allocation rate in MB/s.
+         */
+        double allocationRate() {
+            return allocatedPerOp < 0 ? -1 : allocatedPerOp * opsPerSecond / (1024 * 1024);
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package com.blezede.compressor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/23 15:20
+ * Description: Benchmarks the hot path of the library on a plain JVM: the sample size math, EXIF
+ * parsing, the passthrough copy and the whole compress pipeline over the synthetic corpus with the
+ * configurations apps use most. Prints throughput, allocation and output size per benchmark, writes
+ * them as csv and compares them against a baseline from an earlier run.
+ * <p>
+ * Options: --quick, --warmup n, --iterations n, --time ms, --filter text, --out file,
+ * --baseline file, --write-baseline file, --threshold percent, --fail-on-regression
+ */
+public class EngineBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String HEADER = "benchmark,ops_per_s,error,alloc_bytes_per_op,alloc_mb_per_s,output_bytes_per_op";
+    private static final int KB = 1024;
+
+    public static void main(String[] args) throws IOException {
+        int warmup = 3;
+        int iterations = 5;
+        long time = 1000;
+        String filter = null;
+        File out = new File("build/benchmark/results.csv");
+        File baseline = null;
+        File writeBaseline = null;
+        double threshold = 10;
+        boolean failOnRegression = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("--quick".equals(arg)) {
+                warmup = 1;
+                iterations = 2;
+                time = 300;
+            } else if ("--warmup".equals(arg)) {
+                warmup = Integer.parseInt(args[++i]);
+            } else if ("--iterations".equals(arg)) {
+                iterations = Integer.parseInt(args[++i]);
+            } else if ("--time".equals(arg)) {
+                time = Long.parseLong(args[++i]);
+            } else if ("--filter".equals(arg)) {
+                filter = args[++i];
+            } else if ("--out".equals(arg)) {
+                out = new File(args[++i]);
+            } else if ("--baseline".equals(arg)) {
+                baseline = new File(args[++i]);
+            } else if ("--write-baseline".equals(arg)) {
+                writeBaseline = new File(args[++i]);
+            } else if ("--threshold".equals(arg)) {
+                threshold = Double.parseDouble(args[++i]);
+            } else if ("--fail-on-regression".equals(arg)) {
+                failOnRegression = true;
+            } else if (arg.length() > 0) {
+                System.err.println("unknown option " + arg);
+                System.exit(1);
+            }
+        }
+
+        File workDir = File.createTempFile("compressor-benchmark", "");
+        if (!workDir.delete() || !workDir.mkdirs()) {
+            throw new IOException("can not create " + workDir);
+        }
+        List<BenchmarkRunner.Result> results = new ArrayList<>();
+        try {
+            SyntheticCorpus corpus = SyntheticCorpus.create(new File(workDir, "corpus"));
+            BenchmarkRunner runner = new BenchmarkRunner(warmup, iterations, time);
+            for (Benchmark benchmark : createSuite(corpus, new File(workDir, "out"))) {
+                if (filter != null && !benchmark.getName().contains(filter)) {
+                    continue;
+                }
+                BenchmarkRunner.Result result = runner.run(benchmark);
+                results.add(result);
+                System.out.println(format(result));
+            }
+        } finally {
+            delete(workDir);
+        }
+
+        write(results, out);
+        if (writeBaseline != null) {
+            write(results, writeBaseline);
+        }
+        if (baseline != null) {
+            int regressions = compare(results, read(baseline), threshold / 100);
+            if (regressions > 0 && failOnRegression) {
+                System.exit(2);
+            }
+        }
+    }
+
+    static List<Benchmark> createSuite(SyntheticCorpus corpus, final File outDir) {
+        List<Benchmark> suite = new ArrayList<>();
+        // sizes from thumbnails to 108MP sensors, in every orientation
+        final int[][] sizes = new int[64][2];
+        Random random = new Random(42);
+        for (int[] size : sizes) {
+            size[0] = 64 + random.nextInt(12000);
+            size[1] = 64 + random.nextInt(12000);
+        }
+        suite.add(new Benchmark("computeSize:x64") {
+            @Override
+            long run() {
+                int sum = 0;
+                for (int[] size : sizes) {
+                    sum += SampleSize.computeSize(size[0], size[1]);
+                }
+                return sum == Integer.MIN_VALUE ? 1 : 0;
+            }
+        });
+        suite.add(new Benchmark("scalePlan:x64") {
+            @Override
+            long run() {
+                int sum = 0;
+                for (int[] size : sizes) {
+                    sum += new ScalePlan(size[0], size[1], ScalePlan.getScale(size[0], size[1], 1280)).sampleSize;
+                }
+                return sum == Integer.MIN_VALUE ? 1 : 0;
+            }
+        });
+
+        final List<ByteBuffer> jpegs = new ArrayList<>();
+        for (SyntheticCorpus.Image image : corpus.getImages()) {
+            if (!image.png) {
+                jpegs.add(ByteBuffer.wrap(image.data).asReadOnlyBuffer());
+            }
+        }
+        suite.add(new Benchmark("exifOrientation:x" + jpegs.size()) {
+            @Override
+            long run() {
+                int sum = 0;
+                for (ByteBuffer jpeg : jpegs) {
+                    sum += Exif.getOrientation(jpeg);
+                }
+                return sum == Integer.MIN_VALUE ? 1 : 0;
+            }
+        });
+
+        final List<ByteBuffer> headers = new ArrayList<>();
+        for (SyntheticCorpus.Image image : corpus.getImages()) {
+            headers.add(ByteBuffer.wrap(image.data).asReadOnlyBuffer());
+        }
+        suite.add(new Benchmark("imageHeader:x" + headers.size()) {
+            @Override
+            long run() {
+                int sum = 0;
+                for (ByteBuffer header : headers) {
+                    sum += ImageHeader.parse(header).hasAlpha ? 1 : 0;
+                }
+                return sum == Integer.MIN_VALUE ? 1 : 0;
+            }
+        });
+
+        for (final int size : new int[]{64 * KB, 1024 * KB, 16 * 1024 * KB}) {
+            suite.add(new Benchmark("copyFile:" + (size / KB) + "KB") {
+                private File mSource;
+                private File mDest;
+
+                @Override
+                void setUp() throws IOException {
+                    if (!outDir.isDirectory() && !outDir.mkdirs()) {
+                        throw new IOException("can not create " + outDir);
+                    }
+                    mSource = new File(outDir, "copy-source");
+                    mDest = new File(outDir, "copy-dest");
+                    byte[] data = new byte[size];
+                    new Random(size).nextBytes(data);
+                    FileOutputStream out = new FileOutputStream(mSource);
+                    try {
+                        out.write(data);
+                    } finally {
+                        out.close();
+                    }
+                }
+
+                @Override
+                long run() throws IOException {
+                    if (IoUtils.copyFile(mSource.getPath(), mDest.getPath()).length() == 0) {
+                        throw new IOException("copy failed");
+                    }
+                    return size;
+                }
+
+                @Override
+                void tearDown() {
+                    mSource.delete();
+                    mDest.delete();
+                }
+            });
+        }
+
+        Map<String, JvmEngine[]> configs = new LinkedHashMap<>();
+        // what Compressor.with(context) does by default
+        configs.put("default", new JvmEngine[]{
+                new JvmEngine(false, 0, 0, 60, 0.1f), new JvmEngine(true, 0, 0, 60, 0.1f)});
+        configs.put("max1280", new JvmEngine[]{
+                new JvmEngine(false, 1280, 0, 60, 0.1f), new JvmEngine(true, 1280, 0, 60, 0.1f)});
+        // size targeting, the only configuration that encodes more than once
+        configs.put("max1280_200KB", new JvmEngine[]{
+                new JvmEngine(false, 1280, 200 * KB, 90, 0.1f), null});
+        // quality picked from the content instead of fixed
+        configs.put("max1280_auto", new JvmEngine[]{
+                new JvmEngine(false, 1280, 0, 60, 0.1f).setBitsPerPixel(1.5f), null});
+        // the same as max1280 through a second codec, progressive JPEG with optimized Huffman tables
+        configs.put("max1280_progressive", new JvmEngine[]{
+                new JvmEngine(false, 1280, 0, 60, 0.1f).setCodec(new ImageIOCodec(true)), null});
+        for (final SyntheticCorpus.Image image : corpus.getImages()) {
+            for (Map.Entry<String, JvmEngine[]> config : configs.entrySet()) {
+                final JvmEngine engine = config.getValue()[image.png ? 1 : 0];
+                if (engine == null) {
+                    continue;
+                }
+                final File dest = new File(outDir, image.name + "-" + config.getKey() + (image.png ? ".png" : ".jpg"));
+                suite.add(new Benchmark("compress:" + image.name + ":" + config.getKey()) {
+                    @Override
+                    void setUp() throws IOException {
+                        if (!outDir.isDirectory() && !outDir.mkdirs()) {
+                            throw new IOException("can not create " + outDir);
+                        }
+                    }
+
+                    @Override
+                    long run() throws IOException {
+                        return engine.compress(image.file, dest);
+                    }
+
+                    @Override
+                    void tearDown() {
+                        dest.delete();
+                    }
+                });
+            }
+        }
+        return suite;
+    }
+
+    private static String format(BenchmarkRunner.Result result) {
+        return String.format(Locale.US, "%-42s %12.2f +- %8.2f ops/s %14d B/op %9.1f MB/s %10d out B/op",
+                result.name, result.opsPerSecond, result.error, result.allocatedPerOp,
+                result.allocationRate(), result.outputPerOp);
+    }
+
+    /**
+     * Print how every result moved relative to the baseline.
+     *
+     * @param threshold the relative change that counts as a regression
+     * @return the number of regressions
+     */
+    static int compare(List<BenchmarkRunner.Result> results, Map<String, BenchmarkRunner.Result> baseline, double threshold) {
+        int regressions = 0;
+        System.out.println();
+        System.out.println(String.format(Locale.US, "%-42s %10s %10s %10s", "vs baseline", "ops/s", "alloc/op", "out/op"));
+        for (BenchmarkRunner.Result result : results) {
+            BenchmarkRunner.Result base = baseline.get(result.name);
+            if (base == null) {
+                System.out.println(String.format(Locale.US, "%-42s %10s", result.name, "new"));
+                continue;
+            }
+            double speed = change(result.opsPerSecond, base.opsPerSecond);
+            double allocation = change(result.allocatedPerOp, base.allocatedPerOp);
+            double output = change(result.outputPerOp, base.outputPerOp);
+            boolean regressed = speed < -threshold || allocation > threshold || output > threshold;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.println(String.format(Locale.US, "%-42s %+9.1f%% %+9.1f%% %+9.1f%%%s",
+                    result.name, speed * 100, allocation * 100, output * 100, regressed ? "  REGRESSION" : ""));
+        }
+        System.out.println(regressions + " regression(s) beyond " + Math.round(threshold * 100) + "%");
+        return regressions;
+    }
+
+    private static double change(double value, double base) {
+        if (base <= 0) {
+            return 0;
+        }
+        return (value - base) / base;
+    }
+
+    private static void write(List<BenchmarkRunner.Result> results, File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("can not create " + parent);
+        }
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), UTF_8);
+        PrintWriter writer = new PrintWriter(out);
+        try {
+            writer.println("# " + System.getProperty("java.vm.name") + " " + System.getProperty("java.version")
+                    + ", " + System.getProperty("os.name") + " " + System.getProperty("os.arch")
+                    + ", " + Runtime.getRuntime().availableProcessors() + " cpus");
+            writer.println(HEADER);
+            for (BenchmarkRunner.Result result : results) {
+                writer.println(String.format(Locale.US, "%s,%.2f,%.2f,%d,%.1f,%d", result.name, result.opsPerSecond,
+                        result.error, result.allocatedPerOp, result.allocationRate(), result.outputPerOp));
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    static Map<String, BenchmarkRunner.Result> read(File file) throws IOException {
+        Map<String, BenchmarkRunner.Result> results = new LinkedHashMap<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#") || line.equals(HEADER) || line.trim().length() == 0) {
+                    continue;
+                }
+                String[] columns = line.split(",");
+                results.put(columns[0], new BenchmarkRunner.Result(columns[0], Double.parseDouble(columns[1]),
+                        Long.parseLong(columns[3]), Long.parseLong(columns[5])));
+            }
+        } finally {
+            reader.close();
+        }
+        return results;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
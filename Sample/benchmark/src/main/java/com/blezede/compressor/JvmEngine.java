@@ -0,0 +1,134 @@
+package com.blezede.compressor;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/23 14:05
+ * Description: {@link Engine#compress} with an {@link ImageIOCodec} standing in for {@link BitmapCodec}.
+ * The decisions are the library's own, {@link ScalePlan} picks the scale and sample size and
+ * {@link QualityDriver} the quality, only mapping the source, the rotation transform and the temp file
+ * are done here with JDK classes. Absolute numbers differ from a phone, changes between two runs do not.
+ */
+class JvmEngine {
+
+    private final boolean mPng;
+    private final float mMaxWidthOrHeight;
+    private final float mMaxSize;
+    private final int mQuality;
+    private final float mSizeTolerance;
+    private float mBitsPerPixel;
+    private ImageCodec<BufferedImage, Void> mCodec = new ImageIOCodec(false);
+
+    JvmEngine(boolean png, float maxWidthOrHeight, float maxSize, int quality, float sizeTolerance) {
+        this.mPng = png;
+        this.mMaxWidthOrHeight = maxWidthOrHeight;
+        this.mMaxSize = maxSize;
+        this.mQuality = quality;
+        this.mSizeTolerance = sizeTolerance;
+    }
+
+    JvmEngine setBitsPerPixel(float bitsPerPixel) {
+        this.mBitsPerPixel = bitsPerPixel;
+        return this;
+    }
+
+    JvmEngine setCodec(ImageCodec<BufferedImage, Void> codec) {
+        this.mCodec = codec;
+        return this;
+    }
+
+    /**
+     * @return the length of the written output
+     */
+    long compress(File source, File dest) throws IOException {
+        ByteBuffer buffer = map(source);
+        ImageHeader header = ImageHeader.parse(buffer);
+        int[] size = header.hasSize() ? new int[]{header.width, header.height} : mCodec.probe(buffer.duplicate());
+        if (size == null) {
+            throw new IOException("no decoder for " + source);
+        }
+        ScalePlan plan = new ScalePlan(size[0], size[1], ScalePlan.getScale(size[0], size[1], mMaxWidthOrHeight));
+        BufferedImage bitmap = mCodec.decode(buffer.duplicate(), plan.sampleSize, plan.width, plan.height, null, null);
+        if (bitmap == null) {
+            throw new IOException("can not decode " + source);
+        }
+        // a codec that can not scale while decoding leaves the scale to the rotation pass
+        float radio = plan.getRemainingScale(bitmap.getWidth(), bitmap.getHeight());
+        int degree = header.degree;
+        if (degree != 0 || radio != 0) {
+            bitmap = rotatingOrScaleImage(bitmap, degree, radio);
+        }
+        return write(bitmap, dest);
+    }
+
+    private static ByteBuffer map(File source) throws IOException {
+        FileInputStream in = new FileInputStream(source);
+        try {
+            FileChannel channel = in.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            in.close();
+        }
+    }
+
+    private long write(final BufferedImage bitmap, File dest) throws IOException {
+        QualityDriver<BufferedImage> driver = new QualityDriver<>(mCodec, mPng ? "PNG" : "JPEG", mQuality, mMaxSize, mSizeTolerance, mBitsPerPixel);
+        int quality = driver.selectQuality(new QualityEstimator.Pixels() {
+            @Override
+            public void get(int[] out, int x, int y, int width, int height) {
+                bitmap.getRGB(x, y, width, height, out, 0, width);
+            }
+        }, bitmap.getWidth(), bitmap.getHeight());
+        QualitySearch.Result result = driver.search(bitmap, quality, 0, null);
+        File temp = IoUtils.createTempFile(dest);
+        ChannelOutputStream out = null;
+        try {
+            out = new ChannelOutputStream(new FileOutputStream(temp).getChannel());
+            if (!driver.write(bitmap, quality, result, out, null)) {
+                throw new IOException("can not encode " + dest);
+            }
+            out.close();
+            long length = out.count();
+            out = null;
+            if (!IoUtils.commit(temp, dest)) {
+                throw new IOException("can not move output to " + dest);
+            }
+            return length;
+        } finally {
+            IoUtils.closeQuietly(out);
+            temp.delete();
+        }
+    }
+
+    private static BufferedImage rotatingOrScaleImage(BufferedImage bitmap, int angle, float radio) {
+        AffineTransform matrix = new AffineTransform();
+        if (radio > 0)
+            matrix.scale(radio, radio);
+        if (angle > 0)
+            matrix.rotate(Math.toRadians(angle));
+        Rectangle2D bounds = matrix.createTransformedShape(
+                new Rectangle2D.Float(0, 0, bitmap.getWidth(), bitmap.getHeight())).getBounds2D();
+        AffineTransform translate = AffineTransform.getTranslateInstance(-bounds.getX(), -bounds.getY());
+        translate.concatenate(matrix);
+        int width = Math.max(1, (int) Math.round(bounds.getWidth()));
+        int height = Math.max(1, (int) Math.round(bounds.getHeight()));
+        BufferedImage target = new BufferedImage(width, height, bitmap.getColorModel().hasAlpha()
+                ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(bitmap, translate, null);
+        graphics.dispose();
+        return target;
+    }
+}
@@ -0,0 +1,187 @@
+package com.blezede.compressor;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/23 11:30
+ * Description: Generated test images covering the shapes the library sees in practice: small and
+ * camera sized photos, landscape, portrait and panorama aspect ratios, every rotating EXIF orientation
+ * and a PNG screenshot. The pixels come from a fixed seed, so every run compresses identical bytes.
+ */
+class SyntheticCorpus {
+
+    private static final long SEED = 0x5EED;
+    private static final float SOURCE_QUALITY = 0.92f;
+
+    static class Image {
+        final String name;
+        final int width;
+        final int height;
+        final int orientation;
+        final boolean png;
+        final byte[] data;
+        File file;
+
+        Image(String name, int width, int height, int orientation, boolean png, byte[] data) {
+            this.name = name;
+            this.width = width;
+            this.height = height;
+            this.orientation = orientation;
+            this.png = png;
+            this.data = data;
+        }
+    }
+
+    private final List<Image> mImages = new ArrayList<>();
+
+    /**
+     * Generate the corpus and store every image in {@code dir}.
+     */
+    static SyntheticCorpus create(File dir) throws IOException {
+        SyntheticCorpus corpus = new SyntheticCorpus();
+        corpus.add("vga_4x3", 640, 480, Exif.ORIENTATION_NORMAL, false);
+        corpus.add("hd_16x9", 1920, 1080, Exif.ORIENTATION_NORMAL, false);
+        corpus.add("camera_4x3_rot90", 4032, 3024, Exif.ORIENTATION_ROTATE_90, false);
+        corpus.add("camera_4x3_rot180", 4000, 3000, Exif.ORIENTATION_ROTATE_180, false);
+        corpus.add("pano_16x3_rot270", 8000, 1500, Exif.ORIENTATION_ROTATE_270, false);
+        corpus.add("screenshot_9x19", 1080, 2340, Exif.ORIENTATION_NORMAL, true);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("can not create " + dir);
+        }
+        for (Image image : corpus.mImages) {
+            image.file = new File(dir, image.name + (image.png ? ".png" : ".jpg"));
+            FileOutputStream out = new FileOutputStream(image.file);
+            try {
+                out.write(image.data);
+            } finally {
+                out.close();
+            }
+        }
+        return corpus;
+    }
+
+    List<Image> getImages() {
+        return Collections.unmodifiableList(mImages);
+    }
+
+    private void add(String name, int width, int height, int orientation, boolean png) throws IOException {
+        BufferedImage pixels = render(width, height, SEED + mImages.size());
+        byte[] data;
+        if (png) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(pixels, "png", out);
+            data = out.toByteArray();
+        } else {
+            data = encodeJpeg(pixels, SOURCE_QUALITY);
+            if (orientation != Exif.ORIENTATION_NORMAL) {
+                data = withOrientation(data, orientation);
+            }
+        }
+        mImages.add(new Image(name, width, height, orientation, png, data));
+    }
+
+    /**
+     * Smooth gradients with sensor-like noise and a few sharp edged shapes, which compresses roughly like a photo.
+     */
+    private static BufferedImage render(int width, int height, long seed) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int noise = (int) seed | 1;
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                noise ^= noise << 13;
+                noise ^= noise >>> 17;
+                noise ^= noise << 5;
+                int n = (noise & 0x0F) - 8;
+                int r = clamp(x * 255 / width + n);
+                int g = clamp(y * 255 / height + n);
+                int b = clamp(128 + (int) (64 * Math.sin((x + y) / 40.0)) + n);
+                pixels[row + x] = (r << 16) | (g << 8) | b;
+            }
+        }
+        Random random = new Random(seed);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        for (int i = 0; i < 40; i++) {
+            graphics.setColor(new Color(random.nextInt(0xFFFFFF)));
+            int w = 1 + random.nextInt(width / 4);
+            int h = 1 + random.nextInt(height / 4);
+            if (random.nextBoolean()) {
+                graphics.fillOval(random.nextInt(width), random.nextInt(height), w, h);
+            } else {
+                graphics.fillRect(random.nextInt(width), random.nextInt(height), w, h);
+            }
+        }
+        graphics.dispose();
+        return image;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    static byte[] encodeJpeg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(bytes);
+        try {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+            out.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Insert a minimal big endian EXIF segment holding only the orientation right after the SOI marker,
+     * where camera apps put it.
+     */
+    static byte[] withOrientation(byte[] jpeg, int orientation) {
+        byte[] tiff = {
+                'M', 'M', 0, 42, 0, 0, 0, 8,
+                // IFD0 with a single SHORT entry for tag 0x0112
+                0, 1,
+                0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, (byte) orientation, 0, 0,
+                // no next IFD
+                0, 0, 0, 0
+        };
+        byte[] header = {'E', 'x', 'i', 'f', 0, 0};
+        int length = 2 + header.length + tiff.length;
+        byte[] result = new byte[jpeg.length + 2 + length];
+        result[0] = jpeg[0];
+        result[1] = jpeg[1];
+        result[2] = (byte) 0xFF;
+        result[3] = (byte) 0xE1;
+        result[4] = (byte) (length >> 8);
+        result[5] = (byte) length;
+        System.arraycopy(header, 0, result, 6, header.length);
+        System.arraycopy(tiff, 0, result, 6 + header.length, tiff.length);
+        System.arraycopy(jpeg, 2, result, 4 + length, jpeg.length - 2);
+        return result;
+    }
+}
@@ -0,0 +1,319 @@
+package com.blezede.compressor;
+
+import android.os.SystemClock;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/3 9:45
+ * Description: An append-only log of what a named batch has done, so a batch that is launched again after
+ * the process died skips the sources it already compressed. The first line holds the fingerprint of the
+ * options the outputs were made with, a batch launched with other options starts over. Every other line
+ * is one record: P for a source that was queued, D with its outputs once it is done, F if it failed. The
+ * last record of a source wins, and a line cut off by a crash is ignored. Records are buffered and appended together, at most
+ * {@link #FLUSH_RECORDS} at a time or every {@link #FLUSH_INTERVAL_MS}, and when the batch ends. Whatever
+ * was still buffered when the process died is simply compressed again, outputs are written atomically.
+ */
+class BatchJournal {
+
+    static final int FLUSH_RECORDS = 32;
+    static final long FLUSH_INTERVAL_MS = 1000;
+
+    private static final String EXTENSION = ".journal";
+    private static final char PENDING = 'P';
+    private static final char DONE = 'D';
+    private static final char FAILED = 'F';
+    private static final char HEADER = '#';
+    private static final char SEPARATOR = '\t';
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * Rewrite the file on open once it holds this many more lines than sources.
+     */
+    private static final int COMPACT_SLACK = 256;
+    private static final Map<String, BatchJournal> sJournals = new HashMap<>();
+
+    private final File mFile;
+    private String mFingerprint;
+    private final Map<String, String[]> mDone = new HashMap<>();
+    private final StringBuilder mBuffer = new StringBuilder();
+    private int mBuffered;
+    private long mLastFlush;
+    private boolean mLoaded;
+
+    BatchJournal(File file, String fingerprint) {
+        this.mFile = file;
+        this.mFingerprint = fingerprint;
+    }
+
+    /**
+     * Every name has one journal per process, shared by all Compressor instances using it. Outputs recorded
+     * with another fingerprint are forgotten.
+     *
+     * @param fingerprint every option that decides the outputs of a source, see {@link Engine#getFingerprint()}
+     */
+    static BatchJournal get(File dir, String name, String fingerprint) {
+        File file = new File(dir, name + EXTENSION).getAbsoluteFile();
+        BatchJournal journal;
+        synchronized (sJournals) {
+            journal = sJournals.get(file.getPath());
+            if (journal == null) {
+                journal = new BatchJournal(file, fingerprint);
+                sJournals.put(file.getPath(), journal);
+                return journal;
+            }
+        }
+        journal.setFingerprint(fingerprint);
+        return journal;
+    }
+
+    /**
+     * @return what identifies the source across process restarts: its Uri, its path or else its position
+     */
+    static String keyOf(InputStreamProvider source, int position) {
+        if (source instanceof UriStreamProvider) {
+            return ((UriStreamProvider) source).getUri().toString();
+        }
+        String path = source.getPath();
+        if (path != null && path.length() > 0) {
+            return path;
+        }
+        return "#" + position;
+    }
+
+    /**
+     * @return the outputs of a source that was done before and whose files are all still there, or null
+     */
+    synchronized String[] getDone(String key) {
+        load();
+        String[] outputs = mDone.get(key);
+        if (outputs == null) {
+            return null;
+        }
+        for (String output : outputs) {
+            // sinks may report something other than a file, only files can be checked
+            if (output.startsWith(File.separator) && !new File(output).isFile()) {
+                mDone.remove(key);
+                return null;
+            }
+        }
+        return outputs;
+    }
+
+    synchronized void pending(String key) {
+        load();
+        append(PENDING, key, null);
+    }
+
+    /**
+     * @param outputs every output of the source, the source failed if any of them is ""
+     */
+    synchronized void finished(String key, String[] outputs) {
+        load();
+        boolean success = outputs.length > 0;
+        for (String output : outputs) {
+            if (output == null || output.length() == 0) {
+                success = false;
+            }
+        }
+        if (success) {
+            mDone.put(key, outputs);
+            append(DONE, key, outputs);
+        } else {
+            mDone.remove(key);
+            append(FAILED, key, null);
+        }
+    }
+
+    private synchronized void setFingerprint(String fingerprint) {
+        if (fingerprint.equals(mFingerprint)) {
+            return;
+        }
+        mFingerprint = fingerprint;
+        if (mLoaded) {
+            discard();
+        }
+    }
+
+    /**
+     * Append whatever is buffered.
+     */
+    synchronized void flush() {
+        if (mBuffered == 0) {
+            return;
+        }
+        mLastFlush = SystemClock.elapsedRealtime();
+        File dir = mFile.getParentFile();
+        if (dir != null && !dir.mkdirs() && !dir.isDirectory()) {
+            return;
+        }
+        // a new file starts with the fingerprint
+        String records = mFile.length() == 0 ? header() + mBuffer : mBuffer.toString();
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(mFile, true);
+            out.write(records.getBytes(UTF_8));
+            out.getFD().sync();
+            mBuffer.setLength(0);
+            mBuffered = 0;
+        } catch (IOException e) {
+            // the records stay buffered for the next flush
+            e.printStackTrace();
+        } finally {
+            Common.closeQuietly(out);
+        }
+    }
+
+    private void append(char type, String key, String[] outputs) {
+        mBuffer.append(type).append(SEPARATOR).append(escape(key));
+        if (outputs != null) {
+            for (String output : outputs) {
+                mBuffer.append(SEPARATOR).append(escape(output));
+            }
+        }
+        mBuffer.append('\n');
+        mBuffered++;
+        if (mBuffered >= FLUSH_RECORDS || SystemClock.elapsedRealtime() - mLastFlush >= FLUSH_INTERVAL_MS) {
+            flush();
+        }
+    }
+
+    private void load() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        mLastFlush = SystemClock.elapsedRealtime();
+        if (!mFile.isFile()) {
+            return;
+        }
+        int lines = 0;
+        boolean matches = false;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(mFile), UTF_8));
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = reader.read()) != -1) {
+                if (c != '\n') {
+                    line.append((char) c);
+                    continue;
+                }
+                // only complete lines count, the last one may have been cut off mid write
+                if (lines == 0) {
+                    matches = header().equals(line.toString() + '\n');
+                    if (!matches) {
+                        break;
+                    }
+                } else {
+                    replay(line.toString());
+                }
+                line.setLength(0);
+                lines++;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            Common.closeQuietly(reader);
+        }
+        if (!matches) {
+            // written with other options or by a version without fingerprints
+            discard();
+        } else if (lines > mDone.size() + COMPACT_SLACK) {
+            compact();
+        }
+    }
+
+    private String header() {
+        return HEADER + String.valueOf(SEPARATOR) + escape(mFingerprint) + '\n';
+    }
+
+    /**
+     * Forget every record, the journal starts over with the current fingerprint.
+     */
+    private void discard() {
+        mDone.clear();
+        mBuffer.setLength(0);
+        mBuffered = 0;
+        mFile.delete();
+    }
+
+    private void replay(String line) {
+        String[] fields = line.split(String.valueOf(SEPARATOR), -1);
+        if (fields.length < 2 || fields[0].length() != 1) {
+            return;
+        }
+        String key = unescape(fields[1]);
+        if (fields[0].charAt(0) == DONE && fields.length > 2) {
+            String[] outputs = new String[fields.length - 2];
+            for (int i = 0; i < outputs.length; i++) {
+                outputs[i] = unescape(fields[i + 2]);
+            }
+            mDone.put(key, outputs);
+        } else if (fields[0].charAt(0) == FAILED) {
+            mDone.remove(key);
+        }
+    }
+
+    /**
+     * Keep only the done records, through a temp file that replaces the journal once complete.
+     */
+    private void compact() {
+        mBuffer.append(header());
+        for (Map.Entry<String, String[]> entry : mDone.entrySet()) {
+            mBuffer.append(DONE).append(SEPARATOR).append(escape(entry.getKey()));
+            for (String output : entry.getValue()) {
+                mBuffer.append(SEPARATOR).append(escape(output));
+            }
+            mBuffer.append('\n');
+        }
+        File temp = null;
+        FileOutputStream out = null;
+        try {
+            temp = Common.createTempFile(mFile);
+            out = new FileOutputStream(temp);
+            out.write(mBuffer.toString().getBytes(UTF_8));
+            out.getFD().sync();
+            out.close();
+            out = null;
+            Common.commit(temp, mFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            Common.closeQuietly(out);
+            if (temp != null) {
+                temp.delete();
+            }
+            mBuffer.setLength(0);
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                builder.append(next == 't' ? '\t' : next == 'n' ? '\n' : next);
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+}
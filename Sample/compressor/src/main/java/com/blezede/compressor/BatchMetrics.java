@@ -0,0 +1,105 @@
+package com.blezede.compressor;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/22 14:02
+ * Description: Aggregates over every image of a batch that was not cancelled.
+ */
+public class BatchMetrics {
+
+    private final int mCount;
+    private final int mFailed;
+    private final long mWallNanos;
+    private final long mP50Nanos;
+    private final long mP95Nanos;
+    private final long mSourcePixels;
+    private final long mSourceBytes;
+    private final long mPeakBitmapBytes;
+
+    private BatchMetrics(int count, int failed, long wallNanos, long p50Nanos, long p95Nanos, long sourcePixels, long sourceBytes, long peakBitmapBytes) {
+        this.mCount = count;
+        this.mFailed = failed;
+        this.mWallNanos = wallNanos;
+        this.mP50Nanos = p50Nanos;
+        this.mP95Nanos = p95Nanos;
+        this.mSourcePixels = sourcePixels;
+        this.mSourceBytes = sourceBytes;
+        this.mPeakBitmapBytes = peakBitmapBytes;
+    }
+
+    static BatchMetrics of(List<CompressMetrics> images, long wallNanos) {
+        int count = images.size();
+        long[] latencies = new long[count];
+        int failed = 0;
+        long pixels = 0;
+        long bytes = 0;
+        long peak = 0;
+        for (int i = 0; i < count; i++) {
+            CompressMetrics metrics = images.get(i);
+            latencies[i] = metrics.getTotalNanos();
+            if (!metrics.isSuccessful()) {
+                failed++;
+            }
+            pixels += (long) metrics.getSourceWidth() * metrics.getSourceHeight();
+            bytes += Math.max(0, metrics.getSourceBytes());
+            peak = Math.max(peak, metrics.getPeakBitmapBytes());
+        }
+        Arrays.sort(latencies);
+        return new BatchMetrics(count, failed, wallNanos, percentile(latencies, 50), percentile(latencies, 95), pixels, bytes, peak);
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public int getFailedCount() {
+        return mFailed;
+    }
+
+    /**
+     * @return from the start of the batch until its last image was done
+     */
+    public long getWallNanos() {
+        return mWallNanos;
+    }
+
+    /**
+     * @return the median time a single image took
+     */
+    public long getP50Nanos() {
+        return mP50Nanos;
+    }
+
+    public long getP95Nanos() {
+        return mP95Nanos;
+    }
+
+    /**
+     * @return source megapixels decoded per second of wall time
+     */
+    public double getMegapixelsPerSecond() {
+        return mWallNanos > 0 ? mSourcePixels / 1e6 / (mWallNanos / 1e9) : 0;
+    }
+
+    public long getSourceBytes() {
+        return mSourceBytes;
+    }
+
+    /**
+     * @return the largest peak of a single image, concurrent images add up to more
+     */
+    public long getPeakBitmapBytes() {
+        return mPeakBitmapBytes;
+    }
+}
@@ -0,0 +1,82 @@
+package com.blezede.compressor;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/6 11:20
+ * Description: The default {@link ImageCodec}, BitmapFactory and Bitmap#compress. Sampling and scaling
+ * happen in one decode pass: the decoder samples by a power of two and scales the sampled pixels the rest
+ * of the way to the wanted size through its densities.
+ */
+public class BitmapCodec implements ImageCodec<Bitmap, Bitmap.Config> {
+
+    private static final BitmapCodec sInstance = new BitmapCodec();
+
+    public static BitmapCodec get() {
+        return sInstance;
+    }
+
+    @Override
+    public int[] probe(ByteBuffer source) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decode(source, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        return new int[]{options.outWidth, options.outHeight};
+    }
+
+    @Override
+    public Bitmap decode(ByteBuffer source, int sampleSize, int width, int height, Bitmap.Config config, Bitmap reuse) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = Math.max(1, sampleSize);
+        options.inPreferredConfig = config;
+        options.inPreferQualityOverSpeed = false;
+        options.inMutable = true;
+        options.inBitmap = reuse;
+        int targetLongSide = Math.max(width, height);
+        if (targetLongSide > 0) {
+            // the long side after sampling, BitmapFactory scales from there to the target through the densities
+            int[] size = sizeOf(source);
+            if (size != null) {
+                int sample = Integer.highestOneBit(options.inSampleSize);
+                int sampledLongSide = (Math.max(size[0], size[1]) + sample - 1) / sample;
+                if (sampledLongSide > targetLongSide) {
+                    options.inScaled = true;
+                    options.inDensity = sampledLongSide;
+                    options.inTargetDensity = targetLongSide;
+                }
+            }
+        }
+        try {
+            return decode(source, options);
+        } catch (IllegalArgumentException e) {
+            // the decoded image did not fit into reuse
+            return null;
+        }
+    }
+
+    @Override
+    public boolean encode(Bitmap image, String format, int quality, OutputStream out) throws IOException {
+        return image.compress(Bitmap.CompressFormat.valueOf(format), quality, out);
+    }
+
+    private int[] sizeOf(ByteBuffer source) {
+        ImageHeader header = ImageHeader.parse(source.asReadOnlyBuffer());
+        return header.hasSize() ? new int[]{header.width, header.height} : probe(source);
+    }
+
+    private static Bitmap decode(ByteBuffer source, BitmapFactory.Options options) {
+        if (source.hasArray()) {
+            return BitmapFactory.decodeByteArray(source.array(), source.arrayOffset() + source.position(), source.remaining(), options);
+        }
+        return BitmapFactory.decodeStream(new ByteBufferInputStream(source), null, options);
+    }
+}
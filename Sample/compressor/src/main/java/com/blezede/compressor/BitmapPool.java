@@ -0,0 +1,88 @@
+package com.blezede.compressor;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/12 14:10
+ * Description: Keeps recently released bitmaps around so the next image of a batch can decode and
+ * transform into them instead of allocating fresh pixel memory. Bitmaps are bucketed by their
+ * allocation size and the least recently released ones are recycled once the pool exceeds its byte cap.
+ * Reuse needs {@link Bitmap#reconfigure}, so below KitKat the pool simply recycles everything.
+ */
+class BitmapPool extends ReusePool<Bitmap> {
+
+    private static final BitmapPool sInstance = new BitmapPool(Runtime.getRuntime().maxMemory() / 8);
+
+    private BitmapPool(long maxSize) {
+        super(maxSize);
+    }
+
+    static BitmapPool get() {
+        return sInstance;
+    }
+
+    static boolean isReuseSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    }
+
+    static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        return 4;
+    }
+
+    /**
+     * @return a mutable bitmap large enough for {@code width x height} pixels of {@code config},
+     * reconfigured to exactly that size, or null if the pool has none
+     */
+    Bitmap get(int width, int height, Bitmap.Config config) {
+        if (!isReuseSupported() || width <= 0 || height <= 0) {
+            return null;
+        }
+        if (config == null) {
+            config = Bitmap.Config.ARGB_8888;
+        }
+        Bitmap bitmap = take((long) width * height * getBytesPerPixel(config));
+        if (bitmap == null) {
+            return null;
+        }
+        try {
+            bitmap.reconfigure(width, height, config);
+        } catch (IllegalArgumentException e) {
+            bitmap.recycle();
+            return null;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Hand a bitmap back. The caller must not touch it afterwards.
+     */
+    @Override
+    void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        if (!isReuseSupported() || !bitmap.isMutable()) {
+            bitmap.recycle();
+            return;
+        }
+        super.put(bitmap);
+    }
+
+    @Override
+    int sizeOf(Bitmap bitmap) {
+        return bitmap.getAllocationByteCount();
+    }
+
+    @Override
+    void evict(Bitmap bitmap) {
+        bitmap.recycle();
+    }
+}
@@ -0,0 +1,19 @@
+package com.blezede.compressor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/9 15:20
+ * Description: An {@link InputStreamProvider} that can hand out the whole source at once, e.g. a
+ * memory-mapped file or bytes that are already in memory. Compressor reads such a source a single
+ * time and shares the buffer between the bounds probe, the EXIF read and the full decode.
+ */
+public interface BufferStreamProvider extends InputStreamProvider {
+
+    /**
+     * @return the complete encoded image positioned at its first byte, or null to fall back to {@link #open()}
+     */
+    ByteBuffer openBuffer() throws IOException;
+}
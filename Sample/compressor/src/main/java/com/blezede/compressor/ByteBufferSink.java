@@ -0,0 +1,56 @@
+package com.blezede.compressor;
+
+import android.graphics.Bitmap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/26 10:10
+ * Description: Keeps every output in memory and hands it to a {@link Receiver} once complete, e.g. for an
+ * http client that takes a byte body.
+ */
+public class ByteBufferSink implements OutputSink {
+
+    public interface Receiver {
+
+        /**
+         * @param data the complete output, read-only
+         * @return what identifies the output, reported as the result of the source. "" counts as a failure
+         */
+        String onOutput(InputStreamProvider source, ByteBuffer data) throws IOException;
+    }
+
+    private final Receiver mReceiver;
+
+    public ByteBufferSink(Receiver receiver) {
+        this.mReceiver = receiver;
+    }
+
+    @Override
+    public OutputStream open(InputStreamProvider source, Bitmap.CompressFormat format) {
+        return new Buffer();
+    }
+
+    @Override
+    public String commit(InputStreamProvider source, OutputStream out) throws IOException {
+        return mReceiver.onOutput(source, ((Buffer) out).toByteBuffer());
+    }
+
+    @Override
+    public void abort(InputStreamProvider source, OutputStream out) {
+    }
+
+    /**
+     * Exposes its array without the copy {@link #toByteArray()} makes.
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count).asReadOnlyBuffer();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.blezede.compressor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/16 16:30
+ * Description: Writes encoder output straight into a file channel through a direct buffer. The buffer
+ * belongs to the calling thread and is reused by every image that thread writes, so streaming an
+ * encode to disk needs neither a staging copy of the encoded bytes nor a new buffer per image.
+ */
+class ChannelOutputStream extends OutputStream {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final ThreadLocal<ByteBuffer> sBuffers = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+    };
+
+    private final FileChannel mChannel;
+    private final ByteBuffer mBuffer;
+    private long mCount;
+    private boolean mClosed;
+
+    ChannelOutputStream(FileChannel channel) {
+        this.mChannel = channel;
+        this.mBuffer = sBuffers.get();
+        mBuffer.clear();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!mBuffer.hasRemaining()) {
+            drain();
+        }
+        mBuffer.put((byte) b);
+        mCount++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        mCount += len;
+        while (len > 0) {
+            if (!mBuffer.hasRemaining()) {
+                drain();
+            }
+            int count = Math.min(len, mBuffer.remaining());
+            mBuffer.put(b, off, count);
+            off += count;
+            len -= count;
+        }
+    }
+
+    /**
+     * @return the bytes written so far
+     */
+    long count() {
+        return mCount;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+    }
+
+    private void drain() throws IOException {
+        mBuffer.flip();
+        while (mBuffer.hasRemaining()) {
+            mChannel.write(mBuffer);
+        }
+        mBuffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        try {
+            drain();
+        } finally {
+            mBuffer.clear();
+            mChannel.close();
+        }
+    }
+}
@@ -5,16 +5,17 @@ import android.content.Context;
 import android.database.Cursor;
 import android.media.ExifInterface;
 import android.net.Uri;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
 import android.provider.MediaStore;
 import android.provider.OpenableColumns;
 
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.nio.channels.FileChannel;
 
 /**
  * com.blezede.compressor
@@ -124,34 +125,71 @@ public class Common {
      *
      * @param oldPath String 原文件路径 如：c:/fqf.txt
      * @param newPath String 复制后路径 如：f:/fqf.txt
-     * @return boolean
+     * @return newPath, or "" if the copy failed. A failed copy leaves nothing behind.
      */
     public static String copyFile(String oldPath, String newPath) {
-        if (oldPath == null || oldPath.length() == 0 || newPath == null || newPath.length() == 0)
-            return "";
-        File source = new File(oldPath);
-        if (!source.exists()) {
-            return "";
+        return IoUtils.copyFile(oldPath, newPath);
+    }
+
+    /**
+     * Copy a whole channel, e.g. of a {@link android.os.ParcelFileDescriptor}, to {@code dest} with
+     * {@link FileChannel#transferTo} and move it into place once complete.
+     */
+    public static boolean copy(FileChannel source, File dest) throws IOException {
+        return IoUtils.copy(source, dest);
+    }
+
+    /**
+     * Hard link {@code dest} to {@code source}, which needs Lollipop and both paths on the same file system.
+     */
+    public static boolean linkFile(File source, File dest) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return false;
         }
-        InputStream in = null;
-        FileOutputStream out = null;
+        File temp = null;
         try {
-            in = new FileInputStream(oldPath);
-            out = new FileOutputStream(newPath);
-            byte[] buffer = new byte[1024 * 4];
-            int length;
-            while ((length = in.read(buffer)) != -1) {
-                out.write(buffer, 0, length);
+            temp = createTempFile(dest);
+            // link() refuses to replace an existing file, so link a fresh name and rename it
+            if (!temp.delete()) {
+                return false;
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            return LinkCompat.link(source, temp) && commit(temp, dest);
+        } catch (IOException e) {
+            return false;
         } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * ParcelFileDescriptor only implements Closeable since Jelly Bean.
+     */
+    public static void closeQuietly(ParcelFileDescriptor descriptor) {
+        if (descriptor != null) {
             try {
-                if (in != null) in.close();
-                if (out != null) out.close();
-            } catch (IOException e) {
+                descriptor.close();
+            } catch (IOException ignored) {
             }
         }
-        return new File(newPath).exists() ? newPath : "";
+    }
+
+    public static void closeQuietly(Closeable closeable) {
+        IoUtils.closeQuietly(closeable);
+    }
+
+    /**
+     * Create a uniquely named temp file next to {@code dest}, so it can later be renamed into place atomically.
+     */
+    public static File createTempFile(File dest) throws IOException {
+        return IoUtils.createTempFile(dest);
+    }
+
+    /**
+     * Atomically move a completely written temp file to its final path, replacing what was there.
+     */
+    public static boolean commit(File temp, File dest) {
+        return IoUtils.commit(temp, dest);
     }
 }
@@ -0,0 +1,31 @@
+package com.blezede.compressor;
+
+import java.util.List;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/25 9:55
+ * Description: Streams the results of a batch started by {@link Compressor.Builder#launch(CompressCallback)}.
+ * All calls of one batch arrive one after the other on the callback executor, by default the main thread.
+ */
+public interface CompressCallback {
+
+    /**
+     * One source is done, in load order if {@link Compressor.Builder#orderedResults(boolean)} is set,
+     * otherwise in the order the sources finish.
+     */
+    void onResult(CompressResult result);
+
+    /**
+     * Right after every {@link #onResult(CompressResult)}.
+     *
+     * @param completed the results delivered so far
+     * @param total     the sources of the batch
+     */
+    void onProgress(int completed, int total);
+
+    /**
+     * Once after the last result, with all results in load order. Not called for a cancelled batch.
+     */
+    void onComplete(List<CompressResult> results);
+}
@@ -0,0 +1,154 @@
+package com.blezede.compressor;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/8 10:12
+ * Description: Runs at most {@code parallelism} compress tasks of one batch at the same time on top of
+ * another executor. By default every batch shares one process-wide worker pool whose size is bounded
+ * by both the core count and the heap, so several Compressor instances never decode more images at
+ * once than the memory can hold. Waiting tasks start in order of their priority, then in submission order.
+ */
+class CompressExecutor implements Executor {
+
+    /**
+     * Rough heap cost of a single compress task: decoded bitmap, rotated/scaled copy and encoded bytes.
+     */
+    private static final long TASK_MEMORY_ESTIMATE = 24 * 1024 * 1024;
+    private static final int KEEP_ALIVE_SECONDS = 30;
+    private static final AtomicLong sSequence = new AtomicLong();
+    private static volatile ThreadPoolExecutor sDefaultExecutor;
+
+    private final Executor mDelegate;
+    private final int mParallelism;
+    private final PriorityQueue<PriorityTask> mTasks = new PriorityQueue<>();
+    private int mActive;
+
+    CompressExecutor(Executor delegate, int parallelism) {
+        this.mDelegate = delegate;
+        this.mParallelism = parallelism > 0 ? parallelism : 1;
+    }
+
+    /**
+     * The number of images that can be compressed concurrently without exhausting the heap.
+     */
+    static int defaultParallelism() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        // leave three quarters of the heap to the app itself
+        long budget = Runtime.getRuntime().maxMemory() / 4;
+        int byMemory = (int) Math.max(1, budget / TASK_MEMORY_ESTIMATE);
+        return Math.max(1, Math.min(cores, byMemory));
+    }
+
+    /**
+     * The worker pool shared by every Compressor that has no executor of its own.
+     */
+    static Executor getDefault() {
+        if (sDefaultExecutor == null) {
+            synchronized (CompressExecutor.class) {
+                if (sDefaultExecutor == null) {
+                    int size = defaultParallelism();
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                            new PriorityBlockingQueue<Runnable>(), new CompressThreadFactory());
+                    executor.allowCoreThreadTimeOut(true);
+                    sDefaultExecutor = executor;
+                }
+            }
+        }
+        return sDefaultExecutor;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        execute(command, 0);
+    }
+
+    /**
+     * @param priority tasks with a higher priority start first
+     */
+    void execute(Runnable command, int priority) {
+        synchronized (this) {
+            mTasks.offer(new PriorityTask(command, priority));
+        }
+        scheduleNext(false);
+    }
+
+    /**
+     * A task the delegate rejects, e.g. because it was shut down, goes back to the queue without holding a
+     * slot, so it is retried by the next schedule instead of being lost, and the rejection is rethrown.
+     */
+    private void scheduleNext(boolean finished) {
+        PriorityTask next;
+        synchronized (this) {
+            if (finished) {
+                mActive--;
+            }
+            if (mActive >= mParallelism || (next = mTasks.poll()) == null) {
+                return;
+            }
+            mActive++;
+        }
+        try {
+            mDelegate.execute(next);
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                mActive--;
+                mTasks.offer(next);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Also queued by the shared pool, so tasks of different batches are ordered by priority as well.
+     */
+    private class PriorityTask implements Runnable, Comparable<PriorityTask> {
+
+        private final Runnable mCommand;
+        private final int mPriority;
+        private final long mSequence = sSequence.getAndIncrement();
+
+        PriorityTask(Runnable command, int priority) {
+            this.mCommand = command;
+            this.mPriority = priority;
+        }
+
+        @Override
+        public void run() {
+            try {
+                mCommand.run();
+            } finally {
+                scheduleNext(true);
+            }
+        }
+
+        @Override
+        public int compareTo(PriorityTask other) {
+            if (mPriority != other.mPriority) {
+                return mPriority > other.mPriority ? -1 : 1;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+
+    private static class CompressThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Compressor #" + mCount.getAndIncrement());
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.blezede.compressor;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/22 11:20
+ * Description: Where the time and memory of compressing one image went. Times are in nanoseconds, a stage
+ * that did not run reports 0. Only recorded when a {@link CompressMetricsListener} is registered.
+ */
+public class CompressMetrics {
+
+    private final String mSource;
+    private String mResult;
+    private long mStart;
+    private long mLast;
+    private long mOpenNanos;
+    private long mDecodeNanos;
+    private long mTransformNanos;
+    private long mWriteNanos;
+    private long mTotalNanos;
+    private int mSourceWidth;
+    private int mSourceHeight;
+    private int mOutputWidth;
+    private int mOutputHeight;
+    private long mSourceBytes = -1;
+    private long mPeakBitmapBytes;
+    private long mDecodedBytes;
+    private boolean mPassthrough;
+    private boolean mCacheHit;
+    private boolean mShared;
+    private final List<EncodeAttempt> mEncodeAttempts = new ArrayList<>();
+
+    CompressMetrics(String source) {
+        this.mSource = source;
+    }
+
+    /**
+     * One run of the encoder, size targeting may need several.
+     */
+    public static class EncodeAttempt {
+        private final int mQuality;
+        private final long mBytes;
+        private final long mNanos;
+
+        EncodeAttempt(int quality, long bytes, long nanos) {
+            this.mQuality = quality;
+            this.mBytes = bytes;
+            this.mNanos = nanos;
+        }
+
+        public int getQuality() {
+            return mQuality;
+        }
+
+        public long getBytes() {
+            return mBytes;
+        }
+
+        public long getNanos() {
+            return mNanos;
+        }
+    }
+
+    private long lap() {
+        long now = System.nanoTime();
+        long elapsed = now - mLast;
+        mLast = now;
+        return elapsed;
+    }
+
+    private static long getBytes(Bitmap bitmap) {
+        if (bitmap == null) {
+            return 0;
+        }
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT ? bitmap.getAllocationByteCount() : bitmap.getByteCount();
+    }
+
+    void start() {
+        mStart = System.nanoTime();
+        mLast = mStart;
+    }
+
+    void onOpened(long sourceBytes, int width, int height) {
+        mOpenNanos += lap();
+        mSourceBytes = sourceBytes;
+        mSourceWidth = width;
+        mSourceHeight = height;
+    }
+
+    void onDecoded(Bitmap bitmap) {
+        mDecodeNanos += lap();
+        mDecodedBytes = getBytes(bitmap);
+        mPeakBitmapBytes = Math.max(mPeakBitmapBytes, mDecodedBytes);
+    }
+
+    /**
+     * The decoded bitmap was still alive while {@code target} was drawn.
+     */
+    void onTransformed(Bitmap target) {
+        mTransformNanos += lap();
+        mPeakBitmapBytes = Math.max(mPeakBitmapBytes, mDecodedBytes + getBytes(target));
+    }
+
+    void onEncoded(int quality, long bytes) {
+        mEncodeAttempts.add(new EncodeAttempt(quality, bytes, lap()));
+    }
+
+    void onWritten() {
+        mWriteNanos += lap();
+    }
+
+    void onOutput(int width, int height) {
+        mOutputWidth = width;
+        mOutputHeight = height;
+    }
+
+    void onPassthrough() {
+        mPassthrough = true;
+    }
+
+    void onCacheHit() {
+        mCacheHit = true;
+    }
+
+    void onShared() {
+        mShared = true;
+    }
+
+    void finish(String result) {
+        mResult = result;
+        mTotalNanos = System.nanoTime() - mStart;
+    }
+
+    public String getSource() {
+        return mSource;
+    }
+
+    /**
+     * @return the output path, "" if the image failed
+     */
+    public String getResult() {
+        return mResult;
+    }
+
+    public boolean isSuccessful() {
+        return mResult != null && mResult.length() > 0;
+    }
+
+    /**
+     * @return reading the source and probing its bounds
+     */
+    public long getOpenNanos() {
+        return mOpenNanos;
+    }
+
+    public long getDecodeNanos() {
+        return mDecodeNanos;
+    }
+
+    /**
+     * @return rotating and scaling the decoded bitmap
+     */
+    public long getTransformNanos() {
+        return mTransformNanos;
+    }
+
+    /**
+     * @return the encodes in the order they ran, the last one is the output
+     */
+    public List<EncodeAttempt> getEncodeAttempts() {
+        return Collections.unmodifiableList(mEncodeAttempts);
+    }
+
+    public long getEncodeNanos() {
+        long nanos = 0;
+        for (EncodeAttempt attempt : mEncodeAttempts) {
+            nanos += attempt.mNanos;
+        }
+        return nanos;
+    }
+
+    /**
+     * @return flushing the output and moving it into place, or copying a passed through source
+     */
+    public long getWriteNanos() {
+        return mWriteNanos;
+    }
+
+    public long getTotalNanos() {
+        return mTotalNanos;
+    }
+
+    public int getSourceWidth() {
+        return mSourceWidth;
+    }
+
+    public int getSourceHeight() {
+        return mSourceHeight;
+    }
+
+    public int getOutputWidth() {
+        return mOutputWidth;
+    }
+
+    public int getOutputHeight() {
+        return mOutputHeight;
+    }
+
+    /**
+     * @return the encoded size of the source, -1 if unknown
+     */
+    public long getSourceBytes() {
+        return mSourceBytes;
+    }
+
+    /**
+     * @return the most bitmap memory this image held at once
+     */
+    public long getPeakBitmapBytes() {
+        return mPeakBitmapBytes;
+    }
+
+    /**
+     * @return whether the source was below ignoreBy and copied, linked or returned as is
+     */
+    public boolean isPassthrough() {
+        return mPassthrough;
+    }
+
+    /**
+     * @return whether the result came from the result cache
+     */
+    public boolean isCacheHit() {
+        return mCacheHit;
+    }
+
+    /**
+     * @return whether the result was shared by an identical compression that was running at the same time
+     */
+    public boolean isShared() {
+        return mShared;
+    }
+}
@@ -0,0 +1,20 @@
+package com.blezede.compressor;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/22 14:40
+ * Description: Receives per image and per batch measurements. Called on the thread that compressed the
+ * image, so keep it cheap and do not touch views from here.
+ */
+public interface CompressMetricsListener {
+
+    /**
+     * Fired after every image that was not cancelled, including failures and passed through sources
+     */
+    void onImageMetrics(CompressMetrics metrics);
+
+    /**
+     * Fired once after the last image of a batch
+     */
+    void onBatchMetrics(BatchMetrics metrics);
+}
@@ -0,0 +1,89 @@
+package com.blezede.compressor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/25 9:50
+ * Description: The outcome for one source of an asynchronous batch.
+ */
+public class CompressResult {
+
+    private final int mIndex;
+    private final InputStreamProvider mSource;
+    private final String mSourcePath;
+    private final String mPath;
+    private final List<String> mVariantPaths;
+
+    CompressResult(int index, InputStreamProvider source, String path) {
+        this.mIndex = index;
+        this.mSource = source;
+        this.mSourcePath = getPath(source);
+        this.mPath = path != null ? path : "";
+        this.mVariantPaths = Collections.singletonList(mPath);
+    }
+
+    /**
+     * @param variantPaths the output of every {@link Variant}, the source only succeeded if all did
+     */
+    CompressResult(int index, InputStreamProvider source, String[] variantPaths) {
+        this.mIndex = index;
+        this.mSource = source;
+        this.mSourcePath = getPath(source);
+        this.mVariantPaths = Collections.unmodifiableList(Arrays.asList(variantPaths));
+        String path = variantPaths[0];
+        for (String variantPath : variantPaths) {
+            if (variantPath == null || variantPath.length() == 0) {
+                path = "";
+                break;
+            }
+        }
+        this.mPath = path != null ? path : "";
+    }
+
+    /**
+     * @return the position of the source in the order it was loaded
+     */
+    public int getIndex() {
+        return mIndex;
+    }
+
+    public InputStreamProvider getSource() {
+        return mSource;
+    }
+
+    /**
+     * @return the path of the source, resolved on the worker that made this result so it is safe to read
+     * on the main thread, "" if the source has none
+     */
+    public String getSourcePath() {
+        return mSourcePath;
+    }
+
+    /**
+     * @return the output file, the one of the first variant if there are several, "" if the source failed
+     */
+    public String getPath() {
+        return mPath;
+    }
+
+    /**
+     * @return the output of every variant in the order they were added to the Builder, "" for each that
+     * failed. Without variants only the one output
+     */
+    public List<String> getVariantPaths() {
+        return mVariantPaths;
+    }
+
+    public boolean isSuccess() {
+        return mPath.length() > 0;
+    }
+
+    private static String getPath(InputStreamProvider source) {
+        // a Uri source may query the ContentResolver for it
+        String path = source != null ? source.getPath() : null;
+        return path != null ? path : "";
+    }
+}
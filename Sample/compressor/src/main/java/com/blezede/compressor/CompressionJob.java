@@ -0,0 +1,144 @@
+package com.blezede.compressor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/19 14:36
+ * Description: A handle on an asynchronous batch started by {@link Compressor.Builder#launch(CompressListener)}.
+ * Cancelling skips the images that have not started yet and stops the running ones at their next stage,
+ * i.e. after the current decode, transform or encode. Cancelled images are reported neither as success nor failure.
+ * As a {@link Future} it completes with the results of all sources in load order, or is done and cancelled
+ * as soon as {@link #cancel()} succeeds, while running images may still be stopping.
+ */
+public class CompressionJob implements Future<List<CompressResult>> {
+
+    private final CountDownLatch mPending;
+    /**
+     * Released by the last image or by a successful cancel, whichever comes first.
+     */
+    private final CountDownLatch mDone = new CountDownLatch(1);
+    private final AtomicInteger mRemaining;
+    private final CompressResult[] mResults;
+    private volatile boolean mCancelled;
+
+    CompressionJob(int count) {
+        this.mPending = new CountDownLatch(count);
+        this.mRemaining = new AtomicInteger(count);
+        this.mResults = new CompressResult[count];
+        if (count == 0) {
+            // nothing will ever finish, an empty batch is done from the start
+            mDone.countDown();
+        }
+    }
+
+    public void cancel() {
+        cancel(false);
+    }
+
+    /**
+     * Same as {@link #cancel()}, running images are never interrupted. The job is done and {@link #get()}
+     * throws right away, {@link #await()} still waits for the running images to stop.
+     *
+     * @return false if the batch was already done
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        synchronized (mDone) {
+            if (isDone()) {
+                return false;
+            }
+            mCancelled = true;
+            mDone.countDown();
+        }
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * @return whether every image of the batch has been compressed or has failed, or the batch was cancelled
+     */
+    public boolean isDone() {
+        return mDone.getCount() == 0;
+    }
+
+    /**
+     * Block until every image has finished, after a cancel until the running ones have stopped. Do not call
+     * this on the main thread if results are delivered there.
+     */
+    public void await() throws InterruptedException {
+        mPending.await();
+    }
+
+    /**
+     * @return false if the timeout elapsed before every image had finished
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return mPending.await(timeout, unit);
+    }
+
+    /**
+     * Wait for the whole batch.
+     *
+     * @throws CancellationException if the batch was cancelled
+     */
+    @Override
+    public List<CompressResult> get() throws InterruptedException, ExecutionException {
+        mDone.await();
+        return getResults();
+    }
+
+    @Override
+    public List<CompressResult> get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!mDone.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return getResults();
+    }
+
+    private List<CompressResult> getResults() {
+        throwIfCancelled();
+        synchronized (mResults) {
+            return Collections.unmodifiableList(new ArrayList<>(Arrays.asList(mResults)));
+        }
+    }
+
+    void setResult(CompressResult result) {
+        synchronized (mResults) {
+            mResults[result.getIndex()] = result;
+        }
+    }
+
+    void throwIfCancelled() {
+        if (mCancelled) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * @return true for exactly one call, the one finishing the last image
+     */
+    boolean onItemFinished() {
+        mPending.countDown();
+        if (mRemaining.decrementAndGet() != 0) {
+            return false;
+        }
+        synchronized (mDone) {
+            mDone.countDown();
+        }
+        return true;
+    }
+}
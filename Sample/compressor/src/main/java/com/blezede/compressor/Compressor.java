@@ -3,19 +3,17 @@ package com.blezede.compressor;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.net.Uri;
-import android.os.AsyncTask;
-import android.os.Handler;
-import android.os.Looper;
-import android.os.Message;
 import android.text.TextUtils;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 
 /**
  * com.blezede.compressor
@@ -25,19 +23,40 @@ import java.util.List;
 public class Compressor {
 
     private static final String CACHE_DIR = "compressor";
+    private static final String JOURNAL_DIR = "journal";
     private static final float INITIAL_VALUE = -1;
     private static final float DEFAULT_IGNORE_SIZE = 100 * 1024;
     private static final int DEFAULT_QUALITY = 60;
+    private static final float DEFAULT_SIZE_TOLERANCE = 0.1f;
+    private static final long DEFAULT_LARGE_IMAGE_PIXELS = 20 * 1000 * 1000;
+    /**
+     * Sources under {@link Builder#ignoreBy(float)} are copied to the target dir.
+     */
+    public static final int PASSTHROUGH_COPY = 0;
+    /**
+     * Sources under {@link Builder#ignoreBy(float)} are hard linked into the target dir where the file system
+     * allows it, otherwise copied. The output shares its data with the source.
+     */
+    public static final int PASSTHROUGH_LINK = 1;
+    /**
+     * Sources under {@link Builder#ignoreBy(float)} are not copied at all, their own path is the result.
+     */
+    public static final int PASSTHROUGH_SOURCE = 2;
     private Bitmap.CompressFormat mCompressFormat = Bitmap.CompressFormat.JPEG;
     private float mLeastCompressSize = DEFAULT_IGNORE_SIZE; //default 100KB
     private float mMaxCompressSize = INITIAL_VALUE;
     private String mTargetDir;
     private float mMaxWidthOrHeight = INITIAL_VALUE;
     private List<InputStreamProvider> mInputStreamProviders;
-    private static final int MSG_COMPRESS_SUCCESS = 1;
-    private static final int MSG_COMPRESS_FAILED = 2;
-    private CompressListener mCompressListener;
     private int mQuality = DEFAULT_QUALITY;
+    private CompressExecutor mExecutor;
+    private Engine mEngine;
+    private Map<InputStreamProvider, Integer> mPriorities;
+    private CompressMetricsListener mMetricsListener;
+    private Executor mCallbackExecutor;
+    private boolean mOrderedResults;
+    private SinkPipeline mSinkPipeline;
+    private BatchJournal mJournal;
 
     private Compressor() {
 
@@ -51,6 +70,77 @@ public class Compressor {
         this.mMaxWidthOrHeight = builder.maxWidthOrHeight;
         this.mInputStreamProviders = builder.streamProviders;
         this.mQuality = builder.quality;
+        this.mPriorities = builder.priorities;
+        this.mMetricsListener = builder.metricsListener;
+        this.mCallbackExecutor = builder.callbackExecutor != null ? builder.callbackExecutor : MainThreadExecutor.get();
+        this.mOrderedResults = builder.orderedResults;
+        if (builder.outputSink != null) {
+            this.mSinkPipeline = new SinkPipeline(builder.outputSink, mCompressFormat, builder.sinkCapacity);
+        }
+        Executor executor = builder.executor != null ? builder.executor : CompressExecutor.getDefault();
+        int parallelism = builder.parallelism > 0 ? builder.parallelism : CompressExecutor.defaultParallelism();
+        this.mExecutor = new CompressExecutor(executor, parallelism);
+        MemoryGovernor.get().register(builder.context);
+        this.mEngine = newEngine(builder, mCompressFormat, mMaxWidthOrHeight, mMaxCompressSize, mQuality)
+                .setPassthroughMode(builder.passthroughMode)
+                .setCoalesce(builder.coalesce)
+                .setBitsPerPixel(builder.bitsPerPixel);
+        if (!builder.variants.isEmpty()) {
+            if (mSinkPipeline != null) {
+                throw new IllegalArgumentException("illegal argument error:variants are written to the target dir, not to an output sink");
+            }
+            Engine[] variants = new Engine[builder.variants.size()];
+            for (int i = 0; i < variants.length; i++) {
+                Variant variant = builder.variants.get(i);
+                Bitmap.CompressFormat format = variant.getCompressFormat() != null ? variant.getCompressFormat() : mCompressFormat;
+                float maxSize = variant.getMaxFileSize() > 0 ? variant.getMaxFileSize() : mMaxCompressSize;
+                int quality = variant.getQuality() > 0 ? variant.getQuality() : mQuality;
+                variants[i] = newEngine(builder, format, variant.getMaxWidthOrHeight() > 0 ? variant.getMaxWidthOrHeight() : mMaxWidthOrHeight, maxSize, quality)
+                        .setBitsPerPixel(variant.getQuality() > 0 ? 0 : builder.bitsPerPixel)
+                        .setVariantName(variant.getName());
+            }
+            mEngine.setVariants(variants);
+        }
+        if (!TextUtils.isEmpty(builder.journal) && !TextUtils.isEmpty(mTargetDir)) {
+            // outputs made with other options are not done for this batch
+            this.mJournal = BatchJournal.get(new File(mTargetDir, JOURNAL_DIR), builder.journal,
+                    mEngine.getFingerprint() + '|' + (mSinkPipeline != null));
+        }
+        if (builder.resultCache && !TextUtils.isEmpty(mTargetDir)) {
+            ResultCache cache = ResultCache.get(mTargetDir);
+            cache.setLimits(builder.cacheMaxSize, builder.cacheMaxAge);
+            mEngine.setResultCache(cache, builder.cacheByContent);
+        }
+    }
+
+    private Engine newEngine(Builder builder, Bitmap.CompressFormat format, float maxWidthOrHeight, float maxSize, int quality) {
+        return new Engine(mTargetDir, format, mLeastCompressSize, maxWidthOrHeight, maxSize, quality)
+                .setSizeTolerance(builder.sizeTolerance)
+                .setNameStrategy(builder.nameStrategy)
+                .setLargeImageThreshold(builder.largeImageThreshold)
+                .setAlphaMasks(builder.alphaMasks)
+                .setCodec(builder.codec)
+                .setLosslessJpeg(builder.losslessJpeg)
+                .setKeepExif(builder.keepExif);
+    }
+
+    /**
+     * Cap the memory of the bitmap pool for the whole process, it is shared by all Compressor instances.
+     * 0 disables reuse. The default is an eighth of the heap.
+     */
+    public static void setBitmapPoolSize(long bytes) {
+        if (bytes >= 0)
+            BitmapPool.get().setMaxSize(bytes);
+    }
+
+    /**
+     * Cap the bitmap memory that compressions hold at the same time in the whole process, across all
+     * Compressor instances. Images wait for their share and decode at a lower resolution if they do not fit
+     * even alone, or while the system reports memory pressure. The default is a quarter of the heap.
+     */
+    public static void setMemoryBudget(long bytes) {
+        if (bytes > 0)
+            MemoryGovernor.get().setBudget(bytes);
     }
 
     public static Builder with(Context c) {
@@ -60,51 +150,214 @@ public class Compressor {
         return new Builder(c);
     }
 
-    private void launch() {
+    private CompressionJob launch() {
         if (mInputStreamProviders == null || mInputStreamProviders.size() <= 0) {
             throw new IllegalArgumentException("IllegalArgumentException : no source image found here");
         }
-        launch(null);
+        return launch(null, null);
     }
 
-
-    private void launch(CompressListener listener) {
-        this.mCompressListener = listener;
+    private CompressionJob launch(CompressListener listener, CompressCallback callback) {
+        final CompressionJob job = new CompressionJob(mInputStreamProviders.size());
+        final Batch batch = new Batch(job, new ResultDispatcher(job, mInputStreamProviders.size(), listener, callback,
+                mCallbackExecutor, mOrderedResults));
         Iterator<InputStreamProvider> iterator = mInputStreamProviders.iterator();
+        int index = 0;
 
         while (iterator.hasNext()) {
             final InputStreamProvider provider = iterator.next();
+            final int position = index++;
+            Integer priority = mPriorities.get(provider);
 
-            AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+            mExecutor.execute(new Runnable() {
                 @Override
                 public void run() {
-                    String result = Engine.compress(provider, mTargetDir, mCompressFormat, mLeastCompressSize, mMaxWidthOrHeight, mMaxCompressSize, mQuality);
-                    if (TextUtils.isEmpty(result)) {
-                        mHandler.sendMessage(mHandler.obtainMessage(MSG_COMPRESS_FAILED, provider.getPath()));
-                    } else if (new File(result).exists()) {
-                        mHandler.sendMessage(mHandler.obtainMessage(MSG_COMPRESS_SUCCESS, result));
-                    }
+                    batch.compress(provider, position);
                 }
-            });
+            }, priority != null ? priority : 0);
 
             iterator.remove();
         }
+        return job;
     }
 
     public List<String> get() {
+        if (mSinkPipeline != null || mJournal != null) {
+            return getThroughBatch();
+        }
         List<String> results = new ArrayList<>();
+        List<CompressMetrics> batchMetrics = mMetricsListener != null ? new ArrayList<CompressMetrics>() : null;
+        long batchStart = System.nanoTime();
         Iterator<InputStreamProvider> iterator = mInputStreamProviders.iterator();
 
         while (iterator.hasNext()) {
-            String result = Engine.compress(iterator.next(), mTargetDir, mCompressFormat, mLeastCompressSize, mMaxWidthOrHeight, mMaxCompressSize, mQuality);
-            if (!TextUtils.isEmpty(result)) {
-                results.add(result);
+            InputStreamProvider provider = iterator.next();
+            CompressMetrics metrics = batchMetrics != null ? new CompressMetrics(provider.getPath()) : null;
+            if (mEngine.hasVariants()) {
+                for (String result : mEngine.compressVariants(provider, null, metrics)) {
+                    if (!TextUtils.isEmpty(result)) {
+                        results.add(result);
+                    }
+                }
+            } else {
+                String result = mEngine.compress(provider, null, metrics);
+                if (!TextUtils.isEmpty(result)) {
+                    results.add(result);
+                }
+            }
+            if (metrics != null) {
+                mMetricsListener.onImageMetrics(metrics);
+                batchMetrics.add(metrics);
             }
             iterator.remove();
         }
+        if (batchMetrics != null) {
+            mMetricsListener.onBatchMetrics(BatchMetrics.of(batchMetrics, System.nanoTime() - batchStart));
+        }
+        return results;
+    }
+
+    /**
+     * Compress on the calling thread through a {@link Batch}, for the sink to write the previous image on its
+     * own while the next is encoded, and for the journal to skip what an earlier run already did.
+     */
+    private List<String> getThroughBatch() {
+        CompressionJob job = new CompressionJob(mInputStreamProviders.size());
+        Batch batch = new Batch(job, null);
+        Iterator<InputStreamProvider> iterator = mInputStreamProviders.iterator();
+        int index = 0;
+        while (iterator.hasNext()) {
+            batch.compress(iterator.next(), index++);
+            iterator.remove();
+        }
+        List<String> results = new ArrayList<>();
+        try {
+            for (CompressResult result : job.get()) {
+                for (String path : result.getVariantPaths()) {
+                    if (!TextUtils.isEmpty(path)) {
+                        results.add(path);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
         return results;
     }
 
+    /**
+     * Compresses the sources of one batch and collects their results and metrics.
+     */
+    private class Batch {
+
+        private final CompressionJob mJob;
+        private final ResultDispatcher mDispatcher;
+        private final List<CompressMetrics> mMetrics;
+        private final long mStart = System.nanoTime();
+
+        Batch(CompressionJob job, ResultDispatcher dispatcher) {
+            this.mJob = job;
+            this.mDispatcher = dispatcher;
+            this.mMetrics = mMetricsListener != null ? new ArrayList<CompressMetrics>() : null;
+        }
+
+        void compress(final InputStreamProvider provider, final int position) {
+            CompressResult result = null;
+            CompressMetrics metrics = null;
+            boolean submitted = false;
+            try {
+                if (mJob.isCancelled()) {
+                    return;
+                }
+                if (mJournal != null) {
+                    String[] done = mJournal.getDone(BatchJournal.keyOf(provider, position));
+                    if (done != null) {
+                        submitted = true;
+                        finish(done.length == 1 ? new CompressResult(position, provider, done[0])
+                                : new CompressResult(position, provider, done), null, false);
+                        return;
+                    }
+                    mJournal.pending(BatchJournal.keyOf(provider, position));
+                }
+                metrics = mMetrics != null ? new CompressMetrics(provider.getPath()) : null;
+                if (mSinkPipeline != null) {
+                    final CompressMetrics sinkMetrics = metrics;
+                    ByteBuffer data = mEngine.encode(provider, mJob, metrics);
+                    submitted = true;
+                    mSinkPipeline.submit(provider, data, mJob, new SinkPipeline.Callback() {
+                        @Override
+                        public void onWritten(String result) {
+                            if (sinkMetrics != null) {
+                                if (!TextUtils.isEmpty(result)) {
+                                    sinkMetrics.onWritten();
+                                }
+                                sinkMetrics.finish(result);
+                            }
+                            finish(new CompressResult(position, provider, result), sinkMetrics, true);
+                        }
+                    });
+                    return;
+                }
+                if (mEngine.hasVariants()) {
+                    String[] paths = mEngine.compressVariants(provider, mJob, metrics);
+                    for (int i = 0; i < paths.length; i++) {
+                        paths[i] = checkExists(paths[i]);
+                    }
+                    result = new CompressResult(position, provider, paths);
+                } else {
+                    result = new CompressResult(position, provider, checkExists(mEngine.compress(provider, mJob, metrics)));
+                }
+            } finally {
+                if (!submitted) {
+                    finish(result != null ? result : new CompressResult(position, provider, ""), metrics, true);
+                }
+            }
+        }
+
+        private String checkExists(String result) {
+            return !TextUtils.isEmpty(result) && new File(result).exists() ? result : "";
+        }
+
+        /**
+         * @param journal whether to record the result, false for one that came from the journal
+         */
+        private void finish(CompressResult compressResult, CompressMetrics metrics, boolean journal) {
+            try {
+                if (mJob.isCancelled()) {
+                    return;
+                }
+                if (journal && mJournal != null) {
+                    List<String> outputs = compressResult.getVariantPaths();
+                    mJournal.finished(BatchJournal.keyOf(compressResult.getSource(), compressResult.getIndex()),
+                            outputs.toArray(new String[outputs.size()]));
+                }
+                if (metrics != null) {
+                    mMetricsListener.onImageMetrics(metrics);
+                    synchronized (mMetrics) {
+                        mMetrics.add(metrics);
+                    }
+                }
+                mJob.setResult(compressResult);
+                if (mDispatcher != null) {
+                    mDispatcher.dispatch(compressResult);
+                }
+            } finally {
+                if (mJob.onItemFinished()) {
+                    if (mJournal != null) {
+                        mJournal.flush();
+                    }
+                    if (mMetrics != null) {
+                        synchronized (mMetrics) {
+                            mMetricsListener.onBatchMetrics(BatchMetrics.of(mMetrics, System.nanoTime() - mStart));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
     public static class Builder {
 
         private Context context;
@@ -115,6 +368,31 @@ public class Compressor {
         private float maxWidthOrHeight = INITIAL_VALUE;
         private List<InputStreamProvider> streamProviders = new ArrayList<>();
         private int quality = DEFAULT_QUALITY;
+        private Executor executor;
+        private int parallelism;
+        private float sizeTolerance = DEFAULT_SIZE_TOLERANCE;
+        private boolean resultCache;
+        private boolean cacheByContent;
+        private long cacheMaxSize = ResultCache.DEFAULT_MAX_SIZE;
+        private long cacheMaxAge = ResultCache.DEFAULT_MAX_AGE;
+        private int passthroughMode = PASSTHROUGH_COPY;
+        private OutputNameStrategy nameStrategy;
+        private Map<InputStreamProvider, Integer> priorities = new IdentityHashMap<>();
+        private int priority;
+        private CompressMetricsListener metricsListener;
+        private long largeImageThreshold = DEFAULT_LARGE_IMAGE_PIXELS;
+        private boolean alphaMasks;
+        private boolean losslessJpeg;
+        private boolean keepExif;
+        private boolean coalesce;
+        private List<Variant> variants = new ArrayList<>();
+        private String journal;
+        private float bitsPerPixel;
+        private ImageCodec<Bitmap, Bitmap.Config> codec;
+        private Executor callbackExecutor;
+        private boolean orderedResults;
+        private OutputSink outputSink;
+        private int sinkCapacity = SinkPipeline.DEFAULT_CAPACITY;
 
         private Builder(Context c) {
             this.context = c;
@@ -132,12 +410,30 @@ public class Compressor {
             return this;
         }
 
+        /**
+         * Name the output files yourself. The default combines time, a per-process nonce and a sequence number.
+         */
+        public Builder outputNameStrategy(OutputNameStrategy strategy) {
+            this.nameStrategy = strategy;
+            return this;
+        }
+
         public Builder ignoreBy(float size) {
             if (size > 0)
                 this.leastCompressSize = size;
             return this;
         }
 
+        /**
+         * How sources under {@link #ignoreBy(float)} end up in the target dir, one of
+         * {@link #PASSTHROUGH_COPY}, {@link #PASSTHROUGH_LINK} or {@link #PASSTHROUGH_SOURCE}.
+         */
+        public Builder passthroughMode(int mode) {
+            if (mode == PASSTHROUGH_COPY || mode == PASSTHROUGH_LINK || mode == PASSTHROUGH_SOURCE)
+                this.passthroughMode = mode;
+            return this;
+        }
+
         public Builder compressFormat(Bitmap.CompressFormat format) {
             if (format != compressFormat) {
                 this.compressFormat = format;
@@ -154,6 +450,16 @@ public class Compressor {
             return this;
         }
 
+        /**
+         * How close to {@link #maxFileSize(float)} the output has to get, e.g. 0.1 accepts anything
+         * between 90% and 100% of the limit. A looser tolerance needs fewer trial encodes.
+         */
+        public Builder sizeTolerance(float tolerance) {
+            if (tolerance > 0 && tolerance < 1)
+                this.sizeTolerance = tolerance;
+            return this;
+        }
+
         /**
          * Limit image quality.
          */
@@ -163,20 +469,224 @@ public class Compressor {
             return this;
         }
 
+        /**
+         * Pick the quality of every JPEG and WEBP image from how detailed it is instead of using one quality
+         * for all, aiming at this many bits per output pixel. Flat images get a high quality for few bytes,
+         * busy photos a lower one, between 30 and 95. About 1.5 suits photos for upload. With maxFileSize the
+         * picked quality is where the size search starts.
+         */
+        public Builder autoQuality(float bitsPerPixel) {
+            if (bitsPerPixel > 0)
+                this.bitsPerPixel = bitsPerPixel;
+            return this;
+        }
+
+        /**
+         * Decode and encode with another backend instead of BitmapFactory and Bitmap#compress. Sizing,
+         * rotation, quality and output work the same, so backends can be compared on the same sources.
+         * Large images are only decoded tile by tile with the default {@link BitmapCodec}.
+         */
+        public Builder codec(ImageCodec<Bitmap, Bitmap.Config> codec) {
+            this.codec = codec;
+            return this;
+        }
+
+        /**
+         * Write several outputs of every source, e.g. a thumbnail, a preview and the full size image, from a
+         * single decode. Each variant is scaled down from the next larger one. Results list the outputs of
+         * every variant, see {@link CompressResult#getVariantPaths()}. Neither ignoreBy nor the result cache
+         * apply to variants, and they can not be combined with an output sink.
+         */
+        public Builder variant(Variant variant) {
+            if (variant != null)
+                this.variants.add(variant);
+            return this;
+        }
+
         public Builder maxWidthOrHeight(float maxWidthOrHeight) {
             if (maxWidthOrHeight > 0) this.maxWidthOrHeight = maxWidthOrHeight;
             return this;
         }
 
+        /**
+         * Run the asynchronous compress tasks on your own executor instead of the shared worker pool.
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Send the compressed images to {@code sink} instead of the target dir, see {@link #outputSink(OutputSink, int)}.
+         */
+        public Builder outputSink(OutputSink sink) {
+            return outputSink(sink, SinkPipeline.DEFAULT_CAPACITY);
+        }
+
+        /**
+         * Send the compressed images to {@code sink} instead of the target dir. Images are encoded into memory
+         * and written by a thread of their own, so the next image is compressed while the sink still writes
+         * the previous one. Compressing pauses while {@code capacity} images wait for the sink. The result
+         * cache and the passthrough mode do not apply, sources under {@link #ignoreBy(float)} are written as they are.
+         */
+        public Builder outputSink(OutputSink sink, int capacity) {
+            this.outputSink = sink;
+            if (capacity > 0)
+                this.sinkCapacity = capacity;
+            return this;
+        }
+
+        /**
+         * Deliver the {@link CompressListener} and {@link CompressCallback} calls on this executor instead of
+         * the main thread. Pass an executor that runs commands directly to get them on the worker threads.
+         */
+        public Builder callbackExecutor(Executor executor) {
+            this.callbackExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Deliver results in the order the sources were loaded. A result that finishes early waits for the
+         * ones before it, by default results are delivered as soon as they are done.
+         */
+        public Builder orderedResults(boolean ordered) {
+            this.orderedResults = ordered;
+            return this;
+        }
+
+        /**
+         * Limit how many images of this batch are compressed at the same time.
+         * The default depends on the number of cores and the available heap.
+         */
+        public Builder parallelism(int parallelism) {
+            if (parallelism > 0)
+                this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Decode images with more than this many pixels tile by tile, so their memory use depends on the
+         * output size instead of the source resolution. 0 decodes every image in one piece, the default is 20MP.
+         */
+        public Builder largeImageThreshold(long pixels) {
+            if (pixels >= 0)
+                this.largeImageThreshold = pixels;
+            return this;
+        }
+
+        /**
+         * Treat grayscale PNG sources as masks and decode them as ALPHA_8 when the output is PNG, a quarter of
+         * the memory of ARGB_8888. The output keeps only the gray levels, as alpha. Off by default.
+         */
+        public Builder alphaMasks(boolean enable) {
+            this.alphaMasks = enable;
+            return this;
+        }
+
+        /**
+         * Copy JPEGs that already have the output size and fit maxFileSize instead of decoding and encoding
+         * them again at the set quality. Their pixels are not touched, so a rotated photo keeps its EXIF
+         * orientation, the rest of its EXIF follows {@link #keepExif(boolean)}. Off by default.
+         */
+        public Builder losslessJpeg(boolean enable) {
+            this.losslessJpeg = enable;
+            return this;
+        }
+
+        /**
+         * Copy when a JPEG was taken, with what camera and exposure into its JPEG outputs. Location, maker
+         * notes and thumbnails are never copied. The tags are read from the source bytes, no pixels are
+         * decoded for them. Off by default, outputs carry no EXIF.
+         */
+        public Builder keepExif(boolean enable) {
+            this.keepExif = enable;
+            return this;
+        }
+
+        /**
+         * Wait for a source that is already being compressed with the same options into the same target dir,
+         * by any Compressor in the process that enabled this too, instead of compressing it again. Both
+         * requests then get the same output file, named by the one that ran, so do not delete or move it
+         * while another caller may still use it. Sources that are only a stream are never shared, neither
+         * are outputs to a sink or variants. Off by default, every request owns its output.
+         */
+        public Builder coalesce(boolean enable) {
+            this.coalesce = enable;
+            return this;
+        }
+
+        /**
+         * Keep a journal of this batch in the target dir, so launching a batch of the same name again, e.g.
+         * after the process was killed, skips the sources it already compressed and reports their earlier
+         * outputs. Sources are identified by Uri or path, others by their position in the batch.
+         */
+        public Builder journal(String name) {
+            this.journal = name;
+            return this;
+        }
+
+        /**
+         * Reuse the output of an earlier compression when the same source is compressed with the same options,
+         * without decoding it again. The cached files live in the target dir.
+         */
+        public Builder resultCache(boolean enable) {
+            this.resultCache = enable;
+            return this;
+        }
+
+        /**
+         * Limit the cached outputs in the target dir, the least recently used ones are deleted first.
+         *
+         * @param maxSize total bytes of all cached outputs
+         * @param maxAge  milliseconds an output may stay unused
+         */
+        public Builder resultCacheSize(long maxSize, long maxAge) {
+            if (maxSize > 0)
+                this.cacheMaxSize = maxSize;
+            if (maxAge > 0)
+                this.cacheMaxAge = maxAge;
+            return this;
+        }
+
+        /**
+         * Identify cached sources by a hash of their content instead of path, size and modification time.
+         */
+        public Builder cacheByContent(boolean byContent) {
+            this.cacheByContent = byContent;
+            return this;
+        }
+
+        /**
+         * The priority of the sources loaded after this call. When images wait for a worker, those with a
+         * higher priority start first, also across batches sharing the default worker pool. The default is 0.
+         */
+        public Builder priority(int priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        /**
+         * Measure every stage of every image. Nothing is measured without a listener.
+         */
+        public Builder metricsListener(CompressMetricsListener listener) {
+            this.metricsListener = listener;
+            return this;
+        }
+
         public <T> Builder load(List<T> list) {
             if (list == null)
                 throw new IllegalArgumentException("illegal argument error:source list can not be null");
             streamProviders.clear();
+            priorities.clear();
+            // the Uris of the list resolve their paths together, on the first worker that needs one
+            UriBatch batch = new UriBatch(context);
             for (T src : list) {
                 if (src instanceof String) {
                     load((String) src);
                 } else if (src instanceof Uri) {
-                    load((Uri) src);
+                    UriStreamProvider provider = new UriStreamProvider(context, (Uri) src, batch);
+                    batch.add(provider);
+                    addProvider(provider);
                 } else if (src instanceof File) {
                     load((File) src);
                 } else if (src instanceof InputStreamProvider) {
@@ -190,7 +700,7 @@ public class Compressor {
 
         public Builder load(InputStreamProvider provider) {
             if (provider == null) return this;
-            streamProviders.add(provider);
+            addProvider(provider);
             return this;
         }
 
@@ -198,33 +708,13 @@ public class Compressor {
             if (!file.exists()) {
                 return this;
             }
-            streamProviders.add(new InputStreamProvider() {
-                @Override
-                public InputStream open() throws IOException {
-                    return new FileInputStream(file);
-                }
-
-                @Override
-                public String getPath() {
-                    return file.getAbsolutePath();
-                }
-            });
+            addProvider(new FileStreamProvider(file, file.getAbsolutePath()));
             return this;
         }
 
         public Builder load(final Uri uri) {
             if (uri == null) return this;
-            streamProviders.add(new InputStreamProvider() {
-                @Override
-                public InputStream open() throws IOException {
-                    return context.getContentResolver().openInputStream(uri);
-                }
-
-                @Override
-                public String getPath() {
-                    return Common.getFilePath(context, uri);
-                }
-            });
+            addProvider(new UriStreamProvider(context, uri));
             return this;
         }
 
@@ -232,34 +722,54 @@ public class Compressor {
             if (!new File(src).exists()) {
                 return this;
             }
-            streamProviders.add(new InputStreamProvider() {
-                @Override
-                public InputStream open() throws IOException {
-                    return new FileInputStream(src);
-                }
-
-                @Override
-                public String getPath() {
-                    return src;
-                }
-            });
+            addProvider(new FileStreamProvider(new File(src), src));
             return this;
         }
 
+        private void addProvider(InputStreamProvider provider) {
+            streamProviders.add(provider);
+            if (priority != 0) {
+                priorities.put(provider, priority);
+            }
+        }
+
         /**
          * start asynchronous compress thread
+         *
+         * @return a handle to cancel or wait for the batch
          */
-        public void launch() {
-            if (streamProviders.size() <= 0) return;
-            new Compressor(this).launch();
+        public CompressionJob launch() {
+            if (streamProviders.size() <= 0) return new CompressionJob(0);
+            return new Compressor(this).launch();
         }
 
         /**
          * start asynchronous compress thread
+         *
+         * @return a handle to cancel or wait for the batch
+         */
+        public CompressionJob launch(CompressListener listener) {
+            if (streamProviders.size() <= 0) return new CompressionJob(0);
+            return new Compressor(this).launch(listener, null);
+        }
+
+        /**
+         * start asynchronous compress thread, streaming every result, the progress and the completion of the batch
+         *
+         * @return a handle to cancel the batch or wait for all results
          */
-        public void launch(CompressListener listener) {
-            if (streamProviders.size() <= 0) return;
-            new Compressor(this).launch(listener);
+        public CompressionJob launch(final CompressCallback callback) {
+            if (streamProviders.size() <= 0) {
+                Executor executor = callbackExecutor != null ? callbackExecutor : MainThreadExecutor.get();
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onComplete(new ArrayList<CompressResult>());
+                    }
+                });
+                return new CompressionJob(0);
+            }
+            return new Compressor(this).launch(null, callback);
         }
 
         /**
@@ -270,31 +780,4 @@ public class Compressor {
             return new Compressor(this).get();
         }
     }
-
-    private Handler mHandler = new Handler(Looper.getMainLooper()) {
-        @Override
-        public void handleMessage(Message msg) {
-            super.handleMessage(msg);
-            switch (msg.what) {
-                case MSG_COMPRESS_SUCCESS:
-                    if (msg.obj instanceof String) {
-                        String result = (String) msg.obj;
-                        if (mCompressListener != null) {
-                            mCompressListener.onSuccess(result);
-                        }
-                    }
-                    break;
-                case MSG_COMPRESS_FAILED:
-                    if (msg.obj instanceof String) {
-                        String result = (String) msg.obj;
-                        if (mCompressListener != null) {
-                            mCompressListener.onFiled(result);
-                        }
-                    }
-                    break;
-            }
-
-        }
-    };
-
 }
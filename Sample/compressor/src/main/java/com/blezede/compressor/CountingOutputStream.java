@@ -0,0 +1,82 @@
+package com.blezede.compressor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/11 9:40
+ * Description: Counts the bytes of a trial encode and keeps them only while they still fit into
+ * {@code limit}. The backing array is reused across {@link #reset()} calls, so an encode that is
+ * too large costs nothing but the count and an encode that fits never has to be copied.
+ */
+class CountingOutputStream extends OutputStream {
+
+    private final int mLimit;
+    private byte[] mBuffer;
+    private long mCount;
+
+    CountingOutputStream(int limit) {
+        this.mLimit = Math.max(limit, 0);
+        this.mBuffer = new byte[Math.min(mLimit, 64 * 1024)];
+    }
+
+    @Override
+    public void write(int b) {
+        if (mCount < mLimit) {
+            ensureCapacity((int) mCount + 1);
+            mBuffer[(int) mCount] = (byte) b;
+        }
+        mCount++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        if (mCount + len <= mLimit) {
+            ensureCapacity((int) mCount + len);
+            System.arraycopy(b, off, mBuffer, (int) mCount, len);
+        }
+        mCount += len;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > mBuffer.length) {
+            byte[] buffer = new byte[(int) Math.min(mLimit, Math.max(capacity, mBuffer.length * 2L))];
+            System.arraycopy(mBuffer, 0, buffer, 0, (int) Math.min(mCount, mBuffer.length));
+            mBuffer = buffer;
+        }
+    }
+
+    long count() {
+        return mCount;
+    }
+
+    /**
+     * @return whether everything written since the last reset has been kept
+     */
+    boolean isComplete() {
+        return mCount <= mLimit;
+    }
+
+    void reset() {
+        mCount = 0;
+    }
+
+    /**
+     * @return the retained bytes, backed by the internal buffer
+     */
+    ByteBuffer toByteBuffer() {
+        if (!isComplete()) {
+            throw new IllegalStateException("encoded data exceeded the limit and was not retained");
+        }
+        return ByteBuffer.wrap(mBuffer, 0, (int) mCount);
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        if (!isComplete()) {
+            throw new IllegalStateException("encoded data exceeded the limit and was not retained");
+        }
+        out.write(mBuffer, 0, (int) mCount);
+    }
+}
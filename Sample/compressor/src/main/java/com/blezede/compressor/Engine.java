@@ -1,16 +1,24 @@
 package com.blezede.compressor;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.os.ParcelFileDescriptor;
 import android.text.TextUtils;
 
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.CancellationException;
 
 /**
  * com.blezede.compressor
@@ -21,143 +29,842 @@ public class Engine {
 
     private static final String DOT = ".";
     private static final String EMPTY_STRING = "";
+    private static final float DEFAULT_SIZE_TOLERANCE = 0.1f;
+    /**
+     * Memory pressure does not shrink an output's long side below this.
+     */
+    private static final int MIN_GOVERNED_SIDE = 512;
 
-    private static String prepare(String targetDir, Bitmap.CompressFormat compressFormat) {
-        File target = new File(targetDir);
-        boolean isMade = target.mkdirs();
-        if (isMade) {
-            return target.getAbsolutePath() + File.separator + System.currentTimeMillis() + DOT + compressFormat.name().toLowerCase();
+    private final String mTargetDirPath;
+    private final Bitmap.CompressFormat mCompressFormat;
+    private final float mLeastSize;
+    private final float mMaxWidthOrHeight;
+    private final float mMaxSize;
+    private final int mQuality;
+    private float mSizeTolerance = DEFAULT_SIZE_TOLERANCE;
+    private OutputNameStrategy mNameStrategy = new SequenceNameStrategy();
+    private volatile boolean mTargetDirReady;
+    private int mPassthroughMode = Compressor.PASSTHROUGH_COPY;
+    private ResultCache mResultCache;
+    private boolean mCacheByContent;
+    private long mLargeImageThreshold;
+    private boolean mAlphaMasks;
+    private float mBitsPerPixel;
+    private String mVariantName;
+    private Engine[] mVariants;
+    private ImageCodec<Bitmap, Bitmap.Config> mCodec = BitmapCodec.get();
+    private boolean mLosslessJpeg;
+    private boolean mKeepExif;
+    private boolean mCoalesce;
+
+    Engine(String targetDirPath, Bitmap.CompressFormat compressFormat, float leastSize, float maxWidthOrHeight, float maxSize, int quality) {
+        this.mTargetDirPath = targetDirPath;
+        this.mCompressFormat = compressFormat;
+        this.mLeastSize = leastSize;
+        this.mMaxWidthOrHeight = maxWidthOrHeight;
+        this.mMaxSize = maxSize;
+        this.mQuality = quality;
+    }
+
+    /**
+     * How far below maxSize an output may end up, as a fraction of maxSize. Larger values need fewer encodes.
+     */
+    Engine setSizeTolerance(float sizeTolerance) {
+        this.mSizeTolerance = sizeTolerance;
+        return this;
+    }
+
+    Engine setNameStrategy(OutputNameStrategy nameStrategy) {
+        if (nameStrategy != null)
+            this.mNameStrategy = nameStrategy;
+        return this;
+    }
+
+    /**
+     * How sources below leastSize reach the target dir, one of the Compressor.PASSTHROUGH_ modes.
+     */
+    Engine setPassthroughMode(int passthroughMode) {
+        this.mPassthroughMode = passthroughMode;
+        return this;
+    }
+
+    /**
+     * Share the result of an identical compression that is still running, see {@link InFlightRegistry}.
+     */
+    Engine setCoalesce(boolean coalesce) {
+        this.mCoalesce = coalesce;
+        return this;
+    }
+
+    /**
+     * Return earlier outputs for identical sources and options from the cache instead of compressing again.
+     *
+     * @param byContent identify sources by a hash of their bytes instead of path, length and modification time
+     */
+    Engine setResultCache(ResultCache cache, boolean byContent) {
+        this.mResultCache = cache;
+        this.mCacheByContent = byContent;
+        return this;
+    }
+
+    /**
+     * Decode sources with more pixels than this tile by tile, 0 always decodes them in one piece.
+     */
+    Engine setLargeImageThreshold(long largeImageThreshold) {
+        this.mLargeImageThreshold = largeImageThreshold;
+        return this;
+    }
+
+    /**
+     * Decode grayscale PNG sources as ALPHA_8 when the output is PNG.
+     */
+    Engine setAlphaMasks(boolean alphaMasks) {
+        this.mAlphaMasks = alphaMasks;
+        return this;
+    }
+
+    /**
+     * Pick the quality of every JPEG and WEBP output from its content, aiming at this many bits per pixel.
+     * 0 uses the fixed quality.
+     */
+    Engine setBitsPerPixel(float bitsPerPixel) {
+        this.mBitsPerPixel = bitsPerPixel;
+        return this;
+    }
+
+    /**
+     * Decode and encode through this codec instead of BitmapFactory, null keeps {@link BitmapCodec}.
+     */
+    Engine setCodec(ImageCodec<Bitmap, Bitmap.Config> codec) {
+        this.mCodec = codec != null ? codec : BitmapCodec.get();
+        return this;
+    }
+
+    /**
+     * Copy JPEGs that would be written at their own size and already fit maxSize instead of decoding and
+     * encoding them again. The compressed data is left as it is, the EXIF orientation keeps them upright.
+     */
+    Engine setLosslessJpeg(boolean losslessJpeg) {
+        this.mLosslessJpeg = losslessJpeg;
+        return this;
+    }
+
+    /**
+     * Carry the time, camera and exposure tags of JPEG sources over into JPEG outputs, see {@link ExifWriter}.
+     */
+    Engine setKeepExif(boolean keepExif) {
+        this.mKeepExif = keepExif;
+        return this;
+    }
+
+    /**
+     * Append this to every output name, for an Engine that writes one of several variants.
+     */
+    Engine setVariantName(String variantName) {
+        this.mVariantName = variantName;
+        return this;
+    }
+
+    /**
+     * Decode every source once and write it through each of these engines, see {@link #compressVariants}.
+     */
+    Engine setVariants(Engine[] variants) {
+        this.mVariants = variants != null && variants.length > 0 ? variants : null;
+        return this;
+    }
+
+    boolean hasVariants() {
+        return mVariants != null;
+    }
+
+    /**
+     * Make sure the target dir exists, only the first call per Engine touches the file system.
+     */
+    private boolean prepareTargetDir() {
+        if (!mTargetDirReady) {
+            File target = new File(mTargetDirPath);
+            mTargetDirReady = target.mkdirs() || target.isDirectory();
         }
-        return EMPTY_STRING;
+        return mTargetDirReady;
+    }
+
+    private String prepare(InputStreamProvider source) {
+        String name = mNameStrategy.getName(source, mCompressFormat);
+        if (TextUtils.isEmpty(name)) {
+            return EMPTY_STRING;
+        }
+        if (!TextUtils.isEmpty(mVariantName)) {
+            String[] parts = Common.splitFileName(name);
+            name = parts[0] + '_' + mVariantName + parts[1];
+        }
+        return new File(mTargetDirPath, name).getAbsolutePath();
+    }
+
+    private static String getExtension(Bitmap.CompressFormat compressFormat) {
+        return DOT + compressFormat.name().toLowerCase();
     }
 
     public static String compress(InputStreamProvider source, String targetDirPath, Bitmap.CompressFormat compressFormat, float leastSize, float maxWidthOrHeight, float maxSize, int quality) {
-        if (source == null || !new File(source.getPath()).exists() || TextUtils.isEmpty(targetDirPath) || compressFormat == null) {
+        return new Engine(targetDirPath, compressFormat, leastSize, maxWidthOrHeight, maxSize, quality).compress(source);
+    }
+
+    String compress(InputStreamProvider source) {
+        return compress(source, null, null);
+    }
+
+    /**
+     * @param job     checked between the stages, a cancelled job makes this return "" at the next one
+     * @param metrics filled in with the timings of every stage, may be null
+     */
+    String compress(final InputStreamProvider source, final CompressionJob job, final CompressMetrics metrics) {
+        if (metrics != null) {
+            metrics.start();
+        }
+        String result;
+        try {
+            result = InFlightRegistry.get().run(getInFlightKey(source), job, metrics, new InFlightRegistry.Task() {
+                @Override
+                public String run() {
+                    return compressOrCache(source, job, metrics);
+                }
+            });
+        } catch (CancellationException e) {
+            result = EMPTY_STRING;
+        }
+        if (metrics != null) {
+            metrics.finish(result);
+        }
+        return result;
+    }
+
+    /**
+     * Compress into memory instead of the target dir, for an {@link OutputSink}. Sources below leastSize
+     * are handed on as they are. Neither the result cache nor the passthrough mode apply.
+     *
+     * @return the encoded image, or null if the source failed or the job was cancelled
+     */
+    ByteBuffer encode(InputStreamProvider source, CompressionJob job, CompressMetrics metrics) {
+        if (metrics != null) {
+            metrics.start();
+        }
+        if (source == null || mCompressFormat == null) {
+            return null;
+        }
+        Bitmap targetBitmap = null;
+        MemoryGovernor.Lease lease = MemoryGovernor.get().newLease();
+        try {
+            ImageSource image = ImageSource.open(source);
+            if (mLeastSize > 0 && image.length() <= mLeastSize) {
+                if (metrics != null) {
+                    metrics.onPassthrough();
+                }
+                return image.buffer();
+            }
+            if (isLosslessCopy(image)) {
+                CountingOutputStream out = new CountingOutputStream(Integer.MAX_VALUE - 8);
+                if (ExifWriter.rewrite(image.buffer(), getExif(image, true), out)) {
+                    if (metrics != null) {
+                        metrics.onPassthrough();
+                    }
+                    return out.toByteBuffer();
+                }
+            }
+            targetBitmap = decodeTarget(source, image, lease, job, metrics);
+            if (targetBitmap == null) {
+                return null;
+            }
+            return encode(targetBitmap, getExif(image, false), job, metrics);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } catch (CancellationException e) {
+            return null;
+        } finally {
+            BitmapPool.get().put(targetBitmap);
+            lease.release();
+        }
+    }
+
+    /**
+     * Decode the source once, at the size of the largest variant, and write every variant from it, each
+     * scaled down from the one before. Neither the result cache nor leastSize apply.
+     *
+     * @return the output of every variant in the order they were set, "" where one failed
+     */
+    String[] compressVariants(InputStreamProvider source, CompressionJob job, CompressMetrics metrics) {
+        String[] results = new String[mVariants.length];
+        Arrays.fill(results, EMPTY_STRING);
+        if (metrics != null) {
+            metrics.start();
+        }
+        Bitmap bitmap = null;
+        MemoryGovernor.Lease lease = MemoryGovernor.get().newLease();
+        try {
+            if (source == null || TextUtils.isEmpty(mTargetDirPath) || !prepareTargetDir()) {
+                return results;
+            }
+            ImageSource image = ImageSource.open(source);
+            int[] size = getSize(image, ImageHeader.parse(image.buffer()));
+            if (size == null) {
+                return results;
+            }
+            int[] longSides = new int[mVariants.length];
+            for (int i = 0; i < longSides.length; i++) {
+                longSides[i] = new ScalePlan(size[0], size[1], mVariants[i].getScale(size[0], size[1])).getLongSide();
+            }
+            bitmap = decodeTarget(source, image, lease, job, metrics);
+            if (bitmap == null) {
+                return results;
+            }
+            for (int i : getVariantOrder(longSides)) {
+                Engine variant = mVariants[i];
+                float radio = ScalePlan.getRemainingScale(bitmap.getWidth(), bitmap.getHeight(), longSides[i]);
+                if (radio != 0) {
+                    bitmap = rotatingOrScaleImage(bitmap, 0, radio);
+                    if (metrics != null) {
+                        metrics.onTransformed(bitmap);
+                    }
+                }
+                String destPath = variant.prepare(source);
+                if (!TextUtils.isEmpty(destPath) && variant.write(bitmap, new File(destPath), variant.getExif(image, false), job, metrics)) {
+                    results[i] = destPath;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (CancellationException e) {
+            Arrays.fill(results, EMPTY_STRING);
+        } finally {
+            BitmapPool.get().put(bitmap);
+            lease.release();
+            if (metrics != null) {
+                metrics.finish(results[0]);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return the indices of the variants from the largest output to the smallest
+     */
+    static Integer[] getVariantOrder(final int[] longSides) {
+        Integer[] order = new Integer[longSides.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return longSides[b] - longSides[a];
+            }
+        });
+        return order;
+    }
+
+    private String compressOrCache(InputStreamProvider source, CompressionJob job, CompressMetrics metrics) {
+        if (source == null || TextUtils.isEmpty(mTargetDirPath) || mCompressFormat == null) {
+            return EMPTY_STRING;
+        }
+        if (!prepareTargetDir()) {
             return EMPTY_STRING;
         }
-        String destPath = prepare(targetDirPath, compressFormat);
+        if (mResultCache == null) {
+            return compress(source, null, prepare(source), job, metrics);
+        }
+        ImageSource image = null;
+        if (mCacheByContent) {
+            try {
+                image = ImageSource.open(source);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return EMPTY_STRING;
+            }
+        }
+        String cacheKey = ResultCache.key(source.getPath(), image != null ? image.buffer() : null, getOutputOptions());
+        if (cacheKey == null) {
+            return compress(source, image, prepare(source), job, metrics);
+        }
+        String cached = mResultCache.lookup(cacheKey, getExtension(mCompressFormat));
+        if (cached != null) {
+            if (metrics != null) {
+                metrics.onCacheHit();
+            }
+            return cached;
+        }
+        File cacheFile = mResultCache.fileFor(cacheKey, getExtension(mCompressFormat));
+        String result = compress(source, image, cacheFile.getAbsolutePath(), job, metrics);
+        // a passed through source path is not ours to evict
+        if (cacheFile.getAbsolutePath().equals(result)) {
+            mResultCache.put(cacheKey, cacheFile);
+        }
+        return result;
+    }
+
+    /**
+     * @return what identical compressions running at the same time share, null to never share
+     */
+    private String getInFlightKey(InputStreamProvider source) {
+        if (!mCoalesce || source == null || mCompressFormat == null) {
+            return null;
+        }
+        String identity = InFlightRegistry.identify(source);
+        if (identity == null) {
+            return null;
+        }
+        return identity + '|' + mTargetDirPath + '|' + mPassthroughMode + '|' + (mResultCache != null) + '|' + getOutputOptions();
+    }
+
+    /**
+     * @return every option that decides the outputs of a source, its variants included, so outputs recorded
+     * by an earlier run can be told apart from those the current options would make
+     */
+    String getFingerprint() {
+        StringBuilder fingerprint = new StringBuilder(String.valueOf(mTargetDirPath)).append('|').append(mPassthroughMode);
+        if (mCompressFormat != null) {
+            fingerprint.append('|').append(getOutputOptions());
+        }
+        if (mVariants != null) {
+            for (Engine variant : mVariants) {
+                fingerprint.append('|').append(variant.mVariantName).append('|').append(variant.getFingerprint());
+            }
+        }
+        return fingerprint.toString();
+    }
+
+    /**
+     * Every option that changes the bytes of an output, used to tell cached results apart.
+     */
+    private String getOutputOptions() {
+        return mCompressFormat.name() + '|' + mQuality + '|' + mMaxWidthOrHeight + '|' + mMaxSize + '|' + mLeastSize + '|' + mSizeTolerance + '|' + mLargeImageThreshold + '|' + mAlphaMasks + '|' + mBitsPerPixel + '|' + mCodec.getClass().getName() + '|' + mLosslessJpeg + '|' + mKeepExif;
+    }
+
+    private static void checkCancelled(CompressionJob job) {
+        if (job != null) {
+            job.throwIfCancelled();
+        }
+    }
+
+    private String compress(InputStreamProvider source, ImageSource image, String destPath, CompressionJob job, CompressMetrics metrics) {
         if (TextUtils.isEmpty(destPath)) {
             return EMPTY_STRING;
         }
-        File src = new File(source.getPath());
-        if (leastSize > 0 && src.length() <= leastSize) {
-            return Common.copyFile(src.getAbsolutePath(), destPath);
+        if (mLeastSize > 0) {
+            long length = getLength(source, image);
+            if (length >= 0 && length <= mLeastSize) {
+                String result = passthrough(source, destPath);
+                if (metrics != null) {
+                    metrics.onPassthrough();
+                    if (!TextUtils.isEmpty(result)) {
+                        metrics.onWritten();
+                    }
+                }
+                return result;
+            }
         }
         Bitmap targetBitmap = null;
-        FileOutputStream fileOps = null;
-        ByteArrayOutputStream byteArrayOps = null;
-        BufferedOutputStream bufferedOps = null;
+        MemoryGovernor.Lease lease = MemoryGovernor.get().newLease();
         try {
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inJustDecodeBounds = true;
-            BitmapFactory.decodeStream(source.open(), null, options);
-            int srcWidth = options.outWidth;
-            int srcHeight = options.outHeight;
-            if (maxWidthOrHeight > 0) {
-                options.inSampleSize = calculateInSampleSize(options, (int) maxWidthOrHeight, (int) maxWidthOrHeight);
-            } else {
-                options.inSampleSize = computeSize(srcWidth, srcHeight);
-            }
-            if (compressFormat != Bitmap.CompressFormat.PNG) {
-                options.inPreferredConfig = Bitmap.Config.RGB_565;
-            }
-            options.inJustDecodeBounds = false;
-            targetBitmap = BitmapFactory.decodeStream(source.open(), null, options);
+            if (image == null) {
+                image = ImageSource.open(source);
+            }
+            if (isLosslessCopy(image) && copyLosslessly(image, new File(destPath), metrics)) {
+                return destPath;
+            }
+            targetBitmap = decodeTarget(source, image, lease, job, metrics);
             if (targetBitmap == null) {
                 return EMPTY_STRING;
             }
-            float radio = 0;
-            if (maxWidthOrHeight > 0 && (maxWidthOrHeight < targetBitmap.getHeight() || maxWidthOrHeight < targetBitmap.getWidth())) {
-                int max = Math.max(targetBitmap.getHeight(), targetBitmap.getWidth());
-                radio = (maxWidthOrHeight / (float) max);
-            }
-            int degree = Common.readImageDegree(src.getAbsolutePath());
-            if (degree != 0 || radio != 0) {
-                targetBitmap = rotatingOrScaleImage(targetBitmap, degree, radio);
-            }
-            byteArrayOps = new ByteArrayOutputStream();
-            int imgQuality = quality;
-            targetBitmap.compress(compressFormat, imgQuality, byteArrayOps);
-            while (maxSize > 0 && byteArrayOps.toByteArray().length > maxSize && imgQuality >= 10) {
-                byteArrayOps.reset();
-                imgQuality -= 10;
-                targetBitmap.compress(compressFormat, imgQuality, byteArrayOps);
-            }
-            fileOps = new FileOutputStream(destPath);
-            bufferedOps = new BufferedOutputStream(fileOps);
-            bufferedOps.write(byteArrayOps.toByteArray());
-            bufferedOps.flush();
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-            return EMPTY_STRING;
+            if (!write(targetBitmap, new File(destPath), getExif(image, false), job, metrics)) {
+                return EMPTY_STRING;
+            }
         } catch (IOException e) {
             e.printStackTrace();
             return EMPTY_STRING;
         } finally {
-            try {
-                if (byteArrayOps != null) {
-                    byteArrayOps.close();
+            BitmapPool.get().put(targetBitmap);
+            lease.release();
+        }
+
+        return destPath;
+    }
+
+    /**
+     * Decode the source at its output size with the EXIF rotation applied. Size, rotation and alpha come
+     * from the header, the codec only probes the size of formats {@link ImageHeader} can not read.
+     *
+     * @param lease reserves the decode footprint, the caller releases it once the bitmap is back in the pool
+     * @return the bitmap to encode, or null if the source can not be decoded
+     */
+    private Bitmap decodeTarget(InputStreamProvider source, ImageSource image, MemoryGovernor.Lease lease,
+                                CompressionJob job, CompressMetrics metrics) {
+        Bitmap bitmap = null;
+        try {
+            ImageHeader header = ImageHeader.parse(image.buffer());
+            int[] size = getSize(image, header);
+            checkCancelled(job);
+            if (size == null) {
+                return null;
+            }
+            int srcWidth = size[0];
+            int srcHeight = size[1];
+            if (metrics != null) {
+                metrics.onOpened(image.length(), srcWidth, srcHeight);
+            }
+            int degree = getDegree(source, header);
+            Bitmap.Config config = selectConfig(header);
+            float scale = getScale(srcWidth, srcHeight);
+            // region decoding is BitmapFactory's, other codecs always decode whole
+            boolean tiled = mLargeImageThreshold > 0 && (long) srcWidth * srcHeight > mLargeImageThreshold
+                    && mCodec instanceof BitmapCodec;
+            // under memory pressure give up resolution rather than the process
+            while (Math.max(srcWidth, srcHeight) * scale / 2 >= MIN_GOVERNED_SIDE
+                    && MemoryGovernor.get().exceedsBudget(getFootprint(srcWidth, srcHeight, scale, tiled, config))) {
+                scale /= 2;
+            }
+            lease.acquire(getFootprint(srcWidth, srcHeight, scale, tiled, config), job);
+            if (tiled) {
+                bitmap = TiledDecoder.decode(image, srcWidth, srcHeight, scale, degree, config, job);
+                if (bitmap != null && metrics != null) {
+                    metrics.onDecoded(bitmap);
                 }
-                if (fileOps != null) {
-                    fileOps.close();
+            }
+            if (bitmap == null) {
+                ScalePlan plan = new ScalePlan(srcWidth, srcHeight, scale);
+                bitmap = decode(image, plan.sampleSize, plan.width, plan.height, config);
+                if (bitmap == null) {
+                    return null;
                 }
-                if (bufferedOps != null) {
-                    bufferedOps.close();
+                if (metrics != null) {
+                    metrics.onDecoded(bitmap);
                 }
-                if (targetBitmap != null && !targetBitmap.isRecycled()) {
-                    targetBitmap.recycle();
+                checkCancelled(job);
+                // a codec that can not scale while decoding leaves the scale to the rotation pass
+                float radio = plan.getRemainingScale(bitmap.getWidth(), bitmap.getHeight());
+                if (degree != 0 || radio != 0) {
+                    bitmap = rotatingOrScaleImage(bitmap, degree, radio);
+                    if (metrics != null) {
+                        metrics.onTransformed(bitmap);
+                    }
+                    checkCancelled(job);
                 }
-            } catch (IOException ignored) {
             }
+            if (metrics != null) {
+                metrics.onOutput(bitmap.getWidth(), bitmap.getHeight());
+            }
+        } catch (RuntimeException e) {
+            BitmapPool.get().put(bitmap);
+            throw e;
         }
+        return bitmap;
+    }
 
-        return destPath;
+    /**
+     * Bytes of pixel memory a decode holds at its peak: the sampled decode and its scaled or rotated copy,
+     * or the output and one tile when decoding tile by tile.
+     */
+    private static long getFootprint(int srcWidth, int srcHeight, float scale, boolean tiled, Bitmap.Config config) {
+        int bytesPerPixel = BitmapPool.getBytesPerPixel(config);
+        long target = (long) Math.ceil(srcWidth * scale) * (long) Math.ceil(srcHeight * scale) * bytesPerPixel;
+        if (tiled) {
+            return target + (long) TiledDecoder.DECODED_TILE_SIZE * TiledDecoder.DECODED_TILE_SIZE * bytesPerPixel;
+        }
+        // expect the codec to round the sample size down to a power of two and not scale while decoding
+        int sample = Integer.highestOneBit(SampleSize.forScale(scale));
+        long sampled = (long) ((srcWidth + sample - 1) / sample) * ((srcHeight + sample - 1) / sample) * bytesPerPixel;
+        return sampled + target;
     }
 
-    private static int computeSize(int srcWidth, int srcHeight) {
-        srcWidth = srcWidth % 2 == 1 ? srcWidth + 1 : srcWidth;
-        srcHeight = srcHeight % 2 == 1 ? srcHeight + 1 : srcHeight;
+    /**
+     * @return {width, height} from the header, or from the codec for formats it can not read, null if unknown
+     */
+    private int[] getSize(ImageSource image, ImageHeader header) {
+        if (header.hasSize()) {
+            return new int[]{header.width, header.height};
+        }
+        int[] size = mCodec.probe(image.data());
+        return size != null && size[0] > 0 && size[1] > 0 ? size : null;
+    }
 
-        int longSide = Math.max(srcWidth, srcHeight);
-        int shortSide = Math.min(srcWidth, srcHeight);
+    /**
+     * The EXIF rotation of a JPEG, for other formats the one MediaStore recorded if the source came from there.
+     */
+    private static int getDegree(InputStreamProvider source, ImageHeader header) {
+        if (header.format != ImageHeader.FORMAT_JPEG && source instanceof UriStreamProvider) {
+            int degree = ((UriStreamProvider) source).getDegree();
+            if (degree > 0) {
+                return degree;
+            }
+        }
+        return header.degree;
+    }
 
-        float scale = ((float) shortSide / longSide);
-        if (scale <= 1 && scale > 0.5625) {
-            if (longSide < 1664) {
-                return 1;
-            } else if (longSide < 4990) {
-                return 2;
-            } else if (longSide > 4990 && longSide < 10240) {
-                return 4;
-            } else {
-                return longSide / 1280;
+    /**
+     * The smallest config that keeps everything the output can show. Alpha only survives into PNG and WEBP,
+     * and only needs ARGB_8888 if the header does not prove the source opaque. HARDWARE is never chosen,
+     * the bitmap has to be drawn into, pooled and read back by the encoder.
+     */
+    private Bitmap.Config selectConfig(ImageHeader header) {
+        if (mVariants != null) {
+            // the one decode has to serve the variant that needs the most
+            Bitmap.Config config = Bitmap.Config.ALPHA_8;
+            for (Engine variant : mVariants) {
+                Bitmap.Config wanted = variant.selectConfig(header);
+                if (BitmapPool.getBytesPerPixel(wanted) > BitmapPool.getBytesPerPixel(config)) {
+                    config = wanted;
+                }
             }
-        } else if (scale <= 0.5625 && scale > 0.5) {
-            return longSide / 1280 == 0 ? 1 : longSide / 1280;
-        } else {
-            return (int) Math.ceil(longSide / (1280.0 / scale)) + 1;
+            return config;
+        }
+        if (mCompressFormat == Bitmap.CompressFormat.JPEG) {
+            return Bitmap.Config.RGB_565;
+        }
+        if (mAlphaMasks && mCompressFormat == Bitmap.CompressFormat.PNG
+                && header.format == ImageHeader.FORMAT_PNG && header.grayscale) {
+            return Bitmap.Config.ALPHA_8;
+        }
+        return header.hasAlpha ? Bitmap.Config.ARGB_8888 : Bitmap.Config.RGB_565;
+    }
+
+    /**
+     * The output size relative to the source. Sampling, decoder scaling and tiling all aim at exactly this size.
+     */
+    private float getScale(int srcWidth, int srcHeight) {
+        if (mVariants != null) {
+            float scale = 0;
+            for (Engine variant : mVariants) {
+                scale = Math.max(scale, variant.getScale(srcWidth, srcHeight));
+            }
+            return scale;
+        }
+        return ScalePlan.getScale(srcWidth, srcHeight, mMaxWidthOrHeight);
+    }
+
+    private static long getLength(InputStreamProvider source, ImageSource image) {
+        if (image != null) {
+            return image.length();
         }
+        String path = source.getPath();
+        if (!TextUtils.isEmpty(path)) {
+            File file = new File(path);
+            if (file.isFile()) {
+                return file.length();
+            }
+        }
+        if (source instanceof UriStreamProvider) {
+            long size = ((UriStreamProvider) source).getSize();
+            if (size >= 0) {
+                return size;
+            }
+            ParcelFileDescriptor descriptor = null;
+            try {
+                descriptor = ((UriStreamProvider) source).openFileDescriptor();
+                return descriptor != null ? descriptor.getStatSize() : -1;
+            } catch (FileNotFoundException e) {
+                return -1;
+            } finally {
+                Common.closeQuietly(descriptor);
+            }
+        }
+        return -1;
     }
 
-    private static int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
-        final int height = options.outHeight;
-        final int width = options.outWidth;
-        int inSampleSize = 1;
+    /**
+     * Hand a source that is already small enough to the target dir without touching its pixels.
+     */
+    private String passthrough(InputStreamProvider source, String destPath) {
+        String path = source.getPath();
+        File src = TextUtils.isEmpty(path) ? null : new File(path);
+        if (src != null && src.isFile() && src.canRead()) {
+            if (mPassthroughMode == Compressor.PASSTHROUGH_SOURCE) {
+                return src.getAbsolutePath();
+            }
+            if (mPassthroughMode == Compressor.PASSTHROUGH_LINK && Common.linkFile(src, new File(destPath))) {
+                return destPath;
+            }
+            return Common.copyFile(src.getAbsolutePath(), destPath);
+        }
+        if (source instanceof UriStreamProvider) {
+            ParcelFileDescriptor descriptor = null;
+            FileInputStream in = null;
+            try {
+                descriptor = ((UriStreamProvider) source).openFileDescriptor();
+                if (descriptor == null) {
+                    return EMPTY_STRING;
+                }
+                in = new FileInputStream(descriptor.getFileDescriptor());
+                return Common.copy(in.getChannel(), new File(destPath)) ? destPath : EMPTY_STRING;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return EMPTY_STRING;
+            } finally {
+                Common.closeQuietly(in);
+                Common.closeQuietly(descriptor);
+            }
+        }
+        return EMPTY_STRING;
+    }
 
-        if (height > reqHeight || width > reqWidth) {
-            final int heightRatio = Math.round((float) height / (float) reqHeight);
-            final int widthRatio = Math.round((float) width / (float) reqWidth);
-            inSampleSize = heightRatio < widthRatio ? heightRatio : widthRatio;
+    /**
+     * @return whether the source is a JPEG that would be written at its own size and already fits maxSize
+     */
+    private boolean isLosslessCopy(ImageSource image) {
+        if (!mLosslessJpeg || mCompressFormat != Bitmap.CompressFormat.JPEG) {
+            return false;
         }
+        ImageHeader header = ImageHeader.parse(image.buffer());
+        return header.format == ImageHeader.FORMAT_JPEG && header.hasSize()
+                && getScale(header.width, header.height) >= 1 && (mMaxSize <= 0 || image.length() <= mMaxSize);
+    }
 
-        final float totalPixels = width * height;
-        final float totalReqPixelsCap = reqWidth * reqHeight * 2;
+    /**
+     * Copy a JPEG with its EXIF rewritten and its compressed data untouched, see {@link #setLosslessJpeg}.
+     *
+     * @return false if it has to be decoded and encoded after all
+     */
+    private boolean copyLosslessly(ImageSource image, File dest, CompressMetrics metrics) throws IOException {
+        File temp = Common.createTempFile(dest);
+        ChannelOutputStream out = null;
+        try {
+            out = new ChannelOutputStream(new FileOutputStream(temp).getChannel());
+            if (!ExifWriter.rewrite(image.buffer(), getExif(image, true), out)) {
+                return false;
+            }
+            out.close();
+            out = null;
+            if (!Common.commit(temp, dest)) {
+                return false;
+            }
+            if (metrics != null) {
+                metrics.onPassthrough();
+                metrics.onWritten();
+            }
+            return true;
+        } finally {
+            Common.closeQuietly(out);
+            temp.delete();
+        }
+    }
 
-        while (totalPixels / (inSampleSize * inSampleSize) > totalReqPixelsCap) {
-            inSampleSize++;
+    /**
+     * @param lossless whether the output keeps the pixels of the source as they are, and so its orientation
+     * @return the EXIF segment of a JPEG output, or null to write none
+     */
+    private byte[] getExif(ImageSource image, boolean lossless) {
+        if (mCompressFormat != Bitmap.CompressFormat.JPEG) {
+            return null;
+        }
+        ByteBuffer jpeg = image.buffer();
+        if (lossless) {
+            return ExifWriter.build(jpeg, Exif.getOrientation(jpeg), mKeepExif);
         }
+        // decoded outputs are turned upright already
+        return mKeepExif ? ExifWriter.build(jpeg, Exif.ORIENTATION_NORMAL, true) : null;
+    }
 
-        return inSampleSize;
+    /**
+     * Encode into a temp file next to {@code dest} and move it into place once it is complete. Only size
+     * targeting keeps encoded bytes in memory, everything else streams straight to disk.
+     *
+     * @param exif the APP1 segment to insert into the output, or null
+     */
+    private boolean write(Bitmap bitmap, File dest, byte[] exif, CompressionJob job, CompressMetrics metrics) throws IOException {
+        QualityDriver<Bitmap> driver = newQualityDriver();
+        QualityDriver.Listener listener = newListener(job, metrics);
+        int quality = selectQuality(driver, bitmap);
+        QualitySearch.Result result = driver.search(bitmap, quality, exif != null ? exif.length : 0, listener);
+        checkCancelled(job);
+        File temp = Common.createTempFile(dest);
+        ChannelOutputStream out = null;
+        try {
+            out = new ChannelOutputStream(new FileOutputStream(temp).getChannel());
+            OutputStream target = ExifWriter.insert(out, exif);
+            boolean encoded = driver.write(bitmap, quality, result, target, listener);
+            // closes out as well
+            target.close();
+            out = null;
+            boolean committed = encoded && Common.commit(temp, dest);
+            if (committed && metrics != null) {
+                metrics.onWritten();
+            }
+            return committed;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+            // still there if anything failed
+            temp.delete();
+        }
+    }
+
+    /**
+     * Encode into memory, for sinks that are written by another thread.
+     *
+     * @return the encoded image, or null if it could not be encoded
+     */
+    private ByteBuffer encode(Bitmap bitmap, byte[] exif, CompressionJob job, CompressMetrics metrics) throws IOException {
+        QualityDriver<Bitmap> driver = newQualityDriver();
+        QualityDriver.Listener listener = newListener(job, metrics);
+        int quality = selectQuality(driver, bitmap);
+        QualitySearch.Result result = driver.search(bitmap, quality, exif != null ? exif.length : 0, listener);
+        checkCancelled(job);
+        if (result != null && result.data != null && exif == null) {
+            return result.data.toByteBuffer();
+        }
+        CountingOutputStream out = new CountingOutputStream(Integer.MAX_VALUE - 8);
+        OutputStream target = ExifWriter.insert(out, exif);
+        boolean encoded = driver.write(bitmap, quality, result, target, listener);
+        target.close();
+        // a failed encode leaves a truncated image that must not reach the sink
+        return encoded ? out.toByteBuffer() : null;
+    }
+
+    private QualityDriver<Bitmap> newQualityDriver() {
+        return new QualityDriver<>(mCodec, mCompressFormat.name(), mQuality, mMaxSize, mSizeTolerance, mBitsPerPixel);
+    }
+
+    /**
+     * Records every encode and stops between them once the job is cancelled.
+     */
+    private static QualityDriver.Listener newListener(final CompressionJob job, final CompressMetrics metrics) {
+        return new QualityDriver.Listener() {
+            @Override
+            public void onEncoded(int quality, long bytes) {
+                if (metrics != null) {
+                    metrics.onEncoded(quality, bytes);
+                }
+                checkCancelled(job);
+            }
+        };
+    }
+
+    private static int selectQuality(QualityDriver<Bitmap> driver, final Bitmap bitmap) {
+        return driver.selectQuality(new QualityEstimator.Pixels() {
+            @Override
+            public void get(int[] out, int x, int y, int width, int height) {
+                bitmap.getPixels(out, 0, width, x, y, width, height);
+            }
+        }, bitmap.getWidth(), bitmap.getHeight());
+    }
+
+    /**
+     * Decode through the codec, into a pooled bitmap of the target size when there is one. A codec that
+     * returns the sampled pixels unscaled does not fit into it and decodes again without.
+     */
+    private Bitmap decode(ImageSource image, int sampleSize, int width, int height, Bitmap.Config config) {
+        Bitmap reuse = null;
+        if (BitmapPool.isReuseSupported()) {
+            // the codec may round the short side up by a pixel, the decoder shrinks the reused bitmap to fit
+            reuse = BitmapPool.get().get(width + 1, height + 1, config);
+        }
+        Bitmap bitmap = mCodec.decode(image.data(), sampleSize, width, height, config, reuse);
+        if (bitmap == null && reuse != null) {
+            BitmapPool.get().put(reuse);
+            bitmap = mCodec.decode(image.data(), sampleSize, width, height, config, null);
+        }
+        return bitmap;
     }
 
     private static Bitmap rotatingOrScaleImage(Bitmap bitmap, int angle, float radio) {
@@ -172,6 +879,23 @@ public class Engine {
         if (radio > 0)
             matrix.postScale(radio, radio);
 
-        return Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        RectF bounds = new RectF(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        matrix.mapRect(bounds);
+        matrix.postTranslate(-bounds.left, -bounds.top);
+        int width = Math.max(1, Math.round(bounds.width()));
+        int height = Math.max(1, Math.round(bounds.height()));
+        Bitmap.Config config = bitmap.getConfig() != null ? bitmap.getConfig() : Bitmap.Config.ARGB_8888;
+        Bitmap target = BitmapPool.get().get(width, height, config);
+        if (target == null) {
+            target = Bitmap.createBitmap(width, height, config);
+        } else {
+            target.eraseColor(Color.TRANSPARENT);
+        }
+        target.setHasAlpha(bitmap.hasAlpha());
+        // a density scaled decode carries its target density, keep the canvas from scaling it a second time
+        target.setDensity(bitmap.getDensity());
+        new Canvas(target).drawBitmap(bitmap, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        BitmapPool.get().put(bitmap);
+        return target;
     }
 }
@@ -0,0 +1,138 @@
+package com.blezede.compressor;
+
+import java.nio.ByteBuffer;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/10 10:05
+ * Description: Reads EXIF fields straight from the JPEG bytes so the source does not have to be opened again.
+ */
+class Exif {
+
+    static final int ORIENTATION_NORMAL = 1;
+    static final int ORIENTATION_ROTATE_180 = 3;
+    static final int ORIENTATION_ROTATE_90 = 6;
+    static final int ORIENTATION_ROTATE_270 = 8;
+
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_EOI = 0xD9;
+    private static final int MARKER_APP1 = 0xE1;
+    private static final int EXIF_HEADER = 0x45786966; // "Exif"
+
+    /**
+     * @return the EXIF orientation of a JPEG, {@link #ORIENTATION_NORMAL} if there is none
+     */
+    static int getOrientation(ByteBuffer jpeg) {
+        int tiff = findTiffHeader(jpeg);
+        if (tiff < 0) {
+            return ORIENTATION_NORMAL;
+        }
+        int entry = findIfd0Entry(jpeg, tiff, TAG_ORIENTATION);
+        if (entry < 0) {
+            return ORIENTATION_NORMAL;
+        }
+        boolean little = isLittleEndian(jpeg, tiff);
+        int orientation = readShort(jpeg, entry + 8, little);
+        return orientation >= 1 && orientation <= 8 ? orientation : ORIENTATION_NORMAL;
+    }
+
+    static int getRotationDegrees(ByteBuffer jpeg) {
+        return toDegrees(getOrientation(jpeg));
+    }
+
+    static int toDegrees(int orientation) {
+        switch (orientation) {
+            case ORIENTATION_ROTATE_90:
+                return 90;
+            case ORIENTATION_ROTATE_180:
+                return 180;
+            case ORIENTATION_ROTATE_270:
+                return 270;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return the absolute offset of the TIFF header inside the APP1 segment, -1 if the image has no EXIF
+     */
+    static int findTiffHeader(ByteBuffer jpeg) {
+        int offset = jpeg.position();
+        int limit = jpeg.limit();
+        if (limit - offset < 4 || (jpeg.get(offset) & 0xFF) != 0xFF || (jpeg.get(offset + 1) & 0xFF) != MARKER_SOI) {
+            return -1;
+        }
+        offset += 2;
+        while (offset + 4 <= limit) {
+            if ((jpeg.get(offset) & 0xFF) != 0xFF) {
+                return -1;
+            }
+            int marker = jpeg.get(offset + 1) & 0xFF;
+            if (marker == 0xFF) {
+                // fill byte
+                offset++;
+                continue;
+            }
+            if (marker == MARKER_SOS || marker == MARKER_EOI) {
+                return -1;
+            }
+            int length = readShort(jpeg, offset + 2, false);
+            if (length < 2) {
+                return -1;
+            }
+            if (marker == MARKER_APP1 && length >= 16 && offset + 4 + 6 <= limit
+                    && readInt(jpeg, offset + 4, false) == EXIF_HEADER && jpeg.getShort(offset + 8) == 0) {
+                return offset + 10;
+            }
+            offset += 2 + length;
+        }
+        return -1;
+    }
+
+    static boolean isLittleEndian(ByteBuffer buffer, int tiff) {
+        return buffer.get(tiff) == 'I';
+    }
+
+    /**
+     * @return the absolute offset of the 12 byte IFD0 entry with the given tag, -1 if it is missing
+     */
+    static int findIfd0Entry(ByteBuffer buffer, int tiff, int tag) {
+        if (tiff + 8 > buffer.limit()) {
+            return -1;
+        }
+        boolean little = isLittleEndian(buffer, tiff);
+        int ifd = tiff + readInt(buffer, tiff + 4, little);
+        return findEntry(buffer, ifd, tag, little);
+    }
+
+    static int findEntry(ByteBuffer buffer, int ifd, int tag, boolean little) {
+        if (ifd < 0 || ifd + 2 > buffer.limit()) {
+            return -1;
+        }
+        int count = readShort(buffer, ifd, little);
+        for (int i = 0; i < count; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > buffer.limit()) {
+                return -1;
+            }
+            if (readShort(buffer, entry, little) == tag) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    static int readShort(ByteBuffer buffer, int offset, boolean little) {
+        int b0 = buffer.get(offset) & 0xFF;
+        int b1 = buffer.get(offset + 1) & 0xFF;
+        return little ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    static int readInt(ByteBuffer buffer, int offset, boolean little) {
+        int first = readShort(buffer, offset, little);
+        int second = readShort(buffer, offset + 2, little);
+        return little ? (second << 16) | first : (first << 16) | second;
+    }
+}
@@ -0,0 +1,369 @@
+package com.blezede.compressor;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/7 9:40
+ * Description: Writes the EXIF of an output from the one of its source without decoding any pixels. Only
+ * the orientation, when the photo was taken and with what camera and exposure are carried over. Location,
+ * maker notes, thumbnails, XMP and IPTC are dropped. A JPEG can be copied with its metadata replaced and
+ * its compressed data untouched, or an encoder's output can get the segment inserted as it streams by.
+ */
+class ExifWriter {
+
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_APP0 = 0xE0;
+    private static final int MARKER_APP1 = 0xE1;
+    private static final int MARKER_APP13 = 0xED;
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TYPE_SHORT = 3;
+    private static final int TYPE_LONG = 4;
+    /**
+     * Bytes per component of the TIFF types 1 - 12.
+     */
+    private static final int[] TYPE_SIZES = {0, 1, 1, 2, 4, 8, 1, 1, 2, 4, 8, 4, 8};
+    /**
+     * Longer values are not worth carrying into a compressed output.
+     */
+    private static final int MAX_VALUE_SIZE = 256;
+    private static final int[] IFD0_TAGS = {
+            0x010F, // Make
+            0x0110, // Model
+            0x0131, // Software
+            0x0132, // DateTime
+    };
+    private static final int[] EXIF_TAGS = {
+            0x829A, // ExposureTime
+            0x829D, // FNumber
+            0x8827, // ISOSpeedRatings
+            0x9003, // DateTimeOriginal
+            0x9004, // DateTimeDigitized
+            0x9010, // OffsetTime
+            0x9011, // OffsetTimeOriginal
+            0x9012, // OffsetTimeDigitized
+            0x9209, // Flash
+            0x920A, // FocalLength
+            0x9290, // SubSecTime
+            0x9291, // SubSecTimeOriginal
+            0x9292, // SubSecTimeDigitized
+            0xA434, // LensModel
+    };
+    private static final byte[] EXIF_HEADER = {'E', 'x', 'i', 'f', 0, 0};
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private static class Entry {
+        final int tag;
+        final int type;
+        final int count;
+        byte[] value;
+
+        Entry(int tag, int type, int count, byte[] value) {
+            this.tag = tag;
+            this.type = type;
+            this.count = count;
+            this.value = value;
+        }
+    }
+
+    /**
+     * @param jpeg        the source, tags are only copied from a JPEG with EXIF
+     * @param orientation the orientation of the output, {@link Exif#ORIENTATION_NORMAL} once its pixels are upright
+     * @param keepTags    whether to copy the time, camera and exposure tags or to write the orientation only
+     * @return the APP1 segment including its marker, or null if the output needs no EXIF
+     */
+    static byte[] build(ByteBuffer jpeg, int orientation, boolean keepTags) {
+        boolean little = false;
+        List<Entry> ifd0 = new ArrayList<>();
+        List<Entry> exif = new ArrayList<>();
+        int tiff = keepTags ? Exif.findTiffHeader(jpeg) : -1;
+        if (tiff >= 0 && tiff + 8 <= jpeg.limit()) {
+            little = Exif.isLittleEndian(jpeg, tiff);
+            int ifd = tiff + Exif.readInt(jpeg, tiff + 4, little);
+            copy(jpeg, tiff, ifd, IFD0_TAGS, little, ifd0);
+            int pointer = Exif.findEntry(jpeg, ifd, TAG_EXIF_IFD, little);
+            if (pointer >= 0) {
+                copy(jpeg, tiff, tiff + Exif.readInt(jpeg, pointer + 8, little), EXIF_TAGS, little, exif);
+            }
+        }
+        if (orientation == Exif.ORIENTATION_NORMAL && ifd0.isEmpty() && exif.isEmpty()) {
+            return null;
+        }
+        ByteOrder order = little ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        ifd0.add(new Entry(TAG_ORIENTATION, TYPE_SHORT, 1,
+                ByteBuffer.allocate(2).order(order).putShort((short) orientation).array()));
+        Entry pointer = null;
+        if (!exif.isEmpty()) {
+            pointer = new Entry(TAG_EXIF_IFD, TYPE_LONG, 1, new byte[4]);
+            ifd0.add(pointer);
+        }
+        sort(ifd0);
+        sort(exif);
+        // TIFF header, IFD0 and its values, then the EXIF IFD and its values
+        int exifOffset = 8 + getSize(ifd0);
+        if (pointer != null) {
+            pointer.value = ByteBuffer.allocate(4).order(order).putInt(exifOffset).array();
+        }
+        int tiffSize = exifOffset + (exif.isEmpty() ? 0 : getSize(exif));
+        int length = 2 + EXIF_HEADER.length + tiffSize;
+        if (length > 0xFFFF) {
+            return null;
+        }
+        ByteBuffer segment = ByteBuffer.allocate(2 + length);
+        segment.put((byte) 0xFF).put((byte) MARKER_APP1).putShort((short) length).put(EXIF_HEADER);
+        segment.order(order);
+        segment.put((byte) (little ? 'I' : 'M')).put((byte) (little ? 'I' : 'M')).putShort((short) 42).putInt(8);
+        int start = segment.position() - 8;
+        writeIfd(segment, start, ifd0);
+        if (!exif.isEmpty()) {
+            writeIfd(segment, start, exif);
+        }
+        return segment.array();
+    }
+
+    /**
+     * Copy a JPEG with its EXIF, XMP and IPTC segments replaced by {@code app1}. Everything else, the
+     * color profile, the tables, the frame and the scans, is copied byte for byte.
+     *
+     * @param app1 the segment from {@link #build}, or null to only drop the metadata
+     * @return false, before anything was written, if the segments of the source can not be followed
+     */
+    static boolean rewrite(ByteBuffer jpeg, byte[] app1, OutputStream out) throws IOException {
+        int offset = jpeg.position();
+        int limit = jpeg.limit();
+        if (limit - offset < 4 || (jpeg.get(offset) & 0xFF) != 0xFF || (jpeg.get(offset + 1) & 0xFF) != MARKER_SOI) {
+            return false;
+        }
+        // the start and end of every segment to keep, up to the first scan
+        List<int[]> segments = new ArrayList<>();
+        offset += 2;
+        while (true) {
+            if (offset + 4 > limit || (jpeg.get(offset) & 0xFF) != 0xFF) {
+                return false;
+            }
+            int marker = jpeg.get(offset + 1) & 0xFF;
+            if (marker == 0xFF) {
+                // fill byte
+                offset++;
+                continue;
+            }
+            if (marker == MARKER_SOS) {
+                break;
+            }
+            int end = offset + 2 + Exif.readShort(jpeg, offset + 2, false);
+            if (end <= offset + 2 || end > limit) {
+                return false;
+            }
+            if (marker != MARKER_APP1 && marker != MARKER_APP13) {
+                segments.add(new int[]{offset, end, marker});
+            }
+            offset = end;
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        out.write(0xFF);
+        out.write(MARKER_SOI);
+        boolean inserted = app1 == null;
+        for (int[] segment : segments) {
+            // EXIF goes first, after a JFIF header if there is one
+            if (!inserted && segment[2] != MARKER_APP0) {
+                out.write(app1);
+                inserted = true;
+            }
+            write(jpeg, segment[0], segment[1], buffer, out);
+        }
+        if (!inserted) {
+            out.write(app1);
+        }
+        write(jpeg, offset, limit, buffer, out);
+        return true;
+    }
+
+    /**
+     * @return a stream that inserts {@code app1} into the JPEG written through it, after the start of image
+     * and a JFIF header if there is one, like {@link #rewrite}. Close it once the image is written.
+     */
+    static OutputStream insert(OutputStream out, byte[] app1) {
+        return app1 != null ? new InsertingOutputStream(out, app1) : out;
+    }
+
+    private static void copy(ByteBuffer jpeg, int tiff, int ifd, int[] tags, boolean little, List<Entry> out) {
+        for (int tag : tags) {
+            int entry = Exif.findEntry(jpeg, ifd, tag, little);
+            if (entry < 0) {
+                continue;
+            }
+            int type = Exif.readShort(jpeg, entry + 2, little);
+            int count = Exif.readInt(jpeg, entry + 4, little);
+            if (type <= 0 || type >= TYPE_SIZES.length || count <= 0 || count > MAX_VALUE_SIZE) {
+                continue;
+            }
+            int size = TYPE_SIZES[type] * count;
+            if (size > MAX_VALUE_SIZE) {
+                continue;
+            }
+            // values of up to four bytes sit in the entry itself
+            int offset = size <= 4 ? entry + 8 : tiff + Exif.readInt(jpeg, entry + 8, little);
+            if (offset < tiff || offset + size > jpeg.limit()) {
+                continue;
+            }
+            byte[] value = new byte[size];
+            for (int i = 0; i < size; i++) {
+                value[i] = jpeg.get(offset + i);
+            }
+            out.add(new Entry(tag, type, count, value));
+        }
+    }
+
+    private static void sort(List<Entry> entries) {
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return a.tag < b.tag ? -1 : (a.tag == b.tag ? 0 : 1);
+            }
+        });
+    }
+
+    /**
+     * @return the bytes of an IFD and the values that do not fit into its entries, each padded to an even length
+     */
+    private static int getSize(List<Entry> entries) {
+        int size = 2 + entries.size() * 12 + 4;
+        for (Entry entry : entries) {
+            if (entry.value.length > 4) {
+                size += (entry.value.length + 1) & ~1;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @param tiff where the TIFF header starts in {@code out}, offsets count from there
+     */
+    private static void writeIfd(ByteBuffer out, int tiff, List<Entry> entries) {
+        int data = out.position() - tiff + 2 + entries.size() * 12 + 4;
+        out.putShort((short) entries.size());
+        for (Entry entry : entries) {
+            out.putShort((short) entry.tag).putShort((short) entry.type).putInt(entry.count);
+            if (entry.value.length <= 4) {
+                out.put(entry.value);
+                for (int i = entry.value.length; i < 4; i++) {
+                    out.put((byte) 0);
+                }
+            } else {
+                out.putInt(data);
+                data += (entry.value.length + 1) & ~1;
+            }
+        }
+        // no next IFD, thumbnails are not carried over
+        out.putInt(0);
+        for (Entry entry : entries) {
+            if (entry.value.length > 4) {
+                out.put(entry.value);
+                if ((entry.value.length & 1) != 0) {
+                    out.put((byte) 0);
+                }
+            }
+        }
+    }
+
+    private static void write(ByteBuffer source, int from, int to, byte[] buffer, OutputStream out) throws IOException {
+        ByteBuffer view = source.duplicate();
+        view.limit(to).position(from);
+        while (view.hasRemaining()) {
+            int length = Math.min(buffer.length, view.remaining());
+            view.get(buffer, 0, length);
+            out.write(buffer, 0, length);
+        }
+    }
+
+    /**
+     * Passes the start of image marker and a JFIF header right after it on, inserts the segment and
+     * then gets out of the way. The few bytes of the first segment header are held back until it is
+     * known whether it is JFIF, close hands them on if the stream ends before.
+     */
+    private static class InsertingOutputStream extends FilterOutputStream {
+
+        private final byte[] mSegment;
+        /**
+         * The start of image marker, then the marker and length of the segment after it.
+         */
+        private final byte[] mHead = new byte[6];
+        private int mHeadLength;
+        /**
+         * Bytes of the JFIF header still to pass on before inserting.
+         */
+        private int mSkip;
+        private boolean mInserted;
+
+        InsertingOutputStream(OutputStream out, byte[] segment) {
+            super(out);
+            this.mSegment = segment;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (mInserted) {
+                out.write(b);
+                return;
+            }
+            if (mSkip > 0) {
+                out.write(b);
+                if (--mSkip == 0) {
+                    insert();
+                }
+                return;
+            }
+            mHead[mHeadLength++] = (byte) b;
+            if (mHeadLength < mHead.length) {
+                return;
+            }
+            if ((mHead[2] & 0xFF) == 0xFF && (mHead[3] & 0xFF) == MARKER_APP0) {
+                out.write(mHead);
+                mSkip = (((mHead[4] & 0xFF) << 8) | (mHead[5] & 0xFF)) - 2;
+                if (mSkip <= 0) {
+                    insert();
+                }
+            } else {
+                out.write(mHead, 0, 2);
+                insert();
+                out.write(mHead, 2, mHead.length - 2);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            // only the first bytes go one by one, until the segment is in
+            while (!mInserted && len > 0) {
+                write(b[off++] & 0xFF);
+                len--;
+            }
+            if (len > 0) {
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!mInserted && mSkip == 0) {
+                out.write(mHead, 0, mHeadLength);
+                mHeadLength = 0;
+            }
+            super.close();
+        }
+
+        private void insert() throws IOException {
+            out.write(mSegment);
+            mInserted = true;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.blezede.compressor;
+
+import android.graphics.Bitmap;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/26 9:55
+ * Description: Writes every output into a directory, through a temp file that is renamed into place once complete.
+ */
+public class FileSink implements OutputSink {
+
+    private final File mDir;
+    private final OutputNameStrategy mNameStrategy;
+    private final Map<OutputStream, File[]> mFiles = new IdentityHashMap<>();
+
+    public FileSink(String dirPath) {
+        this(dirPath, new SequenceNameStrategy());
+    }
+
+    public FileSink(String dirPath, OutputNameStrategy nameStrategy) {
+        this.mDir = new File(dirPath);
+        this.mNameStrategy = nameStrategy;
+    }
+
+    @Override
+    public OutputStream open(InputStreamProvider source, Bitmap.CompressFormat format) throws IOException {
+        if (!mDir.mkdirs() && !mDir.isDirectory()) {
+            throw new IOException("can not create " + mDir);
+        }
+        File dest = new File(mDir, mNameStrategy.getName(source, format));
+        File temp = Common.createTempFile(dest);
+        OutputStream out = new ChannelOutputStream(new FileOutputStream(temp).getChannel());
+        synchronized (mFiles) {
+            mFiles.put(out, new File[]{temp, dest});
+        }
+        return out;
+    }
+
+    @Override
+    public String commit(InputStreamProvider source, OutputStream out) throws IOException {
+        File[] files = remove(out);
+        out.close();
+        if (files == null || !Common.commit(files[0], files[1])) {
+            throw new IOException("can not move output into place");
+        }
+        return files[1].getAbsolutePath();
+    }
+
+    @Override
+    public void abort(InputStreamProvider source, OutputStream out) {
+        File[] files = remove(out);
+        Common.closeQuietly(out);
+        if (files != null) {
+            files[0].delete();
+        }
+    }
+
+    private File[] remove(OutputStream out) {
+        synchronized (mFiles) {
+            return mFiles.remove(out);
+        }
+    }
+}
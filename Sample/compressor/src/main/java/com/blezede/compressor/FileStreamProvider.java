@@ -0,0 +1,40 @@
+package com.blezede.compressor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/12 10:40
+ * Description: The source of {@link Compressor.Builder#load(File)} and {@link Compressor.Builder#load(String)}.
+ * Being a {@link BufferStreamProvider} lets {@link ImageSource} map the file instead of reading it, which
+ * it never does for other providers just because their path names a file.
+ */
+class FileStreamProvider implements BufferStreamProvider {
+
+    private final File mFile;
+    private final String mPath;
+
+    FileStreamProvider(File file, String path) {
+        this.mFile = file;
+        this.mPath = path;
+    }
+
+    @Override
+    public InputStream open() throws IOException {
+        return new FileInputStream(mFile);
+    }
+
+    @Override
+    public ByteBuffer openBuffer() throws IOException {
+        return ImageSource.map(mFile);
+    }
+
+    @Override
+    public String getPath() {
+        return mPath;
+    }
+}
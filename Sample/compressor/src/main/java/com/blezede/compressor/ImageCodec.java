@@ -0,0 +1,48 @@
+package com.blezede.compressor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/6 10:30
+ * Description: The backend Engine reads and writes images with. Everything around it, sizing, rotation,
+ * quality search, pooling and output, stays the same whichever codec is plugged in, so backends can be
+ * swapped and benchmarked against each other. On Android the image type is {@code Bitmap} and the config
+ * type {@code Bitmap.Config}, see {@link BitmapCodec}. The interface itself is plain Java, so a codec for
+ * another image type can run the same pipeline on a JVM.
+ *
+ * @param <B> the decoded image
+ * @param <C> how the decoded pixels are stored
+ */
+public interface ImageCodec<B, C> {
+
+    /**
+     * Read the pixel size of an encoded image without decoding it. Only asked for formats the built in
+     * header parser does not know.
+     *
+     * @param source the encoded bytes between position and limit, must not be modified
+     * @return {width, height}, or null if the codec can not read the source
+     */
+    int[] probe(ByteBuffer source);
+
+    /**
+     * @param source     the encoded bytes between position and limit, must not be modified
+     * @param sampleSize read every n-th pixel of every n-th row, a codec may round it down to a power of two
+     * @param width      the size wanted after sampling, a codec that can not scale while decoding returns
+     *                   the sampled pixels and the engine scales the rest of the way
+     * @param height     see width
+     * @param config     how to store the pixels
+     * @param reuse      a mutable image at least as large as the result that may be decoded into, or null
+     * @return the decoded image, or null if it can not be decoded, or does not fit into {@code reuse}
+     */
+    B decode(ByteBuffer source, int sampleSize, int width, int height, C config, B reuse);
+
+    /**
+     * @param format  JPEG, PNG or WEBP
+     * @param quality 0 - 100, ignored by lossless formats
+     * @return false if the image could not be encoded
+     */
+    boolean encode(B image, String format, int quality, OutputStream out) throws IOException;
+}
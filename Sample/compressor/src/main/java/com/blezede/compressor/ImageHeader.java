@@ -0,0 +1,193 @@
+package com.blezede.compressor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/28 10:15
+ * Description: What the first bytes of an encoded image tell about its pixels without decoding it: the
+ * format, the size, the EXIF rotation, whether it can contain transparency and whether it is grayscale.
+ * PNG is read up to the first IDAT chunk to find a tRNS chunk, WEBP from its VP8X, VP8L or VP8 header,
+ * JPEG up to its frame header. Only those bytes are touched, so a mapped source reads a few pages at most.
+ */
+class ImageHeader {
+
+    static final int FORMAT_UNKNOWN = 0;
+    static final int FORMAT_JPEG = 1;
+    static final int FORMAT_PNG = 2;
+    static final int FORMAT_WEBP = 3;
+    static final int FORMAT_GIF = 4;
+
+    private static final long PNG_SIGNATURE = 0x89504E470D0A1A0AL;
+    private static final int PNG_IHDR = 0x49484452;
+    private static final int PNG_TRNS = 0x74524E53;
+    private static final int PNG_IDAT = 0x49444154;
+    private static final int PNG_COLOR_GRAY = 0;
+    private static final int PNG_COLOR_GRAY_ALPHA = 4;
+    private static final int PNG_COLOR_RGBA = 6;
+    private static final int RIFF = 0x52494646;
+    private static final int WEBP = 0x57454250;
+    private static final int WEBP_VP8X = 0x56503858;
+    private static final int WEBP_VP8L = 0x5650384C;
+    private static final int WEBP_ALPHA_FLAG = 0x10;
+    private static final int VP8L_SIGNATURE = 0x2F;
+    private static final int GIF = 0x474946;
+    private static final int VP8_START_CODE = 0x9D012A;
+    private static final int SIZE_MASK_14 = 0x3FFF;
+
+    final int format;
+    /**
+     * True unless the header proves the image is opaque.
+     */
+    final boolean hasAlpha;
+    final boolean grayscale;
+    /**
+     * 0 if the header does not tell, like the size.
+     */
+    final int width;
+    final int height;
+    /**
+     * Clockwise rotation from the EXIF orientation of a JPEG.
+     */
+    final int degree;
+
+    private ImageHeader(int format, boolean hasAlpha, boolean grayscale, int width, int height, int degree) {
+        this.format = format;
+        this.hasAlpha = hasAlpha;
+        this.grayscale = grayscale;
+        this.width = width;
+        this.height = height;
+        this.degree = degree;
+    }
+
+    private ImageHeader(int format, boolean hasAlpha, boolean grayscale, int width, int height) {
+        this(format, hasAlpha, grayscale, width, height, 0);
+    }
+
+    /**
+     * @return whether the size is known and BitmapFactory does not have to decode the bounds
+     */
+    boolean hasSize() {
+        return width > 0 && height > 0;
+    }
+
+    static ImageHeader parse(ByteBuffer data) {
+        ByteBuffer buffer = data.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int start = buffer.position();
+        int length = buffer.remaining();
+        try {
+            if (length >= 8 && buffer.getLong(start) == PNG_SIGNATURE) {
+                return parsePng(buffer, start);
+            }
+            if (length >= 12 && buffer.getInt(start) == RIFF && buffer.getInt(start + 8) == WEBP) {
+                return parseWebp(buffer, start);
+            }
+            if (length >= 3 && (buffer.get(start) & 0xFF) == 0xFF && (buffer.get(start + 1) & 0xFF) == 0xD8) {
+                return parseJpeg(buffer, start);
+            }
+            if (length >= 10 && (buffer.getInt(start) >>> 8) == GIF) {
+                int width = buffer.get(start + 6) & 0xFF | (buffer.get(start + 7) & 0xFF) << 8;
+                int height = buffer.get(start + 8) & 0xFF | (buffer.get(start + 9) & 0xFF) << 8;
+                return new ImageHeader(FORMAT_GIF, true, false, width, height);
+            }
+        } catch (IndexOutOfBoundsException ignored) {
+            // truncated, fall through to the safe answer
+        }
+        return new ImageHeader(FORMAT_UNKNOWN, true, false, 0, 0);
+    }
+
+    private static ImageHeader parsePng(ByteBuffer buffer, int start) {
+        int offset = start + 8;
+        if (buffer.getInt(offset + 4) != PNG_IHDR) {
+            return new ImageHeader(FORMAT_PNG, true, false, 0, 0);
+        }
+        int width = buffer.getInt(offset + 8);
+        int height = buffer.getInt(offset + 12);
+        int colorType = buffer.get(offset + 8 + 9) & 0xFF;
+        boolean grayscale = colorType == PNG_COLOR_GRAY || colorType == PNG_COLOR_GRAY_ALPHA;
+        if (colorType == PNG_COLOR_GRAY_ALPHA || colorType == PNG_COLOR_RGBA) {
+            return new ImageHeader(FORMAT_PNG, true, grayscale, width, height);
+        }
+        // every other color type is only transparent with a tRNS chunk, which has to come before the pixels
+        while (offset + 8 <= buffer.limit()) {
+            int chunkLength = buffer.getInt(offset);
+            int type = buffer.getInt(offset + 4);
+            if (type == PNG_TRNS) {
+                return new ImageHeader(FORMAT_PNG, true, grayscale, width, height);
+            }
+            if (type == PNG_IDAT || chunkLength < 0) {
+                return new ImageHeader(FORMAT_PNG, false, grayscale, width, height);
+            }
+            offset += 12 + chunkLength;
+        }
+        return new ImageHeader(FORMAT_PNG, true, grayscale, width, height);
+    }
+
+    private static ImageHeader parseWebp(ByteBuffer buffer, int start) {
+        int chunk = buffer.getInt(start + 12);
+        if (chunk == WEBP_VP8X) {
+            // 24 bit canvas width and height minus one, little endian
+            int width = readLittleEndian(buffer, start + 24, 3) + 1;
+            int height = readLittleEndian(buffer, start + 27, 3) + 1;
+            return new ImageHeader(FORMAT_WEBP, (buffer.get(start + 20) & WEBP_ALPHA_FLAG) != 0, false, width, height);
+        }
+        if (chunk == WEBP_VP8L) {
+            if ((buffer.get(start + 20) & 0xFF) != VP8L_SIGNATURE) {
+                return new ImageHeader(FORMAT_WEBP, true, false, 0, 0);
+            }
+            // 14 bits width minus one, 14 bits height minus one, then the alpha_is_used bit, little endian
+            int bits = readLittleEndian(buffer, start + 21, 4);
+            int width = (bits & SIZE_MASK_14) + 1;
+            int height = ((bits >>> 14) & SIZE_MASK_14) + 1;
+            return new ImageHeader(FORMAT_WEBP, ((bits >>> 28) & 1) != 0, false, width, height);
+        }
+        // simple lossy "VP8 " has no alpha channel, its size follows the frame tag and start code
+        int width = 0;
+        int height = 0;
+        if ((buffer.getInt(start + 23) >>> 8) == VP8_START_CODE) {
+            width = readLittleEndian(buffer, start + 26, 2) & SIZE_MASK_14;
+            height = readLittleEndian(buffer, start + 28, 2) & SIZE_MASK_14;
+        }
+        return new ImageHeader(FORMAT_WEBP, false, false, width, height);
+    }
+
+    private static int readLittleEndian(ByteBuffer buffer, int offset, int count) {
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            value |= (buffer.get(offset + i) & 0xFF) << (8 * i);
+        }
+        return value;
+    }
+
+    /**
+     * Size and component count come from the frame header, the rotation from the EXIF segment before it.
+     */
+    private static ImageHeader parseJpeg(ByteBuffer buffer, int start) {
+        int degree = Exif.getRotationDegrees(buffer);
+        int offset = start + 2;
+        while (offset + 4 <= buffer.limit()) {
+            if ((buffer.get(offset) & 0xFF) != 0xFF) {
+                break;
+            }
+            int marker = buffer.get(offset + 1) & 0xFF;
+            if (marker == 0xFF) {
+                offset++;
+                continue;
+            }
+            int segmentLength = buffer.getShort(offset + 2) & 0xFFFF;
+            boolean frame = marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+            if (frame) {
+                int height = buffer.getShort(offset + 5) & 0xFFFF;
+                int width = buffer.getShort(offset + 7) & 0xFFFF;
+                boolean grayscale = (buffer.get(offset + 9) & 0xFF) == 1;
+                return new ImageHeader(FORMAT_JPEG, false, grayscale, width, height, degree);
+            }
+            if (marker == 0xDA || marker == 0xD9) {
+                break;
+            }
+            offset += 2 + segmentLength;
+        }
+        return new ImageHeader(FORMAT_JPEG, false, false, 0, 0, degree);
+    }
+}
@@ -0,0 +1,109 @@
+package com.blezede.compressor;
+
+import android.graphics.BitmapRegionDecoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/9 15:48
+ * Description: The encoded bytes of one source image, read exactly once. Files and Uris with a descriptor
+ * are memory-mapped through {@link BufferStreamProvider}, everything else is buffered in memory, and every
+ * decode pass works on the same view.
+ */
+class ImageSource {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final ByteBuffer mBuffer;
+
+    private ImageSource(ByteBuffer buffer) {
+        this.mBuffer = buffer;
+    }
+
+    static ImageSource open(InputStreamProvider provider) throws IOException {
+        if (provider instanceof BufferStreamProvider) {
+            ByteBuffer buffer = ((BufferStreamProvider) provider).openBuffer();
+            if (buffer != null) {
+                return new ImageSource(buffer.slice());
+            }
+        }
+        // a foreign provider may transform, decrypt or count what it streams, so only read it through open()
+        InputStream in = provider.open();
+        if (in == null) {
+            throw new IOException("can not open source " + provider.getPath());
+        }
+        try {
+            return new ImageSource(ByteBuffer.wrap(readFully(in)));
+        } finally {
+            in.close();
+        }
+    }
+
+    static ByteBuffer map(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            return map(in.getChannel());
+        } finally {
+            in.close();
+        }
+    }
+
+    static ByteBuffer map(FileChannel channel) throws IOException {
+        // the mapping stays valid after the channel is closed
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(in.available(), BUFFER_SIZE));
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int length;
+        while ((length = in.read(buffer)) != -1) {
+            out.write(buffer, 0, length);
+        }
+        return out.toByteArray();
+    }
+
+    int length() {
+        return mBuffer.remaining();
+    }
+
+    /**
+     * @return a read-only view of the whole source, its position is independent of other views
+     */
+    ByteBuffer buffer() {
+        return mBuffer.asReadOnlyBuffer();
+    }
+
+    InputStream newStream() {
+        return new ByteBufferInputStream(mBuffer);
+    }
+
+    /**
+     * @return a view of the whole source for an {@link ImageCodec}, it keeps the backing array so codecs can
+     * decode straight from it and must not write to it
+     */
+    ByteBuffer data() {
+        return mBuffer.duplicate();
+    }
+
+    /**
+     * @return a region decoder over the source, or null if its format does not support region decoding
+     */
+    BitmapRegionDecoder newRegionDecoder() {
+        try {
+            if (mBuffer.hasArray()) {
+                return BitmapRegionDecoder.newInstance(mBuffer.array(), mBuffer.arrayOffset() + mBuffer.position(), mBuffer.remaining(), false);
+            }
+            return BitmapRegionDecoder.newInstance(newStream(), false);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.blezede.compressor;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/8 14:10
+ * Description: The compressions running in this process, by source, target dir and output options. A
+ * request for an output that is already being made waits for it and returns the same file instead of
+ * decoding and encoding the source a second time, whichever Compressor instance or thread it comes from.
+ * If the running one is cancelled or throws, the next waiting request compresses the source itself.
+ */
+class InFlightRegistry {
+
+    /**
+     * How often a waiting request checks whether its own job was cancelled.
+     */
+    private static final long WAIT_SLICE_MS = 200;
+    private static final InFlightRegistry sInstance = new InFlightRegistry();
+
+    private final Map<String, Call> mCalls = new HashMap<>();
+
+    interface Task {
+        String run();
+    }
+
+    private static class Call {
+        String result;
+        boolean done;
+        boolean completed;
+    }
+
+    static InFlightRegistry get() {
+        return sInstance;
+    }
+
+    /**
+     * @return what identifies the source within this process, or null for one that is only a stream
+     */
+    static String identify(InputStreamProvider source) {
+        if (source instanceof UriStreamProvider) {
+            return ((UriStreamProvider) source).getUri().toString();
+        }
+        String path = source.getPath();
+        if (path == null || path.length() == 0) {
+            return null;
+        }
+        return new File(path).getAbsolutePath();
+    }
+
+    /**
+     * Run the task, or wait for the one running under the same key and take its result.
+     *
+     * @param key     null runs the task on its own
+     * @param job     stops the wait once cancelled, the running task carries on for the others
+     * @param metrics marked as shared when the result came from another request
+     */
+    String run(String key, CompressionJob job, CompressMetrics metrics, Task task) {
+        if (key == null) {
+            return task.run();
+        }
+        while (true) {
+            Call call;
+            boolean leader;
+            synchronized (mCalls) {
+                call = mCalls.get(key);
+                leader = call == null;
+                if (leader) {
+                    call = new Call();
+                    mCalls.put(key, call);
+                }
+            }
+            if (leader) {
+                return lead(key, call, task);
+            }
+            synchronized (call) {
+                while (!call.done) {
+                    if (job != null) {
+                        job.throwIfCancelled();
+                    }
+                    try {
+                        call.wait(WAIT_SLICE_MS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new CancellationException();
+                    }
+                }
+            }
+            if (call.completed) {
+                if (metrics != null) {
+                    metrics.onShared();
+                }
+                return call.result;
+            }
+            // cancelled or thrown, compress it here
+        }
+    }
+
+    private String lead(String key, Call call, Task task) {
+        String result = null;
+        boolean completed = false;
+        try {
+            result = task.run();
+            completed = true;
+            return result;
+        } finally {
+            synchronized (mCalls) {
+                mCalls.remove(key);
+            }
+            synchronized (call) {
+                call.result = result;
+                call.completed = completed;
+                call.done = true;
+                call.notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.blezede.compressor;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/23 10:20
+ * Description: The file helpers behind {@link Common} that only need java.io, kept apart so the
+ * benchmark module can run them on a plain JVM.
+ */
+class IoUtils {
+
+    private IoUtils() {
+    }
+
+    /**
+     * @return newPath, or "" if the copy failed. A failed copy leaves nothing behind.
+     */
+    static String copyFile(String oldPath, String newPath) {
+        if (oldPath == null || oldPath.length() == 0 || newPath == null || newPath.length() == 0)
+            return "";
+        File source = new File(oldPath);
+        if (!source.isFile()) {
+            return "";
+        }
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(source);
+            return copy(in.getChannel(), new File(newPath)) ? newPath : "";
+        } catch (IOException e) {
+            e.printStackTrace();
+            return "";
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Copy a whole channel to {@code dest} with {@link FileChannel#transferTo} and move it into place once complete.
+     */
+    static boolean copy(FileChannel source, File dest) throws IOException {
+        File temp = createTempFile(dest);
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            FileChannel target = out.getChannel();
+            long size = source.size();
+            long position = 0;
+            while (position < size) {
+                long count = source.transferTo(position, size - position, target);
+                if (count <= 0) {
+                    break;
+                }
+                position += count;
+            }
+            out.close();
+            out = null;
+            return position == size && commit(temp, dest);
+        } finally {
+            closeQuietly(out);
+            temp.delete();
+        }
+    }
+
+    static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    static File createTempFile(File dest) throws IOException {
+        return File.createTempFile(dest.getName() + ".", ".tmp", dest.getParentFile());
+    }
+
+    static boolean commit(File temp, File dest) {
+        if (temp.renameTo(dest)) {
+            return true;
+        }
+        temp.delete();
+        return false;
+    }
+}
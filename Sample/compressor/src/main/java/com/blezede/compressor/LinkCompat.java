@@ -0,0 +1,33 @@
+package com.blezede.compressor;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+
+import java.io.File;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/12 10:05
+ * Description: Keeps {@link Os} and {@link ErrnoException}, which only exist since Lollipop, out of the
+ * classes loaded on older devices. Only call it after checking the SDK level.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+class LinkCompat {
+
+    private LinkCompat() {
+    }
+
+    /**
+     * @return false if the link could not be made, e.g. across file systems or onto an existing file
+     */
+    static boolean link(File source, File dest) {
+        try {
+            Os.link(source.getAbsolutePath(), dest.getAbsolutePath());
+            return true;
+        } catch (ErrnoException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.blezede.compressor;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/25 10:05
+ * Description: The default callback executor, posts to the main looper.
+ */
+class MainThreadExecutor implements Executor {
+
+    private static final MainThreadExecutor sInstance = new MainThreadExecutor();
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private MainThreadExecutor() {
+    }
+
+    static MainThreadExecutor get() {
+        return sInstance;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        mHandler.post(command);
+    }
+}
@@ -0,0 +1,158 @@
+package com.blezede.compressor;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.SystemClock;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/1 9:30
+ * Description: One budget of bitmap memory for every compression in the process, whichever Compressor or
+ * thread it runs on. A compression reserves its estimated decode footprint before it decodes and waits while
+ * the budget is taken. One that is alone may always start. When the system reports memory pressure the budget
+ * shrinks for a while and the pool is emptied, and compressions that no longer fit decode at a larger
+ * sample size instead of running out of memory.
+ */
+class MemoryGovernor implements ComponentCallbacks2 {
+
+    /**
+     * How long a trim level keeps the budget down after the last report.
+     */
+    private static final long PRESSURE_TIMEOUT_MS = 30 * 1000;
+    private static final long WAIT_SLICE_MS = 200;
+    private static final MemoryGovernor sInstance = new MemoryGovernor(Runtime.getRuntime().maxMemory() / 4);
+
+    private long mBudget;
+    private long mInFlight;
+    private int mActive;
+    private int mPressureDivisor = 1;
+    private long mPressureTime;
+    private boolean mRegistered;
+
+    MemoryGovernor(long budget) {
+        this.mBudget = budget;
+    }
+
+    static MemoryGovernor get() {
+        return sInstance;
+    }
+
+    /**
+     * Listen for trim levels of the application, only the first call registers.
+     */
+    synchronized void register(Context context) {
+        if (mRegistered || context == null) {
+            return;
+        }
+        Context application = context.getApplicationContext();
+        (application != null ? application : context).registerComponentCallbacks(this);
+        mRegistered = true;
+    }
+
+    synchronized void setBudget(long budget) {
+        this.mBudget = Math.max(0, budget);
+        notifyAll();
+    }
+
+    /**
+     * @return the bytes compressions may hold right now, less under memory pressure
+     */
+    synchronized long getBudget() {
+        if (mPressureDivisor > 1 && SystemClock.elapsedRealtime() - mPressureTime > PRESSURE_TIMEOUT_MS) {
+            mPressureDivisor = 1;
+        }
+        return mBudget / mPressureDivisor;
+    }
+
+    /**
+     * @return whether a compression of this footprint has to decode smaller to fit at all
+     */
+    boolean exceedsBudget(long bytes) {
+        return bytes > getBudget();
+    }
+
+    Lease newLease() {
+        return new Lease();
+    }
+
+    private synchronized void acquire(Lease lease, long bytes, CompressionJob job) {
+        try {
+            while (mActive > 0 && mInFlight + bytes > getBudget()) {
+                if (job != null) {
+                    job.throwIfCancelled();
+                }
+                // released leases notify, the slice only bounds how late a cancel or an expired pressure is seen
+                wait(WAIT_SLICE_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mInFlight += bytes;
+        mActive++;
+        lease.mBytes = bytes;
+    }
+
+    private synchronized void release(Lease lease) {
+        if (lease.mBytes < 0) {
+            return;
+        }
+        mInFlight -= lease.mBytes;
+        mActive--;
+        lease.mBytes = -1;
+        notifyAll();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        int divisor;
+        if (level >= TRIM_MEMORY_COMPLETE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            divisor = 4;
+        } else if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_LOW) {
+            divisor = 2;
+        } else if (level == TRIM_MEMORY_RUNNING_MODERATE) {
+            // the pool is the cheapest memory to give back
+            BitmapPool.get().clear();
+            return;
+        } else {
+            // UI_HIDDEN and BACKGROUND are about the app, not about memory running out
+            return;
+        }
+        onPressure(divisor);
+    }
+
+    @Override
+    public void onLowMemory() {
+        onPressure(4);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    private void onPressure(int divisor) {
+        BitmapPool.get().clear();
+        synchronized (this) {
+            // lets an expired level go before the new one is applied
+            getBudget();
+            mPressureDivisor = Math.max(mPressureDivisor, divisor);
+            mPressureTime = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * The bytes one compression holds, from its reservation until its bitmaps are back in the pool.
+     */
+    final class Lease {
+
+        private long mBytes = -1;
+
+        void acquire(long bytes, CompressionJob job) {
+            MemoryGovernor.this.acquire(this, bytes, job);
+        }
+
+        void release() {
+            MemoryGovernor.this.release(this);
+        }
+    }
+}
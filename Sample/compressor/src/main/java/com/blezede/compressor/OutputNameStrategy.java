@@ -0,0 +1,17 @@
+package com.blezede.compressor;
+
+import android.graphics.Bitmap;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/18 9:52
+ * Description: Names the files written to the target dir. It is called from several worker threads at
+ * once and has to return a different name for every call, otherwise outputs overwrite each other.
+ */
+public interface OutputNameStrategy {
+
+    /**
+     * @return a file name without directory, e.g. "IMG_0001.jpeg"
+     */
+    String getName(InputStreamProvider source, Bitmap.CompressFormat format);
+}
@@ -0,0 +1,34 @@
+package com.blezede.compressor;
+
+import android.graphics.Bitmap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/26 9:40
+ * Description: Where compressed images go instead of the target dir, e.g. straight into an upload.
+ * A sink is only ever called from one thread at a time, one image after the other, see
+ * {@link Compressor.Builder#outputSink(OutputSink, int)}.
+ */
+public interface OutputSink {
+
+    /**
+     * @return the stream the encoded bytes of {@code source} are written to
+     */
+    OutputStream open(InputStreamProvider source, Bitmap.CompressFormat format) throws IOException;
+
+    /**
+     * Every byte has been written to {@code out}, make the output final.
+     *
+     * @return what identifies the output, e.g. a path or a url. It is reported as the result of the source,
+     * "" counts as a failure
+     */
+    String commit(InputStreamProvider source, OutputStream out) throws IOException;
+
+    /**
+     * Writing or committing failed, discard whatever {@code out} received so far.
+     */
+    void abort(InputStreamProvider source, OutputStream out);
+}
@@ -0,0 +1,51 @@
+package com.blezede.compressor;
+
+import android.graphics.Bitmap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/26 10:25
+ * Description: Writes every output into a stream opened by an {@link Opener}, e.g. the body of an upload
+ * request, and closes it once the output is complete. The result of a source is its own path, or its Uri
+ * if it has none, since the output lives wherever the stream went.
+ */
+public class OutputStreamSink implements OutputSink {
+
+    public interface Opener {
+
+        OutputStream open(InputStreamProvider source, Bitmap.CompressFormat format) throws IOException;
+    }
+
+    private final Opener mOpener;
+
+    public OutputStreamSink(Opener opener) {
+        this.mOpener = opener;
+    }
+
+    @Override
+    public OutputStream open(InputStreamProvider source, Bitmap.CompressFormat format) throws IOException {
+        OutputStream out = mOpener.open(source, format);
+        if (out == null) {
+            throw new IOException("no stream for " + source.getPath());
+        }
+        return out;
+    }
+
+    @Override
+    public String commit(InputStreamProvider source, OutputStream out) throws IOException {
+        out.close();
+        String path = source.getPath();
+        if ((path == null || path.length() == 0) && source instanceof UriStreamProvider) {
+            return ((UriStreamProvider) source).getUri().toString();
+        }
+        return path != null ? path : "";
+    }
+
+    @Override
+    public void abort(InputStreamProvider source, OutputStream out) {
+        Common.closeQuietly(out);
+    }
+}
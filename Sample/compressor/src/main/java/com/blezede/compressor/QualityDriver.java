@@ -0,0 +1,119 @@
+package com.blezede.compressor;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/9 10:45
+ * Description: Encodes an image the way the options ask for: at the fixed quality or the one
+ * {@link QualityEstimator} predicts, lowered by {@link QualitySearch} until the output fits maxSize.
+ * Any {@link ImageCodec} can do the encoding, so the benchmark drives it exactly like {@link Engine}.
+ */
+class QualityDriver<B> {
+
+    interface Listener {
+        /**
+         * Called after every encode, may throw to stop the rest of them.
+         *
+         * @param bytes the length of the encoded image
+         */
+        void onEncoded(int quality, long bytes);
+    }
+
+    private final ImageCodec<B, ?> mCodec;
+    private final String mFormat;
+    private final int mQuality;
+    private final float mMaxSize;
+    private final float mSizeTolerance;
+    private final float mBitsPerPixel;
+
+    /**
+     * @param format       the codec format name, PNG ignores the quality
+     * @param maxSize      the byte budget, 0 for none
+     * @param bitsPerPixel the density to predict the quality for, 0 to keep {@code quality}
+     */
+    QualityDriver(ImageCodec<B, ?> codec, String format, int quality, float maxSize, float sizeTolerance, float bitsPerPixel) {
+        this.mCodec = codec;
+        this.mFormat = format;
+        this.mQuality = quality;
+        this.mMaxSize = maxSize;
+        this.mSizeTolerance = sizeTolerance;
+        this.mBitsPerPixel = bitsPerPixel;
+    }
+
+    /**
+     * The fixed quality, or the one {@link QualityEstimator} predicts for the content of the image.
+     */
+    int selectQuality(QualityEstimator.Pixels pixels, int width, int height) {
+        if (mBitsPerPixel <= 0 || "PNG".equals(mFormat)) {
+            return mQuality;
+        }
+        return QualityEstimator.estimate(QualityEstimator.complexity(pixels, width, height), mBitsPerPixel);
+    }
+
+    /**
+     * @param quality  the first quality to try, the search only goes down from there
+     * @param reserved bytes of maxSize that go to something other than the encoded image
+     * @return the quality that fits maxSize and its encoded bytes, or null without a size limit
+     */
+    QualitySearch.Result search(final B image, int quality, long reserved, final Listener listener) throws IOException {
+        if (mMaxSize <= 0) {
+            return null;
+        }
+        return QualitySearch.search(new QualitySearch.Encoder() {
+            @Override
+            public boolean encode(int quality, CountingOutputStream out) throws IOException {
+                boolean encoded = mCodec.encode(image, mFormat, quality, out);
+                if (listener != null) {
+                    listener.onEncoded(quality, out.count());
+                }
+                return encoded;
+            }
+        }, quality, Math.max(1, (long) mMaxSize - reserved), mSizeTolerance);
+    }
+
+    /**
+     * Write the bytes the search kept, or encode at the quality it settled on.
+     *
+     * @param quality the selected quality, used when there was no search
+     * @return false if the codec failed, {@code out} holds a truncated image then
+     */
+    boolean write(B image, int quality, QualitySearch.Result result, OutputStream out, Listener listener) throws IOException {
+        if (result != null && result.data != null) {
+            result.data.writeTo(out);
+            return true;
+        }
+        if (result != null) {
+            quality = result.quality;
+        }
+        CountingStream counting = new CountingStream(out);
+        boolean encoded = mCodec.encode(image, mFormat, quality, counting);
+        if (listener != null) {
+            listener.onEncoded(quality, counting.mCount);
+        }
+        return encoded;
+    }
+
+    private static class CountingStream extends FilterOutputStream {
+
+        long mCount;
+
+        CountingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            mCount++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            mCount += len;
+        }
+    }
+}
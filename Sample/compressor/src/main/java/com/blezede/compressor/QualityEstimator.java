@@ -0,0 +1,105 @@
+package com.blezede.compressor;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/30 10:20
+ * Description: Picks a quality per image from how detailed it is, without encoding it. The detail is the
+ * mean luma difference between neighbouring pixels in a grid of small patches of the output bitmap, which
+ * predicts the bits per pixel a JPEG encoder spends at each quality. The quality whose prediction meets the
+ * target is used, so flat images keep a high quality for few bytes and busy ones stop growing past the target.
+ */
+class QualityEstimator {
+
+    static final int MIN_QUALITY = 30;
+    static final int MAX_QUALITY = 95;
+    private static final int PATCH_SIZE = 32;
+    private static final int GRID = 4;
+
+    // bits per pixel = intercept + slope * complexity, fitted on libjpeg output of photos and screenshots
+    private static final int[] QUALITIES = {MIN_QUALITY, 50, 70, 85, MAX_QUALITY};
+    private static final float[] INTERCEPTS = {0.156f, 0.192f, 0.264f, 0.502f, 1.253f};
+    private static final float[] SLOPES = {0.0403f, 0.0648f, 0.0950f, 0.1334f, 0.1842f};
+
+    interface Pixels {
+
+        /**
+         * Copy a rectangle of ARGB pixels into {@code out}, row by row.
+         */
+        void get(int[] out, int x, int y, int width, int height);
+    }
+
+    /**
+     * @return the mean absolute luma difference of neighbouring pixels, 0 for a flat image
+     */
+    static float complexity(Pixels pixels, int width, int height) {
+        int patchWidth = Math.min(PATCH_SIZE, width);
+        int patchHeight = Math.min(PATCH_SIZE, height);
+        int[] argb = new int[patchWidth * patchHeight];
+        int[] luma = new int[argb.length];
+        long sum = 0;
+        long count = 0;
+        for (int row = 0; row < GRID; row++) {
+            int top = (height - patchHeight) * row / (GRID - 1);
+            for (int column = 0; column < GRID; column++) {
+                int left = (width - patchWidth) * column / (GRID - 1);
+                pixels.get(argb, left, top, patchWidth, patchHeight);
+                for (int i = 0; i < argb.length; i++) {
+                    int color = argb[i];
+                    luma[i] = (((color >> 16) & 0xFF) * 77 + ((color >> 8) & 0xFF) * 150 + (color & 0xFF) * 29) >> 8;
+                }
+                for (int y = 0; y < patchHeight; y++) {
+                    int offset = y * patchWidth;
+                    for (int x = 0; x < patchWidth; x++) {
+                        int i = offset + x;
+                        if (x > 0) {
+                            sum += Math.abs(luma[i] - luma[i - 1]);
+                            count++;
+                        }
+                        if (y > 0) {
+                            sum += Math.abs(luma[i] - luma[i - patchWidth]);
+                            count++;
+                        }
+                    }
+                }
+            }
+        }
+        return count > 0 ? sum / (float) count : 0;
+    }
+
+    static float predictBitsPerPixel(float complexity, int quality) {
+        if (quality <= QUALITIES[0]) {
+            return INTERCEPTS[0] + SLOPES[0] * complexity;
+        }
+        for (int i = 1; i < QUALITIES.length; i++) {
+            if (quality <= QUALITIES[i]) {
+                float low = INTERCEPTS[i - 1] + SLOPES[i - 1] * complexity;
+                float high = INTERCEPTS[i] + SLOPES[i] * complexity;
+                float t = (quality - QUALITIES[i - 1]) / (float) (QUALITIES[i] - QUALITIES[i - 1]);
+                return low + (high - low) * t;
+            }
+        }
+        int last = QUALITIES.length - 1;
+        return INTERCEPTS[last] + SLOPES[last] * complexity;
+    }
+
+    /**
+     * @return the highest quality predicted to stay within {@code bitsPerPixel}, between MIN_QUALITY and MAX_QUALITY
+     */
+    static int estimate(float complexity, float bitsPerPixel) {
+        if (predictBitsPerPixel(complexity, MAX_QUALITY) <= bitsPerPixel) {
+            return MAX_QUALITY;
+        }
+        // the prediction grows with the quality, so bisect on it
+        int low = MIN_QUALITY;
+        int high = MAX_QUALITY;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (predictBitsPerPixel(complexity, mid) <= bitsPerPixel) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,107 @@
+package com.blezede.compressor;
+
+import java.io.IOException;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/11 10:25
+ * Description: Finds the highest quality whose encoded size fits a byte budget. Instead of stepping
+ * down 10 at a time it interpolates between the closest too-large and fitting attempts, and stops as
+ * soon as an attempt lands within {@code tolerance} below the budget.
+ */
+class QualitySearch {
+
+    private static final int MIN_QUALITY = 0;
+    private static final int MAX_ATTEMPTS = 8;
+
+    interface Encoder {
+        /**
+         * @return false if the image could not be encoded
+         */
+        boolean encode(int quality, CountingOutputStream out) throws IOException;
+    }
+
+    static class Result {
+        /**
+         * The chosen quality.
+         */
+        final int quality;
+        /**
+         * The bytes encoded at {@link #quality}, or null if even the lowest quality exceeds the budget.
+         */
+        final CountingOutputStream data;
+        /**
+         * The number of encodes it took.
+         */
+        final int attempts;
+
+        Result(int quality, CountingOutputStream data, int attempts) {
+            this.quality = quality;
+            this.data = data;
+            this.attempts = attempts;
+        }
+    }
+
+    private QualitySearch() {
+    }
+
+    /**
+     * @param quality   the preferred quality, it is kept if its output already fits
+     * @param maxSize   the byte budget
+     * @param tolerance accept the first result in [maxSize * (1 - tolerance), maxSize]
+     * @throws IOException if an encode fails, its few or no bytes must not pass for a fitting result
+     */
+    static Result search(Encoder encoder, int quality, long maxSize, float tolerance) throws IOException {
+        int limit = (int) Math.min(Integer.MAX_VALUE - 8, maxSize);
+        CountingOutputStream scratch = new CountingOutputStream(limit);
+        CountingOutputStream best = null;
+        int attempts = 1;
+        encode(encoder, quality, scratch);
+        if (scratch.count() <= maxSize) {
+            return new Result(quality, scratch, attempts);
+        }
+        long acceptable = (long) (maxSize * (1 - tolerance));
+        int hi = quality;
+        long hiSize = scratch.count();
+        int lo = MIN_QUALITY - 1;
+        long loSize = -1;
+        while (hi - lo > 1 && attempts < MAX_ATTEMPTS) {
+            int next;
+            if (loSize >= 0) {
+                next = lo + (int) ((hi - lo) * (double) (maxSize - loSize) / (hiSize - loSize));
+            } else {
+                // the encoded size shrinks a little slower than the quality, aim a bit low
+                next = (int) (hi * 0.9 * maxSize / hiSize);
+            }
+            next = Math.max(lo + 1, Math.min(hi - 1, next));
+            scratch.reset();
+            encode(encoder, next, scratch);
+            attempts++;
+            if (scratch.count() <= maxSize) {
+                lo = next;
+                loSize = scratch.count();
+                if (loSize >= acceptable) {
+                    best = scratch;
+                    break;
+                }
+                // keep the fitting bytes and encode the next attempt into the other buffer
+                CountingOutputStream previous = best;
+                best = scratch;
+                scratch = previous != null ? previous : new CountingOutputStream(limit);
+            } else {
+                hi = next;
+                hiSize = scratch.count();
+            }
+        }
+        if (best != null) {
+            return new Result(lo, best, attempts);
+        }
+        return new Result(Math.max(lo, MIN_QUALITY), null, attempts);
+    }
+
+    private static void encode(Encoder encoder, int quality, CountingOutputStream out) throws IOException {
+        if (!encoder.encode(quality, out)) {
+            throw new IOException("can not encode at quality " + quality);
+        }
+    }
+}
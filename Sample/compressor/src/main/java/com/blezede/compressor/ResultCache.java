@@ -0,0 +1,209 @@
+package com.blezede.compressor;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/15 11:02
+ * Description: Remembers compressed outputs on disk. An entry is named after a hash of the source
+ * identity and every option that changes the output, so compressing the same image with the same
+ * options again just returns the existing file. Entries are evicted least recently used first once the
+ * directory grows past its byte limit, and dropped when they have not been used for longer than the max age.
+ */
+class ResultCache {
+
+    static final long DEFAULT_MAX_SIZE = 50 * 1024 * 1024;
+    static final long DEFAULT_MAX_AGE = 7L * 24 * 60 * 60 * 1000;
+
+    private static final Pattern ENTRY_NAME = Pattern.compile("[0-9a-f]{32}\\.[a-z]+");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final Map<String, ResultCache> sCaches = new HashMap<>();
+
+    private final File mDir;
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long mMaxSize = DEFAULT_MAX_SIZE;
+    private long mMaxAge = DEFAULT_MAX_AGE;
+    private long mSize;
+    private boolean mLoaded;
+
+    private ResultCache(File dir) {
+        this.mDir = dir;
+    }
+
+    /**
+     * Every directory has one cache per process, shared by all Compressor instances writing there.
+     */
+    static ResultCache get(String dirPath) {
+        File dir = new File(dirPath).getAbsoluteFile();
+        synchronized (sCaches) {
+            ResultCache cache = sCaches.get(dir.getPath());
+            if (cache == null) {
+                cache = new ResultCache(dir);
+                sCaches.put(dir.getPath(), cache);
+            }
+            return cache;
+        }
+    }
+
+    synchronized void setLimits(long maxSize, long maxAge) {
+        if (maxSize > 0)
+            this.mMaxSize = maxSize;
+        if (maxAge > 0)
+            this.mMaxAge = maxAge;
+        if (mLoaded) {
+            trim();
+        }
+    }
+
+    /**
+     * @param source  identifies the source by path, length and modification time when content is null
+     * @param content hash the encoded bytes instead, for sources without a stable path
+     * @param options everything else the output depends on
+     * @return the key, or null if the source can not be identified
+     */
+    static String key(String source, ByteBuffer content, String options) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+        if (content != null) {
+            digest.update(content.duplicate());
+        } else {
+            if (source == null || source.length() == 0) {
+                return null;
+            }
+            File file = new File(source);
+            if (!file.isFile()) {
+                return null;
+            }
+            digest.update((file.getAbsolutePath() + '|' + file.length() + '|' + file.lastModified()).getBytes(UTF_8));
+        }
+        digest.update(options.getBytes(UTF_8));
+        byte[] hash = digest.digest();
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX[(hash[i] >> 4) & 0x0F];
+            hex[i * 2 + 1] = HEX[hash[i] & 0x0F];
+        }
+        return new String(hex);
+    }
+
+    File fileFor(String key, String extension) {
+        return new File(mDir, key + extension);
+    }
+
+    /**
+     * @return the path of a still existing output for the key, or null
+     */
+    synchronized String lookup(String key, String extension) {
+        load();
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.file.getName().endsWith(extension) || !entry.file.isFile()) {
+            remove(key);
+            return null;
+        }
+        entry.accessTime = System.currentTimeMillis();
+        entry.file.setLastModified(entry.accessTime);
+        return entry.file.getAbsolutePath();
+    }
+
+    /**
+     * Register a freshly written output and evict what no longer fits.
+     */
+    synchronized void put(String key, File file) {
+        load();
+        remove(key);
+        Entry entry = new Entry(file, file.length(), System.currentTimeMillis());
+        mEntries.put(key, entry);
+        mSize += entry.length;
+        trim();
+    }
+
+    private void remove(String key) {
+        Entry entry = mEntries.remove(key);
+        if (entry != null) {
+            mSize -= entry.length;
+        }
+    }
+
+    private void load() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        File[] files = mDir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && ENTRY_NAME.matcher(file.getName()).matches();
+            }
+        });
+        if (files == null) {
+            return;
+        }
+        final long[] modified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            modified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return modified[a] < modified[b] ? -1 : (modified[a] == modified[b] ? 0 : 1);
+            }
+        });
+        for (Integer i : order) {
+            String name = files[i].getName();
+            Entry entry = new Entry(files[i], files[i].length(), modified[i]);
+            mEntries.put(name.substring(0, name.indexOf('.')), entry);
+            mSize += entry.length;
+        }
+        trim();
+    }
+
+    private void trim() {
+        long expired = System.currentTimeMillis() - mMaxAge;
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        // never evict the newest entry, it may just have been handed out
+        while (iterator.hasNext() && mEntries.size() > 1) {
+            Entry entry = iterator.next().getValue();
+            if (mSize <= mMaxSize && entry.accessTime >= expired) {
+                // everything after the eldest entry is newer
+                break;
+            }
+            iterator.remove();
+            mSize -= entry.length;
+            entry.file.delete();
+        }
+    }
+
+    private static class Entry {
+        final File file;
+        final long length;
+        long accessTime;
+
+        Entry(File file, long length, long accessTime) {
+            this.file = file;
+            this.length = length;
+            this.accessTime = accessTime;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.blezede.compressor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/25 10:20
+ * Description: Hands the results of one batch from the worker threads to the listener and callback. Calls
+ * run one at a time in the order they were dispatched, even on a multi-threaded callback executor, and
+ * in ordered mode a result waits until every source loaded before it has been delivered.
+ */
+class ResultDispatcher {
+
+    private final CompressionJob mJob;
+    private final CompressListener mListener;
+    private final CompressCallback mCallback;
+    private final boolean mOrdered;
+    private final Executor mExecutor;
+    private final CompressResult[] mResults;
+    private int mNext;
+    private int mDelivered;
+
+    ResultDispatcher(CompressionJob job, int total, CompressListener listener, CompressCallback callback,
+                     Executor executor, boolean ordered) {
+        this.mJob = job;
+        this.mListener = listener;
+        this.mCallback = callback;
+        this.mOrdered = ordered;
+        this.mExecutor = new SerialExecutor(executor);
+        this.mResults = new CompressResult[total];
+    }
+
+    /**
+     * Called once per source on the worker thread that finished it.
+     */
+    void dispatch(CompressResult result) {
+        if (mListener == null && mCallback == null) {
+            return;
+        }
+        synchronized (this) {
+            mResults[result.getIndex()] = result;
+            if (!mOrdered) {
+                deliver(result);
+                return;
+            }
+            while (mNext < mResults.length && mResults[mNext] != null) {
+                deliver(mResults[mNext++]);
+            }
+        }
+    }
+
+    private void deliver(final CompressResult result) {
+        final int completed = ++mDelivered;
+        final List<CompressResult> all = completed == mResults.length
+                ? Collections.unmodifiableList(new ArrayList<>(Arrays.asList(mResults))) : null;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mJob.isCancelled()) {
+                    return;
+                }
+                if (mListener != null) {
+                    if (result.isSuccess()) {
+                        mListener.onSuccess(result.getPath());
+                    } else {
+                        mListener.onFiled(result.getSourcePath());
+                    }
+                }
+                if (mCallback != null) {
+                    mCallback.onResult(result);
+                    mCallback.onProgress(completed, mResults.length);
+                    if (all != null) {
+                        mCallback.onComplete(all);
+                    }
+                }
+            }
+        });
+    }
+
+    private static class SerialExecutor implements Executor {
+
+        private final Executor mDelegate;
+        private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+        private Runnable mActive;
+
+        SerialExecutor(Executor delegate) {
+            this.mDelegate = delegate;
+        }
+
+        @Override
+        public synchronized void execute(final Runnable command) {
+            mTasks.offer(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        command.run();
+                    } finally {
+                        scheduleNext();
+                    }
+                }
+            });
+            if (mActive == null) {
+                scheduleNext();
+            }
+        }
+
+        private synchronized void scheduleNext() {
+            if ((mActive = mTasks.poll()) != null) {
+                mDelegate.execute(mActive);
+            }
+        }
+    }
+}
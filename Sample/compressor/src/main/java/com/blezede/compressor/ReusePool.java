@@ -0,0 +1,109 @@
+package com.blezede.compressor;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/10 11:05
+ * Description: The bookkeeping of {@link BitmapPool}: items bucketed by their size, handed out from the
+ * smallest bucket that fits, and evicted least recently released first once the pool exceeds its byte cap.
+ */
+abstract class ReusePool<T> {
+
+    /**
+     * Do not hand out an item that is more than this many times larger than requested.
+     */
+    private static final int MAX_SIZE_MULTIPLE = 4;
+
+    private final TreeMap<Integer, ArrayDeque<T>> mBuckets = new TreeMap<>();
+    private final LinkedList<T> mLru = new LinkedList<>();
+    private long mMaxSize;
+    private long mSize;
+
+    ReusePool(long maxSize) {
+        this.mMaxSize = maxSize;
+    }
+
+    /**
+     * @return the bytes the item holds, the same for as long as it is pooled
+     */
+    abstract int sizeOf(T item);
+
+    /**
+     * Called for items that leave the pool without being handed out.
+     */
+    abstract void evict(T item);
+
+    synchronized void setMaxSize(long maxSize) {
+        this.mMaxSize = Math.max(0, maxSize);
+        trimToSize(mMaxSize);
+    }
+
+    synchronized long getSize() {
+        return mSize;
+    }
+
+    /**
+     * @return the pooled item of the smallest size that holds {@code required} bytes, or null if there is none
+     * or it would waste too much
+     */
+    synchronized T take(long required) {
+        if (required > Integer.MAX_VALUE) {
+            return null;
+        }
+        Map.Entry<Integer, ArrayDeque<T>> entry = mBuckets.ceilingEntry((int) required);
+        if (entry == null || entry.getKey() > required * MAX_SIZE_MULTIPLE) {
+            return null;
+        }
+        T item = entry.getValue().poll();
+        if (entry.getValue().isEmpty()) {
+            mBuckets.remove(entry.getKey());
+        }
+        mLru.remove(item);
+        mSize -= entry.getKey();
+        return item;
+    }
+
+    synchronized void put(T item) {
+        int size = sizeOf(item);
+        if (size > mMaxSize) {
+            evict(item);
+            return;
+        }
+        ArrayDeque<T> bucket = mBuckets.get(size);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            mBuckets.put(size, bucket);
+        }
+        bucket.offer(item);
+        mLru.addLast(item);
+        mSize += size;
+        trimToSize(mMaxSize);
+    }
+
+    synchronized void clear() {
+        trimToSize(0);
+    }
+
+    private void trimToSize(long maxSize) {
+        Iterator<T> iterator = mLru.iterator();
+        while (mSize > maxSize && iterator.hasNext()) {
+            T item = iterator.next();
+            iterator.remove();
+            int size = sizeOf(item);
+            ArrayDeque<T> bucket = mBuckets.get(size);
+            if (bucket != null) {
+                bucket.remove(item);
+                if (bucket.isEmpty()) {
+                    mBuckets.remove(size);
+                }
+            }
+            mSize -= size;
+            evict(item);
+        }
+    }
+}
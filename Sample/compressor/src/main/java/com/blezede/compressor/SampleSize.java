@@ -0,0 +1,52 @@
+package com.blezede.compressor;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/23 10:05
+ * Description: The sample size math of {@link Engine}. It only deals with dimensions, so it has no
+ * Android dependencies and the benchmark module can run it on a plain JVM.
+ */
+class SampleSize {
+
+    private SampleSize() {
+    }
+
+    /**
+     * The default sampling when no max width or height is set, close to what WeChat sends.
+     */
+    static int computeSize(int srcWidth, int srcHeight) {
+        srcWidth = srcWidth % 2 == 1 ? srcWidth + 1 : srcWidth;
+        srcHeight = srcHeight % 2 == 1 ? srcHeight + 1 : srcHeight;
+
+        int longSide = Math.max(srcWidth, srcHeight);
+        int shortSide = Math.min(srcWidth, srcHeight);
+
+        float scale = ((float) shortSide / longSide);
+        if (scale <= 1 && scale > 0.5625) {
+            if (longSide < 1664) {
+                return 1;
+            } else if (longSide < 4990) {
+                return 2;
+            } else if (longSide > 4990 && longSide < 10240) {
+                return 4;
+            } else {
+                return longSide / 1280;
+            }
+        } else if (scale <= 0.5625 && scale > 0.5) {
+            return longSide / 1280 == 0 ? 1 : longSide / 1280;
+        } else {
+            return (int) Math.ceil(longSide / (1280.0 / scale)) + 1;
+        }
+    }
+
+    /**
+     * The largest power of two sample size that still decodes at least {@code scale} of the source, the
+     * decoder rounds everything else down anyway.
+     */
+    static int forScale(float scale) {
+        if (scale <= 0 || scale >= 1) {
+            return 1;
+        }
+        return Integer.highestOneBit(Math.max(1, (int) (1 / scale)));
+    }
+}
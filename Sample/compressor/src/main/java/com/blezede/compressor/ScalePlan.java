@@ -0,0 +1,58 @@
+package com.blezede.compressor;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/9 10:20
+ * Description: How a source is brought to its output size: the exact scale, the power of two sample size
+ * to decode by and the target dimensions. Whatever the codec leaves after sampling is scaled in the
+ * rotation pass. Only dimensions, so the benchmark runs the same decisions as {@link Engine}.
+ */
+class ScalePlan {
+
+    /**
+     * The output size relative to the source, at most 1.
+     */
+    final float scale;
+    /**
+     * The sample size to decode by.
+     */
+    final int sampleSize;
+    final int width;
+    final int height;
+
+    ScalePlan(int srcWidth, int srcHeight, float scale) {
+        this.scale = scale;
+        this.sampleSize = SampleSize.forScale(scale);
+        this.width = Math.max(1, Math.round(srcWidth * scale));
+        this.height = Math.max(1, Math.round(srcHeight * scale));
+    }
+
+    /**
+     * @param maxWidthOrHeight the longest output side, 0 for the default sampling
+     */
+    static float getScale(int srcWidth, int srcHeight, float maxWidthOrHeight) {
+        if (maxWidthOrHeight > 0) {
+            return Math.min(1f, maxWidthOrHeight / Math.max(srcWidth, srcHeight));
+        }
+        return 1f / SampleSize.computeSize(srcWidth, srcHeight);
+    }
+
+    int getLongSide() {
+        return Math.max(width, height);
+    }
+
+    /**
+     * @return the scale still to apply to a decoded image of this size, 0 if it is within a pixel already
+     */
+    float getRemainingScale(int decodedWidth, int decodedHeight) {
+        return getRemainingScale(decodedWidth, decodedHeight, getLongSide());
+    }
+
+    static float getRemainingScale(int width, int height, int targetLongSide) {
+        int longSide = Math.max(width, height);
+        if (longSide - targetLongSide > 1) {
+            return targetLongSide / (float) longSide;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,24 @@
+package com.blezede.compressor;
+
+import android.graphics.Bitmap;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/18 10:05
+ * Description: The default output names: the current time, a random nonce picked once per process and a
+ * sequence number. The sequence keeps names unique between threads without locking, the nonce keeps
+ * them unique between processes writing into the same dir.
+ */
+class SequenceNameStrategy implements OutputNameStrategy {
+
+    private static final String NONCE = Long.toString(new Random().nextInt(Integer.MAX_VALUE), 36);
+    private static final AtomicLong sSequence = new AtomicLong();
+
+    @Override
+    public String getName(InputStreamProvider source, Bitmap.CompressFormat format) {
+        return System.currentTimeMillis() + "_" + NONCE + "_" + sSequence.incrementAndGet() + "." + format.name().toLowerCase();
+    }
+}
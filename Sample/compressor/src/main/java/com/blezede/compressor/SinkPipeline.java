@@ -0,0 +1,118 @@
+package com.blezede.compressor;
+
+import android.graphics.Bitmap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/26 11:00
+ * Description: Moves encoded images from the compress workers to an {@link OutputSink} on a writer thread
+ * of its own, so the next image is decoded and encoded while the previous one is still being written.
+ * At most {@code capacity} images wait for or are in the sink at a time, a worker that finishes an image
+ * beyond that blocks until the sink catches up, which keeps a slow sink from piling up encoded bytes.
+ */
+class SinkPipeline {
+
+    static final int DEFAULT_CAPACITY = 2;
+    private static final int KEEP_ALIVE_SECONDS = 30;
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final AtomicInteger sCount = new AtomicInteger(1);
+
+    interface Callback {
+        /**
+         * Called on the writer thread, or on the submitting thread for a source that failed to encode.
+         *
+         * @param result what the sink committed, "" if the source failed
+         */
+        void onWritten(String result);
+    }
+
+    private final OutputSink mSink;
+    private final Bitmap.CompressFormat mFormat;
+    private final Semaphore mSlots;
+    private final ThreadPoolExecutor mWriter;
+
+    SinkPipeline(OutputSink sink, Bitmap.CompressFormat format, int capacity) {
+        this.mSink = sink;
+        this.mFormat = format;
+        this.mSlots = new Semaphore(Math.max(1, capacity));
+        this.mWriter = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "Compressor sink #" + sCount.getAndIncrement());
+            }
+        });
+        mWriter.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Hand an encoded image to the sink, blocking while the pipeline is full.
+     *
+     * @param data null if the source failed
+     * @param job  a cancelled job skips the sink, may be null
+     */
+    void submit(final InputStreamProvider source, final ByteBuffer data, final CompressionJob job, final Callback callback) {
+        if (data == null) {
+            callback.onWritten("");
+            return;
+        }
+        try {
+            mSlots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            callback.onWritten("");
+            return;
+        }
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                String result = "";
+                try {
+                    if (job == null || !job.isCancelled()) {
+                        result = write(source, data.duplicate());
+                    }
+                } finally {
+                    mSlots.release();
+                    callback.onWritten(result);
+                }
+            }
+        });
+    }
+
+    private String write(InputStreamProvider source, ByteBuffer data) {
+        OutputStream out = null;
+        try {
+            out = mSink.open(source, mFormat);
+            if (data.hasArray()) {
+                out.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            } else {
+                byte[] chunk = new byte[Math.min(CHUNK_SIZE, data.remaining())];
+                while (data.hasRemaining()) {
+                    int count = Math.min(chunk.length, data.remaining());
+                    data.get(chunk, 0, count);
+                    out.write(chunk, 0, count);
+                }
+            }
+            String result = mSink.commit(source, out);
+            out = null;
+            return result != null ? result : "";
+        } catch (IOException e) {
+            e.printStackTrace();
+            return "";
+        } finally {
+            if (out != null) {
+                mSink.abort(source, out);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.blezede.compressor;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/10 16:35
+ * Description: The tiles {@link TiledDecoder} walks, row by row. Each tile covers {@code TILE_SIZE * sample}
+ * source pixels, its region is padded by a few pixels where the source allows, and the source rect picks
+ * the tile back out of the sampled region.
+ */
+class TileGrid {
+
+    private final int mSrcWidth;
+    private final int mSrcHeight;
+    private final int mSample;
+    private final int mStep;
+    private final int mPadding;
+    private boolean mStarted;
+
+    /**
+     * The tile in source pixels.
+     */
+    int left, top, right, bottom;
+    /**
+     * The padded region to decode, in source pixels.
+     */
+    int regionLeft, regionTop, regionRight, regionBottom;
+    /**
+     * The tile within the decoded region, in sampled pixels.
+     */
+    int srcLeft, srcTop, srcRight, srcBottom;
+
+    TileGrid(int srcWidth, int srcHeight, int tileSize, int overlap, int sample) {
+        this.mSrcWidth = srcWidth;
+        this.mSrcHeight = srcHeight;
+        this.mSample = Math.max(1, sample);
+        this.mStep = tileSize * mSample;
+        this.mPadding = overlap * mSample;
+    }
+
+    /**
+     * @return false once every tile was visited
+     */
+    boolean next() {
+        if (!mStarted) {
+            mStarted = true;
+        } else if (right < mSrcWidth) {
+            left += mStep;
+        } else {
+            left = 0;
+            top += mStep;
+        }
+        if (top >= mSrcHeight || mSrcWidth <= 0) {
+            return false;
+        }
+        right = Math.min(mSrcWidth, left + mStep);
+        bottom = Math.min(mSrcHeight, top + mStep);
+        regionLeft = Math.max(0, left - mPadding);
+        regionTop = Math.max(0, top - mPadding);
+        regionRight = Math.min(mSrcWidth, right + mPadding);
+        regionBottom = Math.min(mSrcHeight, bottom + mPadding);
+        srcLeft = (left - regionLeft) / mSample;
+        srcTop = (top - regionTop) / mSample;
+        srcRight = srcLeft + (right - left + mSample - 1) / mSample;
+        srcBottom = srcTop + (bottom - top + mSample - 1) / mSample;
+        return true;
+    }
+}
@@ -0,0 +1,121 @@
+package com.blezede.compressor;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Build;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/24 10:30
+ * Description: Decodes very large images tile by tile with {@link BitmapRegionDecoder} and draws every
+ * tile scaled and rotated straight into the output bitmap. Each tile is sampled by the largest power of
+ * two that still keeps it at least as large as its part of the output, so the final filter step is less
+ * than 2:1 and stays sharp. Besides the output only one tile is ever held in memory, no matter how many
+ * pixels the source has.
+ */
+class TiledDecoder {
+
+    /**
+     * Edge length of a decoded tile in pixels.
+     */
+    static final int TILE_SIZE = 512;
+    /**
+     * Decoded pixels every tile reads beyond its edges, so filtering does not leave seams between tiles.
+     */
+    private static final int OVERLAP = 2;
+    /**
+     * Edge length of the bitmap a tile is decoded into, the tile and its overlap on both sides.
+     */
+    static final int DECODED_TILE_SIZE = TILE_SIZE + 2 * OVERLAP;
+
+    private TiledDecoder() {
+    }
+
+    /**
+     * @param scale  output size relative to the source, at most 1
+     * @param degree clockwise rotation applied to the output
+     * @param config null for ARGB_8888
+     * @return the scaled and rotated image, or null if the source can not be region decoded
+     */
+    static Bitmap decode(ImageSource image, int srcWidth, int srcHeight, float scale, int degree,
+                         Bitmap.Config config, CompressionJob job) {
+        BitmapRegionDecoder decoder = image.newRegionDecoder();
+        if (decoder == null) {
+            return null;
+        }
+        Bitmap output = null;
+        Bitmap tile = null;
+        try {
+            Matrix matrix = new Matrix();
+            matrix.postScale(scale, scale);
+            if (degree > 0)
+                matrix.postRotate(degree);
+            RectF bounds = new RectF(0, 0, srcWidth, srcHeight);
+            matrix.mapRect(bounds);
+            matrix.postTranslate(-bounds.left, -bounds.top);
+            int width = Math.max(1, Math.round(bounds.width()));
+            int height = Math.max(1, Math.round(bounds.height()));
+            Bitmap.Config outputConfig = config != null ? config : Bitmap.Config.ARGB_8888;
+            output = BitmapPool.get().get(width, height, outputConfig);
+            if (output == null) {
+                output = Bitmap.createBitmap(width, height, outputConfig);
+            } else {
+                output.eraseColor(Color.TRANSPARENT);
+            }
+
+            int sample = SampleSize.forScale(scale);
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sample;
+            options.inPreferredConfig = outputConfig;
+            // the region decoder draws into inBitmap without resizing it, so one tile serves every region
+            boolean reuse = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+            if (reuse) {
+                tile = BitmapPool.get().get(DECODED_TILE_SIZE, DECODED_TILE_SIZE, outputConfig);
+                if (tile == null) {
+                    tile = Bitmap.createBitmap(DECODED_TILE_SIZE, DECODED_TILE_SIZE, outputConfig);
+                }
+            }
+            Canvas canvas = new Canvas(output);
+            canvas.concat(matrix);
+            Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+            Rect region = new Rect();
+            Rect src = new Rect();
+            RectF dst = new RectF();
+            boolean hasAlpha = false;
+            TileGrid grid = new TileGrid(srcWidth, srcHeight, TILE_SIZE, OVERLAP, sample);
+            while (grid.next()) {
+                if (job != null) {
+                    job.throwIfCancelled();
+                }
+                region.set(grid.regionLeft, grid.regionTop, grid.regionRight, grid.regionBottom);
+                options.inBitmap = tile;
+                Bitmap decoded = decoder.decodeRegion(region, options);
+                if (decoded == null) {
+                    return null;
+                }
+                src.set(grid.srcLeft, grid.srcTop, grid.srcRight, grid.srcBottom);
+                dst.set(grid.left, grid.top, grid.right, grid.bottom);
+                canvas.drawBitmap(decoded, src, dst, paint);
+                hasAlpha |= decoded.hasAlpha();
+                if (decoded != tile) {
+                    decoded.recycle();
+                }
+            }
+            output.setHasAlpha(hasAlpha);
+            Bitmap result = output;
+            output = null;
+            return result;
+        } finally {
+            decoder.recycle();
+            BitmapPool.get().put(tile);
+            BitmapPool.get().put(output);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.blezede.compressor;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/29 9:40
+ * Description: The MediaStore Uris of one {@link Compressor.Builder#load(List)} call. The first provider
+ * that needs its path resolves all of them, with one {@code _id IN (...)} query per collection instead of
+ * a query per Uri. Uris that are not MediaStore items, or are missing from the result, query on their own.
+ */
+class UriBatch {
+
+    // older SQLite builds allow 999 arguments per statement
+    static final int MAX_ARGS = 500;
+    private static final String IMAGES_SEGMENT = "/images/";
+
+    private final Context mContext;
+    private final List<UriStreamProvider> mProviders = new ArrayList<>();
+    private boolean mResolved;
+
+    UriBatch(Context context) {
+        this.mContext = context;
+    }
+
+    void add(UriStreamProvider provider) {
+        mProviders.add(provider);
+    }
+
+    synchronized void resolve() {
+        if (mResolved) {
+            return;
+        }
+        mResolved = true;
+        // collection -> id -> providers, the same Uri may be loaded twice
+        Map<String, Map<String, List<UriStreamProvider>>> collections = new LinkedHashMap<>();
+        for (UriStreamProvider provider : mProviders) {
+            Uri uri = provider.getUri();
+            if (!ContentResolver.SCHEME_CONTENT.equals(uri.getScheme()) || !MediaStore.AUTHORITY.equals(uri.getAuthority())) {
+                continue;
+            }
+            String id = uri.getLastPathSegment();
+            String collection = getCollection(uri.toString(), id);
+            if (collection == null) {
+                continue;
+            }
+            Map<String, List<UriStreamProvider>> ids = collections.get(collection);
+            if (ids == null) {
+                ids = new HashMap<>();
+                collections.put(collection, ids);
+            }
+            List<UriStreamProvider> same = ids.get(id);
+            if (same == null) {
+                same = new ArrayList<>(1);
+                ids.put(id, same);
+            }
+            same.add(provider);
+        }
+        for (Map.Entry<String, Map<String, List<UriStreamProvider>>> entry : collections.entrySet()) {
+            for (List<String> chunk : split(new ArrayList<>(entry.getValue().keySet()), MAX_ARGS)) {
+                try {
+                    query(entry.getKey(), chunk, entry.getValue());
+                } catch (RuntimeException e) {
+                    // a provider without permission or columns, every Uri falls back to its own query
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void query(String collection, List<String> ids, Map<String, List<UriStreamProvider>> providers) {
+        boolean images = collection.contains(IMAGES_SEGMENT);
+        String[] projection = images
+                ? new String[]{MediaStore.MediaColumns._ID, MediaStore.MediaColumns.DATA, MediaStore.MediaColumns.SIZE, MediaStore.Images.ImageColumns.ORIENTATION}
+                : new String[]{MediaStore.MediaColumns._ID, MediaStore.MediaColumns.DATA, MediaStore.MediaColumns.SIZE};
+        Cursor cursor = mContext.getContentResolver().query(Uri.parse(collection), projection,
+                getSelection(ids.size()), ids.toArray(new String[ids.size()]), null);
+        if (null == cursor) {
+            return;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                List<UriStreamProvider> same = providers.get(cursor.getString(0));
+                if (same == null) {
+                    continue;
+                }
+                String path = cursor.getString(1);
+                long size = cursor.isNull(2) ? -1 : cursor.getLong(2);
+                int degree = images && !cursor.isNull(3) ? cursor.getInt(3) : -1;
+                for (UriStreamProvider provider : same) {
+                    provider.setResolved(path, size, degree);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return the collection of a MediaStore item Uri that ends in the numeric {@code id}, or null
+     */
+    static String getCollection(String uri, String id) {
+        if (!isId(id) || !uri.endsWith('/' + id)) {
+            return null;
+        }
+        return uri.substring(0, uri.length() - id.length() - 1);
+    }
+
+    /**
+     * @return {@code _id IN (?,...)} with {@code count} arguments
+     */
+    static String getSelection(int count) {
+        StringBuilder selection = new StringBuilder(MediaStore.MediaColumns._ID).append(" IN (");
+        for (int i = 0; i < count; i++) {
+            selection.append(i == 0 ? "?" : ",?");
+        }
+        return selection.append(')').toString();
+    }
+
+    /**
+     * @return consecutive views of at most {@code size} elements
+     */
+    static <T> List<List<T>> split(List<T> list, int size) {
+        List<List<T>> parts = new ArrayList<>();
+        for (int from = 0; from < list.size(); from += size) {
+            parts.add(list.subList(from, Math.min(list.size(), from + size)));
+        }
+        return parts;
+    }
+
+    private static boolean isId(String segment) {
+        if (segment == null || segment.length() == 0) {
+            return false;
+        }
+        for (int i = 0; i < segment.length(); i++) {
+            if (!Character.isDigit(segment.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,150 @@
+package com.blezede.compressor;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.MediaStore;
+import android.provider.OpenableColumns;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/4/17 10:18
+ * Description: Reads a source through the ContentResolver. Besides the plain stream it can hand out the
+ * file descriptor, which lets content Uris be mapped or copied with channels like ordinary files.
+ * Path and size are looked up with one query the first time either is asked for and kept from then on,
+ * or together with the rest of its {@link UriBatch}.
+ */
+class UriStreamProvider implements BufferStreamProvider {
+
+    private final Context mContext;
+    private final Uri mUri;
+    private final UriBatch mBatch;
+    private volatile boolean mResolved;
+    private String mPath;
+    private long mSize = -1;
+    private int mDegree = -1;
+
+    UriStreamProvider(Context context, Uri uri) {
+        this(context, uri, null);
+    }
+
+    UriStreamProvider(Context context, Uri uri, UriBatch batch) {
+        this.mContext = context;
+        this.mUri = uri;
+        this.mBatch = batch;
+    }
+
+    Uri getUri() {
+        return mUri;
+    }
+
+    @Override
+    public InputStream open() throws IOException {
+        return mContext.getContentResolver().openInputStream(mUri);
+    }
+
+    /**
+     * @return a read-only descriptor the caller has to close, or null
+     */
+    ParcelFileDescriptor openFileDescriptor() throws FileNotFoundException {
+        return mContext.getContentResolver().openFileDescriptor(mUri, "r");
+    }
+
+    @Override
+    public ByteBuffer openBuffer() throws IOException {
+        ParcelFileDescriptor descriptor = openFileDescriptor();
+        if (descriptor == null) {
+            return null;
+        }
+        FileInputStream in = new FileInputStream(descriptor.getFileDescriptor());
+        try {
+            return ImageSource.map(in.getChannel());
+        } catch (IOException e) {
+            // pipes and sockets can not be mapped, read them through open() instead
+            return null;
+        } finally {
+            in.close();
+            descriptor.close();
+        }
+    }
+
+    @Override
+    public String getPath() {
+        resolve();
+        return mPath;
+    }
+
+    /**
+     * @return the size the provider reports, -1 if it does not
+     */
+    long getSize() {
+        resolve();
+        return mSize;
+    }
+
+    /**
+     * @return the rotation MediaStore recorded for the image, -1 if it is not known
+     */
+    int getDegree() {
+        resolve();
+        return mDegree;
+    }
+
+    synchronized void setResolved(String path, long size, int degree) {
+        mPath = path;
+        mSize = size;
+        mDegree = degree;
+        mResolved = true;
+    }
+
+    private void resolve() {
+        if (mResolved) {
+            return;
+        }
+        if (mBatch != null) {
+            mBatch.resolve();
+        }
+        synchronized (this) {
+            if (mResolved) {
+                return;
+            }
+            String scheme = mUri.getScheme();
+            if (scheme == null || ContentResolver.SCHEME_FILE.equals(scheme)) {
+                mPath = mUri.getPath();
+            } else if (ContentResolver.SCHEME_CONTENT.equals(scheme)) {
+                query();
+            }
+            mResolved = true;
+        }
+    }
+
+    private void query() {
+        Cursor cursor = mContext.getContentResolver().query(mUri,
+                new String[]{MediaStore.Images.ImageColumns.DATA, OpenableColumns.SIZE}, null, null, null);
+        if (null == cursor) {
+            return;
+        }
+        try {
+            if (cursor.moveToFirst()) {
+                int index = cursor.getColumnIndex(MediaStore.Images.ImageColumns.DATA);
+                if (index > -1) {
+                    mPath = cursor.getString(index);
+                }
+                index = cursor.getColumnIndex(OpenableColumns.SIZE);
+                if (index > -1 && !cursor.isNull(index)) {
+                    mSize = cursor.getLong(index);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.blezede.compressor;
+
+import android.graphics.Bitmap;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/2 10:05
+ * Description: One of several outputs made from a single decode of each source, e.g. a thumbnail, a feed
+ * preview and the full size image. Whatever a variant does not set is taken from the Builder. Its name is
+ * appended to the output file name, so the variants of one source sit next to each other.
+ */
+public class Variant {
+
+    private final String mName;
+    private final float mMaxWidthOrHeight;
+    private Bitmap.CompressFormat mCompressFormat;
+    private int mQuality;
+    private float mMaxFileSize;
+
+    /**
+     * @param name             appended to the output file name, e.g. "thumb"
+     * @param maxWidthOrHeight the long side of the output, 0 for the size the Builder would pick
+     */
+    public Variant(String name, float maxWidthOrHeight) {
+        this.mName = name != null ? name : "";
+        this.mMaxWidthOrHeight = maxWidthOrHeight;
+    }
+
+    public Variant compressFormat(Bitmap.CompressFormat format) {
+        this.mCompressFormat = format;
+        return this;
+    }
+
+    public Variant quality(int quality) {
+        if (quality > 0)
+            this.mQuality = quality;
+        return this;
+    }
+
+    public Variant maxFileSize(float size) {
+        if (size > 0)
+            this.mMaxFileSize = size;
+        return this;
+    }
+
+    String getName() {
+        return mName;
+    }
+
+    float getMaxWidthOrHeight() {
+        return mMaxWidthOrHeight;
+    }
+
+    /**
+     * @return null to use the format of the Builder
+     */
+    Bitmap.CompressFormat getCompressFormat() {
+        return mCompressFormat;
+    }
+
+    /**
+     * @return 0 to use the quality of the Builder
+     */
+    int getQuality() {
+        return mQuality;
+    }
+
+    /**
+     * @return 0 to use the maxFileSize of the Builder
+     */
+    float getMaxFileSize() {
+        return mMaxFileSize;
+    }
+}
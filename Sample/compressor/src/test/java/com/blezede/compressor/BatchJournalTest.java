@@ -0,0 +1,184 @@
+package com.blezede.compressor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/11 14:40
+ * Description: What a {@link BatchJournal} remembers after a restart. A new instance on the same file
+ * stands for the journal of a new process.
+ */
+public class BatchJournalTest {
+
+    private static final String FINGERPRINT = "JPEG|80|1280";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File journalFile() {
+        return new File(mFolder.getRoot(), "upload.journal");
+    }
+
+    private static int lines(File file) throws IOException {
+        int lines = 0;
+        for (byte b : ChannelOutputStreamTest.read(file)) {
+            if (b == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private static void appendRaw(File file, String text) throws IOException {
+        FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(text.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void doneSourcesSurviveARestart() throws IOException {
+        File output = mFolder.newFile("a_full.jpg");
+        BatchJournal journal = new BatchJournal(journalFile(), FINGERPRINT);
+        journal.pending("a");
+        journal.pending("b");
+        journal.finished("a", new String[]{output.getAbsolutePath(), "content://out/7"});
+        journal.finished("b", new String[]{output.getAbsolutePath(), ""});
+        journal.flush();
+
+        BatchJournal reopened = new BatchJournal(journalFile(), FINGERPRINT);
+        assertArrayEquals(new String[]{output.getAbsolutePath(), "content://out/7"}, reopened.getDone("a"));
+        assertNull(reopened.getDone("b"));
+        assertNull(reopened.getDone("c"));
+    }
+
+    @Test
+    public void theLastRecordOfASourceWins() {
+        BatchJournal journal = new BatchJournal(journalFile(), FINGERPRINT);
+        journal.finished("a", new String[]{"content://out/1"});
+        journal.finished("a", new String[]{""});
+        journal.finished("b", new String[]{""});
+        journal.finished("b", new String[]{"content://out/2"});
+        journal.pending("b");
+        journal.flush();
+
+        BatchJournal reopened = new BatchJournal(journalFile(), FINGERPRINT);
+        assertNull(reopened.getDone("a"));
+        assertArrayEquals(new String[]{"content://out/2"}, reopened.getDone("b"));
+    }
+
+    @Test
+    public void deletedOutputsAreCompressedAgain() throws IOException {
+        File output = mFolder.newFile("a.jpg");
+        BatchJournal journal = new BatchJournal(journalFile(), FINGERPRINT);
+        journal.finished("a", new String[]{output.getAbsolutePath()});
+        assertNotNull(journal.getDone("a"));
+        assertTrue(output.delete());
+        assertNull(journal.getDone("a"));
+    }
+
+    @Test
+    public void otherOptionsStartOver() {
+        BatchJournal journal = new BatchJournal(journalFile(), FINGERPRINT);
+        journal.finished("a", new String[]{"content://out/1"});
+        journal.flush();
+        assertTrue(journalFile().isFile());
+
+        BatchJournal changed = new BatchJournal(journalFile(), "PNG|100|1280");
+        assertNull(changed.getDone("a"));
+        assertFalse(journalFile().exists());
+    }
+
+    @Test
+    public void sharedJournalForgetsOnANewFingerprint() {
+        BatchJournal journal = BatchJournal.get(mFolder.getRoot(), "shared", FINGERPRINT);
+        journal.finished("a", new String[]{"content://out/1"});
+        assertSame(journal, BatchJournal.get(mFolder.getRoot(), "shared", FINGERPRINT));
+        assertNotNull(journal.getDone("a"));
+        assertSame(journal, BatchJournal.get(mFolder.getRoot(), "shared", "WEBP|75|640"));
+        assertNull(journal.getDone("a"));
+    }
+
+    @Test
+    public void aLineCutOffByACrashIsIgnored() throws IOException {
+        BatchJournal journal = new BatchJournal(journalFile(), FINGERPRINT);
+        journal.finished("a", new String[]{"content://out/1"});
+        journal.flush();
+        appendRaw(journalFile(), "D\tb\tcontent://out/2");
+
+        BatchJournal reopened = new BatchJournal(journalFile(), FINGERPRINT);
+        assertNotNull(reopened.getDone("a"));
+        assertNull(reopened.getDone("b"));
+    }
+
+    @Test
+    public void keysAndOutputsMayHoldSeparators() {
+        String key = "dir\\with\ttab\nand newline";
+        BatchJournal journal = new BatchJournal(journalFile(), "a\tfingerprint");
+        journal.finished(key, new String[]{"content://out\t1\\"});
+        journal.flush();
+        assertArrayEquals(new String[]{"content://out\t1\\"},
+                new BatchJournal(journalFile(), "a\tfingerprint").getDone(key));
+    }
+
+    @Test
+    public void recordsAreAppendedInBatches() {
+        BatchJournal journal = new BatchJournal(journalFile(), FINGERPRINT);
+        for (int i = 0; i < BatchJournal.FLUSH_RECORDS - 1; i++) {
+            journal.pending("#" + i);
+        }
+        assertFalse(journalFile().exists());
+        journal.pending("last");
+        assertTrue(journalFile().length() > 0);
+    }
+
+    @Test
+    public void openingALongJournalCompactsIt() throws IOException {
+        BatchJournal journal = new BatchJournal(journalFile(), FINGERPRINT);
+        for (int i = 0; i < 400; i++) {
+            journal.pending("#" + (i % 3));
+        }
+        journal.finished("#0", new String[]{"content://out/0"});
+        journal.finished("#1", new String[]{""});
+        journal.flush();
+        assertEquals(403, lines(journalFile()));
+
+        BatchJournal reopened = new BatchJournal(journalFile(), FINGERPRINT);
+        assertNotNull(reopened.getDone("#0"));
+        // the header and the one done source
+        assertEquals(2, lines(journalFile()));
+        assertArrayEquals(new String[]{"content://out/0"}, new BatchJournal(journalFile(), FINGERPRINT).getDone("#0"));
+    }
+
+    @Test
+    public void keyIsThePathOrThePosition() {
+        assertEquals("/sdcard/a.jpg", BatchJournal.keyOf(source("/sdcard/a.jpg"), 4));
+        assertEquals("#4", BatchJournal.keyOf(source(""), 4));
+        assertEquals("#5", BatchJournal.keyOf(source(null), 5));
+    }
+
+    private static InputStreamProvider source(final String path) {
+        return new InputStreamProvider() {
+            @Override
+            public InputStream open() {
+                return null;
+            }
+
+            @Override
+            public String getPath() {
+                return path;
+            }
+        };
+    }
+}
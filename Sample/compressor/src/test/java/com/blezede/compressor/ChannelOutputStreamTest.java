@@ -0,0 +1,103 @@
+package com.blezede.compressor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/10 14:15
+ * Description: Streaming an encode to disk through {@link ChannelOutputStream} and a temp file.
+ */
+public class ChannelOutputStreamTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void writesEverythingAcrossBufferBoundaries() throws IOException {
+        File file = mFolder.newFile();
+        byte[] data = new byte[200 * 1024 + 17];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        ChannelOutputStream out = new ChannelOutputStream(new FileOutputStream(file).getChannel());
+        out.write(0x7F);
+        out.write(data, 0, data.length);
+        out.write(data, 5, 10);
+        assertEquals(1 + data.length + 10, out.count());
+        out.close();
+
+        byte[] written = read(file);
+        assertEquals(1 + data.length + 10, written.length);
+        assertEquals(0x7F, written[0]);
+        assertEquals(data[data.length - 1], written[data.length]);
+        assertEquals(data[5], written[data.length + 1]);
+    }
+
+    @Test
+    public void closeTwiceIsHarmless() throws IOException {
+        File file = mFolder.newFile();
+        ChannelOutputStream out = new ChannelOutputStream(new FileOutputStream(file).getChannel());
+        out.write(new byte[]{1, 2, 3}, 0, 3);
+        out.close();
+        out.close();
+        assertEquals(3, file.length());
+    }
+
+    @Test
+    public void nextStreamOnTheThreadStartsEmpty() throws IOException {
+        File first = mFolder.newFile();
+        ChannelOutputStream out = new ChannelOutputStream(new FileOutputStream(first).getChannel());
+        out.write(new byte[]{1, 2, 3}, 0, 3);
+        // abandoned without close, its buffered bytes must not leak into the next file
+        File second = mFolder.newFile();
+        ChannelOutputStream next = new ChannelOutputStream(new FileOutputStream(second).getChannel());
+        next.write(9);
+        next.close();
+        assertArrayEquals(new byte[]{9}, read(second));
+        out.close();
+    }
+
+    @Test
+    public void tempFileIsMovedIntoPlaceOnCommit() throws IOException {
+        File dest = new File(mFolder.getRoot(), "out.jpg");
+        File temp = IoUtils.createTempFile(dest);
+        assertEquals(dest.getParentFile(), temp.getParentFile());
+        assertTrue(temp.getName().startsWith("out.jpg."));
+        ChannelOutputStream out = new ChannelOutputStream(new FileOutputStream(temp).getChannel());
+        out.write(new byte[]{4, 5}, 0, 2);
+        out.close();
+
+        assertTrue(IoUtils.commit(temp, dest));
+        assertFalse(temp.exists());
+        assertArrayEquals(new byte[]{4, 5}, read(dest));
+    }
+
+    @Test
+    public void failedCommitRemovesTheTempFile() throws IOException {
+        File temp = mFolder.newFile("out.jpg.tmp");
+        File dest = new File(new File(mFolder.getRoot(), "missing"), "out.jpg");
+        assertFalse(IoUtils.commit(temp, dest));
+        assertFalse(temp.exists());
+        assertFalse(dest.exists());
+    }
+
+    static byte[] read(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.blezede.compressor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.*;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/10 9:30
+ * Description: {@link CompressExecutor} on a delegate that only queues, so every test decides when a task runs.
+ */
+public class CompressExecutorTest {
+
+    private static class ManualExecutor implements Executor {
+
+        final LinkedList<Runnable> mQueue = new LinkedList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            mQueue.add(command);
+        }
+
+        void runNext() {
+            mQueue.removeFirst().run();
+        }
+    }
+
+    /**
+     * Rejects every task while {@link #mRejecting} is set, like a pool that was shut down.
+     */
+    private static class RejectingExecutor extends ManualExecutor {
+
+        boolean mRejecting = true;
+
+        @Override
+        public void execute(Runnable command) {
+            if (mRejecting) {
+                throw new RejectedExecutionException();
+            }
+            super.execute(command);
+        }
+    }
+
+    private static Runnable record(final List<String> log, final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                log.add(name);
+            }
+        };
+    }
+
+    @Test
+    public void startsAtMostParallelismTasks() {
+        ManualExecutor delegate = new ManualExecutor();
+        CompressExecutor executor = new CompressExecutor(delegate, 2);
+        List<String> log = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            executor.execute(record(log, "task" + i));
+        }
+        assertEquals(2, delegate.mQueue.size());
+
+        delegate.runNext();
+        assertEquals(2, delegate.mQueue.size());
+        while (!delegate.mQueue.isEmpty()) {
+            delegate.runNext();
+        }
+        assertEquals(5, log.size());
+    }
+
+    @Test
+    public void startsWaitingTasksByPriorityThenSubmissionOrder() {
+        ManualExecutor delegate = new ManualExecutor();
+        CompressExecutor executor = new CompressExecutor(delegate, 1);
+        List<String> log = new ArrayList<>();
+        executor.execute(record(log, "first"), 0);
+        executor.execute(record(log, "low1"), 0);
+        executor.execute(record(log, "high1"), 5);
+        executor.execute(record(log, "low2"), 0);
+        executor.execute(record(log, "high2"), 5);
+        while (!delegate.mQueue.isEmpty()) {
+            delegate.runNext();
+        }
+        assertEquals(Arrays.asList("first", "high1", "high2", "low1", "low2"), log);
+    }
+
+    @Test
+    public void failedTaskFreesItsSlot() {
+        ManualExecutor delegate = new ManualExecutor();
+        CompressExecutor executor = new CompressExecutor(delegate, 1);
+        List<String> log = new ArrayList<>();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException();
+            }
+        });
+        executor.execute(record(log, "next"));
+        try {
+            delegate.runNext();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        delegate.runNext();
+        assertEquals(1, log.size());
+    }
+
+    @Test
+    public void rejectedTaskKeepsItsPlaceButNoSlot() {
+        RejectingExecutor delegate = new RejectingExecutor();
+        CompressExecutor executor = new CompressExecutor(delegate, 1);
+        List<String> log = new ArrayList<>();
+        try {
+            executor.execute(record(log, "rejected"));
+            fail();
+        } catch (RejectedExecutionException expected) {
+        }
+
+        delegate.mRejecting = false;
+        executor.execute(record(log, "next"));
+        assertEquals(1, delegate.mQueue.size());
+        while (!delegate.mQueue.isEmpty()) {
+            delegate.runNext();
+        }
+        assertEquals(Arrays.asList("rejected", "next"), log);
+    }
+
+    @Test
+    public void nonPositiveParallelismRunsOneAtATime() {
+        ManualExecutor delegate = new ManualExecutor();
+        CompressExecutor executor = new CompressExecutor(delegate, 0);
+        executor.execute(record(new ArrayList<String>(), "a"));
+        executor.execute(record(new ArrayList<String>(), "b"));
+        assertEquals(1, delegate.mQueue.size());
+    }
+
+    @Test
+    public void defaultParallelismIsBoundedByCores() {
+        int parallelism = CompressExecutor.defaultParallelism();
+        assertTrue(parallelism >= 1);
+        assertTrue(parallelism <= Runtime.getRuntime().availableProcessors());
+    }
+}
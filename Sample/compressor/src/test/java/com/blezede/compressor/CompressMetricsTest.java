@@ -0,0 +1,97 @@
+package com.blezede.compressor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/10 15:50
+ * Description: Stage times of {@link CompressMetrics} and their aggregation into {@link BatchMetrics}.
+ */
+public class CompressMetricsTest {
+
+    @Test
+    public void recordsEveryStageInOrder() throws InterruptedException {
+        CompressMetrics metrics = new CompressMetrics("source.jpg");
+        metrics.start();
+        Thread.sleep(2);
+        metrics.onOpened(1234, 4000, 3000);
+        Thread.sleep(2);
+        metrics.onDecoded(null);
+        metrics.onEncoded(80, 500);
+        metrics.onEncoded(60, 300);
+        metrics.onWritten();
+        metrics.onOutput(1280, 960);
+        metrics.finish("out.jpg");
+
+        assertEquals("source.jpg", metrics.getSource());
+        assertTrue(metrics.isSuccessful());
+        assertTrue(metrics.getOpenNanos() > 0);
+        assertTrue(metrics.getDecodeNanos() > 0);
+        assertEquals(1234, metrics.getSourceBytes());
+        assertEquals(4000, metrics.getSourceWidth());
+        assertEquals(960, metrics.getOutputHeight());
+        assertEquals(2, metrics.getEncodeAttempts().size());
+        assertEquals(60, metrics.getEncodeAttempts().get(1).getQuality());
+        assertEquals(300, metrics.getEncodeAttempts().get(1).getBytes());
+        assertEquals(metrics.getEncodeAttempts().get(0).getNanos() + metrics.getEncodeAttempts().get(1).getNanos(),
+                metrics.getEncodeNanos());
+        long stages = metrics.getOpenNanos() + metrics.getDecodeNanos() + metrics.getTransformNanos()
+                + metrics.getEncodeNanos() + metrics.getWriteNanos();
+        assertTrue(stages <= metrics.getTotalNanos());
+    }
+
+    @Test
+    public void stagesThatDidNotRunReportZero() {
+        CompressMetrics metrics = new CompressMetrics(null);
+        metrics.start();
+        metrics.onPassthrough();
+        metrics.finish("");
+        assertFalse(metrics.isSuccessful());
+        assertTrue(metrics.isPassthrough());
+        assertFalse(metrics.isCacheHit());
+        assertEquals(-1, metrics.getSourceBytes());
+        assertEquals(0, metrics.getDecodeNanos());
+        assertEquals(0, metrics.getEncodeNanos());
+        assertTrue(metrics.getEncodeAttempts().isEmpty());
+    }
+
+    @Test
+    public void batchAggregatesPercentilesAndFailures() {
+        List<CompressMetrics> images = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            CompressMetrics metrics = new CompressMetrics("source" + i);
+            metrics.start();
+            metrics.onOpened(i == 0 ? -1 : 100, 1000, 1000);
+            metrics.finish(i < 3 ? "" : "out" + i);
+            images.add(metrics);
+        }
+        BatchMetrics batch = BatchMetrics.of(images, 2000000000L);
+        assertEquals(20, batch.getCount());
+        assertEquals(3, batch.getFailedCount());
+        assertEquals(19 * 100, batch.getSourceBytes());
+        assertEquals(10, batch.getMegapixelsPerSecond(), 1e-9);
+        assertTrue(batch.getP50Nanos() <= batch.getP95Nanos());
+
+        long[] totals = new long[images.size()];
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = images.get(i).getTotalNanos();
+        }
+        Arrays.sort(totals);
+        assertEquals(totals[9], batch.getP50Nanos());
+        assertEquals(totals[18], batch.getP95Nanos());
+    }
+
+    @Test
+    public void emptyBatchHasNoPercentiles() {
+        BatchMetrics batch = BatchMetrics.of(new ArrayList<CompressMetrics>(), 0);
+        assertEquals(0, batch.getCount());
+        assertEquals(0, batch.getP95Nanos());
+        assertEquals(0, batch.getMegapixelsPerSecond(), 0);
+    }
+}
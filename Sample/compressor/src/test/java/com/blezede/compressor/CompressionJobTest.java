@@ -0,0 +1,131 @@
+package com.blezede.compressor;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/10 15:25
+ * Description: {@link CompressionJob} follows the {@link java.util.concurrent.Future} contract.
+ */
+public class CompressionJobTest {
+
+    @Test
+    public void completesWithResultsInLoadOrder() throws Exception {
+        CompressionJob job = new CompressionJob(3);
+        job.setResult(new CompressResult(2, null, "c"));
+        assertFalse(job.onItemFinished());
+        job.setResult(new CompressResult(0, null, "a"));
+        assertFalse(job.onItemFinished());
+        assertFalse(job.isDone());
+        job.setResult(new CompressResult(1, null, ""));
+        assertTrue(job.onItemFinished());
+        assertTrue(job.isDone());
+        assertFalse(job.isCancelled());
+
+        List<CompressResult> results = job.get();
+        assertEquals("a", results.get(0).getPath());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals("c", results.get(2).getPath());
+        assertTrue(job.await(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void cancelIsDoneRightAway() throws Exception {
+        CompressionJob job = new CompressionJob(2);
+        job.onItemFinished();
+        assertTrue(job.cancel(true));
+        assertTrue(job.isDone());
+        assertTrue(job.isCancelled());
+        assertFalse(job.cancel(false));
+        try {
+            job.get(1, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (CancellationException expected) {
+        }
+        try {
+            job.throwIfCancelled();
+            fail();
+        } catch (CancellationException expected) {
+        }
+        // the running image has not stopped yet
+        assertFalse(job.await(10, TimeUnit.MILLISECONDS));
+        job.onItemFinished();
+        assertTrue(job.await(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void cancelAfterCompletionFails() throws Exception {
+        CompressionJob job = new CompressionJob(1);
+        job.setResult(new CompressResult(0, null, "a"));
+        job.onItemFinished();
+        job.cancel();
+        assertFalse(job.isCancelled());
+        assertEquals("a", job.get().get(0).getPath());
+    }
+
+    @Test
+    public void emptyBatchIsDoneRightAway() throws Exception {
+        CompressionJob job = new CompressionJob(0);
+        assertTrue(job.isDone());
+        assertTrue(job.get(0, TimeUnit.MILLISECONDS).isEmpty());
+        assertTrue(job.await(0, TimeUnit.MILLISECONDS));
+        assertFalse(job.cancel(false));
+        assertFalse(job.isCancelled());
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void getTimesOutWhileRunning() throws Exception {
+        new CompressionJob(1).get(10, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void getWaitsForTheLastImage() throws Exception {
+        final CompressionJob job = new CompressionJob(1);
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ignored) {
+                }
+                job.setResult(new CompressResult(0, null, "a"));
+                job.onItemFinished();
+            }
+        });
+        worker.start();
+        assertEquals("a", job.get(5, TimeUnit.SECONDS).get(0).getPath());
+        worker.join();
+    }
+
+    @Test
+    public void cancelReleasesABlockedGet() throws Exception {
+        final CompressionJob job = new CompressionJob(1);
+        Thread canceller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ignored) {
+                }
+                job.cancel();
+            }
+        });
+        canceller.start();
+        try {
+            job.get();
+            fail();
+        } catch (CancellationException expected) {
+        } catch (ExecutionException e) {
+            fail();
+        }
+        canceller.join();
+    }
+}
@@ -0,0 +1,224 @@
+package com.blezede.compressor;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/11 15:50
+ * Description: The EXIF {@link ExifWriter} carries over, and where it puts the segment in a JPEG.
+ */
+public class ExifWriterTest {
+
+    private static final int TAG_MAKE = 0x010F;
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_GPS_IFD = 0x8825;
+    private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+    private static final int TAG_MAKER_NOTE = 0x927C;
+    private static final String DATE = "2019:05:07 10:11:12";
+
+    /**
+     * A little endian TIFF block the way a camera writes it: IFD0 with Make, Orientation, an EXIF IFD and
+     * a GPS IFD, the EXIF IFD with DateTimeOriginal and a MakerNote.
+     */
+    private static byte[] camera(int orientation) {
+        ByteBuffer tiff = ByteBuffer.allocate(220).order(ByteOrder.LITTLE_ENDIAN);
+        tiff.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(8);
+        int make = 8 + 2 + 4 * 12 + 4;
+        int exif = make + 6;
+        int gps = 200;
+        tiff.putShort((short) 4);
+        tiff.putShort((short) TAG_MAKE).putShort((short) 2).putInt(6).putInt(make);
+        tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0);
+        tiff.putShort((short) TAG_EXIF_IFD).putShort((short) 4).putInt(1).putInt(exif);
+        tiff.putShort((short) TAG_GPS_IFD).putShort((short) 4).putInt(1).putInt(gps);
+        tiff.putInt(0);
+        tiff.put("Canon\0".getBytes());
+        int date = exif + 2 + 2 * 12 + 4;
+        tiff.putShort((short) 2);
+        tiff.putShort((short) TAG_DATE_TIME_ORIGINAL).putShort((short) 2).putInt(20).putInt(date);
+        tiff.putShort((short) TAG_MAKER_NOTE).putShort((short) 7).putInt(8).putInt(date + 20);
+        tiff.putInt(0);
+        tiff.put((DATE + "\0").getBytes());
+        tiff.put("SECRETMN".getBytes());
+        tiff.position(gps);
+        tiff.putShort((short) 1);
+        tiff.putShort((short) 1).putShort((short) 2).putInt(2).put((byte) 'N').put(new byte[3]);
+        tiff.putInt(0);
+        return tiff.array();
+    }
+
+    private static byte[] jpeg() throws IOException {
+        return TestImages.encode("jpeg", 64, 48, BufferedImage.TYPE_INT_RGB);
+    }
+
+    private static String latin1(byte[] data) throws IOException {
+        return new String(data, "ISO-8859-1");
+    }
+
+    private static int marker(byte[] data, int offset) {
+        assertEquals(0xFF, data[offset] & 0xFF);
+        return data[offset + 1] & 0xFF;
+    }
+
+    /**
+     * @return the offset of the segment after the one at {@code offset}
+     */
+    private static int next(byte[] data, int offset) {
+        return offset + 2 + ((data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF));
+    }
+
+    private static byte[] rewrite(byte[] jpeg, byte[] app1) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(ExifWriter.rewrite(ByteBuffer.wrap(jpeg), app1, out));
+        return out.toByteArray();
+    }
+
+    @Test
+    public void buildKeepsTimeAndCameraButNotLocationOrMakerNotes() throws IOException {
+        byte[] source = TestImages.withApp1(jpeg(), camera(Exif.ORIENTATION_ROTATE_90));
+        byte[] app1 = ExifWriter.build(ByteBuffer.wrap(source), Exif.ORIENTATION_NORMAL, true);
+        byte[] output = rewrite(jpeg(), app1);
+        ByteBuffer buffer = ByteBuffer.wrap(output);
+
+        // the pixels were rotated upright, so the orientation is reset
+        assertEquals(Exif.ORIENTATION_NORMAL, Exif.getOrientation(buffer));
+        int tiff = Exif.findTiffHeader(buffer);
+        assertTrue(Exif.findIfd0Entry(buffer, tiff, TAG_MAKE) >= 0);
+        assertTrue(Exif.findIfd0Entry(buffer, tiff, TAG_GPS_IFD) < 0);
+        int pointer = Exif.findIfd0Entry(buffer, tiff, TAG_EXIF_IFD);
+        assertTrue(pointer >= 0);
+        boolean little = Exif.isLittleEndian(buffer, tiff);
+        int exif = tiff + Exif.readInt(buffer, pointer + 8, little);
+        assertTrue(Exif.findEntry(buffer, exif, TAG_DATE_TIME_ORIGINAL, little) >= 0);
+        assertTrue(Exif.findEntry(buffer, exif, TAG_MAKER_NOTE, little) < 0);
+        assertTrue(latin1(output).contains(DATE));
+        assertFalse(latin1(output).contains("SECRETMN"));
+    }
+
+    @Test
+    public void withoutTagsOnlyTheOrientationIsWritten() throws IOException {
+        byte[] source = TestImages.withApp1(jpeg(), camera(Exif.ORIENTATION_ROTATE_90));
+        byte[] app1 = ExifWriter.build(ByteBuffer.wrap(source), Exif.ORIENTATION_ROTATE_90, false);
+        ByteBuffer buffer = ByteBuffer.wrap(rewrite(jpeg(), app1));
+        assertEquals(Exif.ORIENTATION_ROTATE_90, Exif.getOrientation(buffer));
+        assertTrue(Exif.findIfd0Entry(buffer, Exif.findTiffHeader(buffer), TAG_MAKE) < 0);
+        assertFalse(latin1(buffer.array()).contains(DATE));
+    }
+
+    @Test
+    public void nothingToCarryOverIsNoSegment() throws IOException {
+        assertNull(ExifWriter.build(ByteBuffer.wrap(jpeg()), Exif.ORIENTATION_NORMAL, true));
+        assertNotNull(ExifWriter.build(ByteBuffer.wrap(jpeg()), Exif.ORIENTATION_ROTATE_180, true));
+    }
+
+    @Test
+    public void rewriteReplacesTheMetadataAfterTheJfifHeader() throws IOException {
+        byte[] plain = jpeg();
+        byte[] source = TestImages.withApp1(plain, camera(Exif.ORIENTATION_ROTATE_90));
+        byte[] app1 = ExifWriter.build(ByteBuffer.wrap(source), Exif.ORIENTATION_ROTATE_270, false);
+        byte[] output = rewrite(source, app1);
+
+        assertEquals(0xE0, marker(output, 2));
+        int second = next(output, 2);
+        assertEquals(0xE1, marker(output, second));
+        // the old segment is gone, not kept next to the new one
+        assertNotEquals(0xE1, marker(output, next(output, second)));
+        assertEquals(plain.length + app1.length, output.length);
+        assertEquals(Exif.ORIENTATION_ROTATE_270, Exif.getOrientation(ByteBuffer.wrap(output)));
+        assertSamePixels(plain, output);
+    }
+
+    @Test
+    public void rewriteWithoutASegmentOnlyStripsTheMetadata() throws IOException {
+        byte[] plain = jpeg();
+        byte[] output = rewrite(TestImages.withApp1(plain, camera(Exif.ORIENTATION_ROTATE_90)), null);
+        assertArrayEquals(plain, output);
+    }
+
+    @Test
+    public void rewriteRefusesWhatItCanNotFollow() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertFalse(ExifWriter.rewrite(ByteBuffer.wrap(TestImages.png(8, 8, 2, false)), null, out));
+        byte[] truncated = new byte[30];
+        System.arraycopy(jpeg(), 0, truncated, 0, truncated.length);
+        assertFalse(ExifWriter.rewrite(ByteBuffer.wrap(truncated), null, out));
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    public void insertPlacesTheSegmentLikeRewrite() throws IOException {
+        byte[] plain = jpeg();
+        byte[] app1 = ExifWriter.build(ByteBuffer.wrap(plain), Exif.ORIENTATION_ROTATE_90, false);
+
+        ByteArrayOutputStream bytewise = new ByteArrayOutputStream();
+        OutputStream inserting = ExifWriter.insert(bytewise, app1);
+        for (byte b : plain) {
+            inserting.write(b);
+        }
+        inserting.close();
+        ByteArrayOutputStream chunked = new ByteArrayOutputStream();
+        inserting = ExifWriter.insert(chunked, app1);
+        inserting.write(plain, 0, 3);
+        inserting.write(plain, 3, plain.length - 3);
+        inserting.close();
+
+        byte[] rewritten = rewrite(plain, app1);
+        assertArrayEquals(rewritten, bytewise.toByteArray());
+        assertArrayEquals(rewritten, chunked.toByteArray());
+    }
+
+    @Test
+    public void insertGoesRightAfterTheStartWithoutJfif() throws IOException {
+        byte[] plain = jpeg();
+        int app0End = next(plain, 2);
+        byte[] bare = new byte[plain.length - (app0End - 2)];
+        System.arraycopy(plain, 0, bare, 0, 2);
+        System.arraycopy(plain, app0End, bare, 2, plain.length - app0End);
+        byte[] app1 = ExifWriter.build(ByteBuffer.wrap(plain), Exif.ORIENTATION_ROTATE_90, false);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OutputStream inserting = ExifWriter.insert(out, app1);
+        inserting.write(bare);
+        inserting.close();
+        byte[] output = out.toByteArray();
+        assertEquals(0xE1, marker(output, 2));
+        assertEquals(bare.length + app1.length, output.length);
+        assertSamePixels(plain, output);
+    }
+
+    @Test
+    public void insertHandsOnAShortStreamOnClose() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OutputStream inserting = ExifWriter.insert(out, new byte[]{(byte) 0xFF, (byte) 0xE1, 0, 2});
+        inserting.write(new byte[]{(byte) 0xFF, (byte) 0xD8, 1});
+        assertEquals(0, out.size());
+        inserting.close();
+        assertArrayEquals(new byte[]{(byte) 0xFF, (byte) 0xD8, 1}, out.toByteArray());
+        // nothing to insert leaves the stream alone
+        assertSame(out, ExifWriter.insert(out, null));
+    }
+
+    private static void assertSamePixels(byte[] expected, byte[] actual) throws IOException {
+        BufferedImage a = ImageIO.read(new ByteArrayInputStream(expected));
+        BufferedImage b = ImageIO.read(new ByteArrayInputStream(actual));
+        assertEquals(a.getWidth(), b.getWidth());
+        assertEquals(a.getHeight(), b.getHeight());
+        for (int y = 0; y < a.getHeight(); y++) {
+            for (int x = 0; x < a.getWidth(); x++) {
+                assertEquals(a.getRGB(x, y), b.getRGB(x, y));
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.blezede.compressor;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/11 10:30
+ * Description: What {@link ImageHeader} reads from the first bytes of every supported format.
+ */
+public class ImageHeaderTest {
+
+    private static ImageHeader parse(byte[] data) {
+        return ImageHeader.parse(ByteBuffer.wrap(data));
+    }
+
+    @Test
+    public void jpegIsOpaque() throws IOException {
+        ImageHeader color = parse(TestImages.encode("jpeg", 40, 30, BufferedImage.TYPE_INT_RGB));
+        assertEquals(ImageHeader.FORMAT_JPEG, color.format);
+        assertFalse(color.hasAlpha);
+        assertFalse(color.grayscale);
+        assertTrue(parse(TestImages.encode("jpeg", 40, 30, BufferedImage.TYPE_BYTE_GRAY)).grayscale);
+    }
+
+    @Test
+    public void pngAlphaFollowsColorTypeAndTrns() throws IOException {
+        ImageHeader rgba = parse(TestImages.encode("png", 8, 8, BufferedImage.TYPE_INT_ARGB));
+        assertEquals(ImageHeader.FORMAT_PNG, rgba.format);
+        assertTrue(rgba.hasAlpha);
+        assertFalse(parse(TestImages.encode("png", 8, 8, BufferedImage.TYPE_INT_RGB)).hasAlpha);
+
+        assertFalse(parse(TestImages.png(8, 8, 2, false)).hasAlpha);
+        assertTrue(parse(TestImages.png(8, 8, 2, true)).hasAlpha);
+        assertTrue(parse(TestImages.png(8, 8, 3, true)).hasAlpha);
+    }
+
+    @Test
+    public void pngGrayscaleWithAndWithoutAlpha() {
+        ImageHeader gray = parse(TestImages.png(8, 8, 0, false));
+        assertTrue(gray.grayscale);
+        assertFalse(gray.hasAlpha);
+        ImageHeader grayAlpha = parse(TestImages.png(8, 8, 4, false));
+        assertTrue(grayAlpha.grayscale);
+        assertTrue(grayAlpha.hasAlpha);
+    }
+
+    @Test
+    public void webpAlphaComesFromItsHeader() {
+        assertTrue(parse(TestImages.webpVp8x(8, 8, true)).hasAlpha);
+        assertFalse(parse(TestImages.webpVp8x(8, 8, false)).hasAlpha);
+        assertTrue(parse(TestImages.webpVp8l(8, 8, true)).hasAlpha);
+        assertFalse(parse(TestImages.webpVp8l(8, 8, false)).hasAlpha);
+        ImageHeader lossy = parse(TestImages.webpVp8(8, 8));
+        assertEquals(ImageHeader.FORMAT_WEBP, lossy.format);
+        assertFalse(lossy.hasAlpha);
+    }
+
+    @Test
+    public void unknownOrTruncatedMayHaveAlpha() {
+        ImageHeader unknown = parse(new byte[]{1, 2, 3, 4});
+        assertEquals(ImageHeader.FORMAT_UNKNOWN, unknown.format);
+        assertTrue(unknown.hasAlpha);
+
+        byte[] png = TestImages.png(8, 8, 2, false);
+        byte[] truncated = new byte[20];
+        System.arraycopy(png, 0, truncated, 0, truncated.length);
+        assertTrue(parse(truncated).hasAlpha);
+        assertTrue(parse(new byte[0]).hasAlpha);
+    }
+
+    @Test
+    public void parseStartsAtThePositionAndLeavesItAlone() throws IOException {
+        byte[] jpeg = TestImages.encode("jpeg", 40, 30, BufferedImage.TYPE_INT_RGB);
+        byte[] padded = new byte[jpeg.length + 3];
+        System.arraycopy(jpeg, 0, padded, 3, jpeg.length);
+        ByteBuffer buffer = ByteBuffer.wrap(padded);
+        buffer.position(3);
+        assertEquals(ImageHeader.FORMAT_JPEG, ImageHeader.parse(buffer).format);
+        assertEquals(3, buffer.position());
+    }
+
+    @Test
+    public void sizeOfEveryFormat() throws IOException {
+        assertSize(640, 480, TestImages.encode("jpeg", 640, 480, BufferedImage.TYPE_INT_RGB));
+        assertSize(33, 17, TestImages.encode("png", 33, 17, BufferedImage.TYPE_INT_ARGB));
+        assertSize(5000, 7, TestImages.png(5000, 7, 2, false));
+        assertSize(4000, 3000, TestImages.webpVp8x(4000, 3000, false));
+        assertSize(16383, 2, TestImages.webpVp8l(16383, 2, true));
+        assertSize(1920, 1080, TestImages.webpVp8(1920, 1080));
+        assertSize(300, 200, TestImages.gif(300, 200));
+        assertEquals(ImageHeader.FORMAT_GIF, parse(TestImages.gif(300, 200)).format);
+    }
+
+    @Test
+    public void sizeIsUnknownWithoutAFrameHeader() throws IOException {
+        byte[] jpeg = TestImages.encode("jpeg", 64, 48, BufferedImage.TYPE_INT_RGB);
+        byte[] start = new byte[20];
+        System.arraycopy(jpeg, 0, start, 0, start.length);
+        ImageHeader header = parse(start);
+        assertEquals(ImageHeader.FORMAT_JPEG, header.format);
+        assertFalse(header.hasSize());
+        assertFalse(parse(new byte[]{1, 2, 3}).hasSize());
+    }
+
+    @Test
+    public void rotationComesFromTheExifOrientation() throws IOException {
+        byte[] jpeg = TestImages.encode("jpeg", 64, 48, BufferedImage.TYPE_INT_RGB);
+        assertEquals(0, parse(jpeg).degree);
+        assertEquals(90, parse(TestImages.withApp1(jpeg, TestImages.orientation(Exif.ORIENTATION_ROTATE_90))).degree);
+        assertEquals(180, parse(TestImages.withApp1(jpeg, TestImages.orientation(Exif.ORIENTATION_ROTATE_180))).degree);
+        ImageHeader rotated = parse(TestImages.withApp1(jpeg, TestImages.orientation(Exif.ORIENTATION_ROTATE_270)));
+        assertEquals(270, rotated.degree);
+        // the size stays the stored one, rotating is up to the engine
+        assertEquals(64, rotated.width);
+        assertEquals(48, rotated.height);
+    }
+
+    private static void assertSize(int width, int height, byte[] data) {
+        ImageHeader header = parse(data);
+        assertTrue(header.hasSize());
+        assertEquals(width, header.width);
+        assertEquals(height, header.height);
+    }
+}
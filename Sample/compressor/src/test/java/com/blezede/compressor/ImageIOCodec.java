@@ -0,0 +1,115 @@
+package com.blezede.compressor;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/6 14:40
+ * Description: The pure Java reference {@link ImageCodec}, ImageIO in place of BitmapFactory and
+ * Bitmap#compress. It samples while decoding but can not scale, so the engine scales the rest of the way.
+ * There is no config to pick, images keep the type ImageIO decodes them to, and nothing is reused.
+ * ImageIO has no WEBP writer. Progressive mode writes progressive JPEGs with optimized Huffman tables,
+ * a second backend to compare against the baseline one.
+ */
+class ImageIOCodec implements ImageCodec<BufferedImage, Void> {
+
+    private final boolean mProgressive;
+
+    ImageIOCodec(boolean progressive) {
+        this.mProgressive = progressive;
+    }
+
+    @Override
+    public int[] probe(ByteBuffer source) {
+        ImageReader reader = null;
+        ImageInputStream in = null;
+        try {
+            in = new MemoryCacheImageInputStream(new ByteBufferInputStream(source));
+            reader = open(in);
+            return reader != null ? new int[]{reader.getWidth(0), reader.getHeight(0)} : null;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (reader != null) {
+                reader.dispose();
+            }
+            IoUtils.closeQuietly(in);
+        }
+    }
+
+    @Override
+    public BufferedImage decode(ByteBuffer source, int sampleSize, int width, int height, Void config, BufferedImage reuse) {
+        ImageReader reader = null;
+        ImageInputStream in = null;
+        try {
+            in = new MemoryCacheImageInputStream(new ByteBufferInputStream(source));
+            reader = open(in);
+            if (reader == null) {
+                return null;
+            }
+            int sample = Math.max(1, sampleSize);
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceSubsampling(sample, sample, 0, 0);
+            return reader.read(0, param);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (reader != null) {
+                reader.dispose();
+            }
+            IoUtils.closeQuietly(in);
+        }
+    }
+
+    @Override
+    public boolean encode(BufferedImage image, String format, int quality, OutputStream out) throws IOException {
+        boolean png = "PNG".equals(format);
+        if (!png && !"JPEG".equals(format)) {
+            return false;
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(png ? "png" : "jpeg").next();
+        MemoryCacheImageOutputStream stream = new MemoryCacheImageOutputStream(out);
+        try {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (!png) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(quality / 100f);
+                if (mProgressive) {
+                    param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+                    ((JPEGImageWriteParam) param).setOptimizeHuffmanTables(true);
+                }
+            }
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+            return true;
+        } finally {
+            writer.dispose();
+            stream.close();
+        }
+    }
+
+    private static ImageReader open(ImageInputStream in) {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+        if (!readers.hasNext()) {
+            return null;
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(in, true, true);
+        return reader;
+    }
+}
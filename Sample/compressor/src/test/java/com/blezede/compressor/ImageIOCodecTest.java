@@ -0,0 +1,97 @@
+package com.blezede.compressor;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/12 11:20
+ * Description: Real images through {@link ImageIOCodec}, the reference {@link ImageCodec} the benchmark runs,
+ * alone and driven by {@link QualityDriver}.
+ */
+public class ImageIOCodecTest {
+
+    private static ByteBuffer jpeg(int width, int height) throws IOException {
+        return ByteBuffer.wrap(TestImages.encode("jpeg", width, height, BufferedImage.TYPE_INT_RGB));
+    }
+
+    private static void assertSimilar(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y += 7) {
+            for (int x = 0; x < expected.getWidth(); x += 7) {
+                int a = expected.getRGB(x, y);
+                int b = actual.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    assertEquals(a >> shift & 0xFF, b >> shift & 0xFF, 24);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void probeAndDecodeSampled() throws IOException {
+        ImageIOCodec codec = new ImageIOCodec(false);
+        ByteBuffer source = jpeg(64, 48);
+        assertArrayEquals(new int[]{64, 48}, codec.probe(source));
+        // probing must not move the source
+        assertEquals(0, source.position());
+
+        BufferedImage sampled = codec.decode(source, 2, 32, 24, null, null);
+        assertEquals(32, sampled.getWidth());
+        assertEquals(24, sampled.getHeight());
+        assertNull(codec.probe(ByteBuffer.wrap(new byte[]{1, 2, 3})));
+        assertNull(codec.decode(ByteBuffer.wrap(new byte[]{1, 2, 3}), 1, 1, 1, null, null));
+    }
+
+    @Test
+    public void encodedImageDecodesToTheSamePixels() throws IOException {
+        for (boolean progressive : new boolean[]{false, true}) {
+            ImageIOCodec codec = new ImageIOCodec(progressive);
+            BufferedImage image = codec.decode(jpeg(64, 48), 1, 64, 48, null, null);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertTrue(codec.encode(image, "JPEG", 95, out));
+            assertSimilar(image, codec.decode(ByteBuffer.wrap(out.toByteArray()), 1, 64, 48, null, null));
+
+            out.reset();
+            assertTrue(codec.encode(image, "PNG", 0, out));
+            BufferedImage png = codec.decode(ByteBuffer.wrap(out.toByteArray()), 1, 64, 48, null, null);
+            assertEquals(image.getRGB(10, 10), png.getRGB(10, 10));
+        }
+    }
+
+    @Test
+    public void webpIsNotWritten() throws IOException {
+        ImageIOCodec codec = new ImageIOCodec(false);
+        BufferedImage image = codec.decode(jpeg(16, 16), 1, 16, 16, null, null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertFalse(codec.encode(image, "WEBP", 80, out));
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    public void driverFitsARealImageIntoTheLimit() throws IOException {
+        ImageIOCodec codec = new ImageIOCodec(false);
+        BufferedImage image = codec.decode(jpeg(256, 192), 1, 256, 192, null, null);
+        ByteArrayOutputStream unlimited = new ByteArrayOutputStream();
+        assertTrue(codec.encode(image, "JPEG", 90, unlimited));
+
+        int limit = unlimited.size() / 2;
+        QualityDriver<BufferedImage> driver = new QualityDriver<>(codec, "JPEG", 90, limit, 0.1f, 0);
+        QualitySearch.Result result = driver.search(image, 90, 0, null);
+        assertTrue(result.quality < 90);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(driver.write(image, 90, result, out, null));
+        assertTrue(out.size() <= limit);
+
+        BufferedImage decoded = codec.decode(ByteBuffer.wrap(out.toByteArray()), 1, 256, 192, null, null);
+        assertEquals(256, decoded.getWidth());
+        assertEquals(192, decoded.getHeight());
+    }
+}
@@ -0,0 +1,144 @@
+package com.blezede.compressor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/10 9:55
+ * Description: {@link ImageSource} reads every kind of source once, {@link ByteBufferInputStream} replays it.
+ */
+public class ImageSourceTest {
+
+    private static final byte[] DATA = {1, 2, 3, 4, 5, 6, 7, 8};
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static class StreamProvider implements InputStreamProvider {
+
+        final String mPath;
+        int mOpened;
+
+        StreamProvider(String path) {
+            this.mPath = path;
+        }
+
+        @Override
+        public InputStream open() {
+            mOpened++;
+            return new ByteArrayInputStream(DATA);
+        }
+
+        @Override
+        public String getPath() {
+            return mPath;
+        }
+    }
+
+    @Test
+    public void streamIsReadOnce() throws IOException {
+        StreamProvider provider = new StreamProvider(null);
+        ImageSource image = ImageSource.open(provider);
+        assertEquals(1, provider.mOpened);
+        assertEquals(DATA.length, image.length());
+        assertArrayEquals(DATA, toArray(image.buffer()));
+        assertArrayEquals(DATA, toArray(image.data()));
+        assertEquals(1, provider.mOpened);
+    }
+
+    private File newSourceFile() throws IOException {
+        File file = mFolder.newFile("source.jpg");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[]{9, 9});
+        out.close();
+        return file;
+    }
+
+    @Test
+    public void ownFileIsMapped() throws IOException {
+        File file = newSourceFile();
+        ImageSource image = ImageSource.open(new FileStreamProvider(file, file.getPath()));
+        assertArrayEquals(new byte[]{9, 9}, toArray(image.buffer()));
+        assertFalse(image.data().hasArray());
+    }
+
+    @Test
+    public void foreignProviderIsReadThroughItsStream() throws IOException {
+        // the path may name the file the provider decrypts or transforms, the stream is what counts
+        StreamProvider provider = new StreamProvider(newSourceFile().getPath());
+        ImageSource image = ImageSource.open(provider);
+        assertEquals(1, provider.mOpened);
+        assertArrayEquals(DATA, toArray(image.buffer()));
+    }
+
+    @Test
+    public void bufferProviderStartsAtItsPosition() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(DATA);
+        buffer.position(2);
+        ImageSource image = ImageSource.open(new BufferStreamProvider() {
+            @Override
+            public ByteBuffer openBuffer() {
+                return buffer;
+            }
+
+            @Override
+            public InputStream open() {
+                throw new AssertionError("the buffer is enough");
+            }
+
+            @Override
+            public String getPath() {
+                return null;
+            }
+        });
+        assertEquals(DATA.length - 2, image.length());
+        assertEquals(3, image.buffer().get());
+    }
+
+    @Test
+    public void viewsAreIndependent() throws IOException {
+        ImageSource image = ImageSource.open(new StreamProvider(null));
+        ByteBuffer first = image.buffer();
+        first.get();
+        first.get();
+        assertEquals(0, image.buffer().position());
+        assertTrue(image.buffer().isReadOnly());
+        assertEquals(1, image.newStream().read());
+    }
+
+    @Test
+    public void streamMarksSkipsAndResets() {
+        ByteBufferInputStream in = new ByteBufferInputStream(ByteBuffer.wrap(DATA));
+        assertTrue(in.markSupported());
+        assertEquals(1, in.read());
+        in.mark(0);
+        assertEquals(3, in.skip(3));
+        assertEquals(5, in.read());
+        in.reset();
+        assertEquals(2, in.read());
+        assertEquals(DATA.length - 2, in.available());
+
+        byte[] rest = new byte[16];
+        assertEquals(DATA.length - 2, in.read(rest, 0, rest.length));
+        assertEquals(-1, in.read(rest, 0, rest.length));
+        assertEquals(-1, in.read());
+        assertEquals(0, in.skip(5));
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,183 @@
+package com.blezede.compressor;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/11 16:30
+ * Description: {@link InFlightRegistry} lets identical compressions running at the same time share one run.
+ */
+public class InFlightRegistryTest {
+
+    /**
+     * Counts its runs and blocks each of them until the gate opens.
+     */
+    private static class GatedTask implements InFlightRegistry.Task {
+
+        final CountDownLatch mStarted = new CountDownLatch(1);
+        final CountDownLatch mGate = new CountDownLatch(1);
+        final AtomicInteger mRuns = new AtomicInteger();
+        volatile boolean mFail;
+
+        @Override
+        public String run() {
+            int run = mRuns.incrementAndGet();
+            mStarted.countDown();
+            try {
+                assertTrue(mGate.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new CancellationException();
+            }
+            if (mFail && run == 1) {
+                throw new IllegalStateException("decode failed");
+            }
+            return "out" + run;
+        }
+    }
+
+    private static Future<String> submit(ExecutorService pool, final InFlightRegistry registry, final String key,
+                                         final CompressionJob job, final CompressMetrics metrics,
+                                         final InFlightRegistry.Task task) {
+        return pool.submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return registry.run(key, job, metrics, task);
+            }
+        });
+    }
+
+    @Test
+    public void identicalRequestsShareOneRun() throws Exception {
+        InFlightRegistry registry = new InFlightRegistry();
+        GatedTask task = new GatedTask();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            List<CompressMetrics> metrics = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                metrics.add(new CompressMetrics("a.jpg"));
+                results.add(submit(pool, registry, "a.jpg|out|JPEG", null, metrics.get(i), task));
+                if (i == 0) {
+                    assertTrue(task.mStarted.await(5, TimeUnit.SECONDS));
+                }
+            }
+            // let the others reach the wait
+            Thread.sleep(100);
+            task.mGate.countDown();
+
+            int shared = 0;
+            for (int i = 0; i < 4; i++) {
+                assertEquals("out1", results.get(i).get(5, TimeUnit.SECONDS));
+                shared += metrics.get(i).isShared() ? 1 : 0;
+            }
+            assertEquals(1, task.mRuns.get());
+            assertEquals(3, shared);
+            assertFalse(metrics.get(0).isShared());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void finishedRunsAreNotRemembered() {
+        InFlightRegistry registry = new InFlightRegistry();
+        GatedTask task = new GatedTask();
+        task.mGate.countDown();
+        assertEquals("out1", registry.run("a", null, null, task));
+        assertEquals("out2", registry.run("a", null, null, task));
+        assertEquals("out3", registry.run(null, null, null, task));
+    }
+
+    @Test
+    public void aWaiterRunsItselfWhenTheLeaderThrows() throws Exception {
+        InFlightRegistry registry = new InFlightRegistry();
+        GatedTask task = new GatedTask();
+        task.mFail = true;
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = submit(pool, registry, "a", null, null, task);
+            assertTrue(task.mStarted.await(5, TimeUnit.SECONDS));
+            CompressMetrics metrics = new CompressMetrics("a");
+            Future<String> follower = submit(pool, registry, "a", null, metrics, task);
+            Thread.sleep(100);
+            task.mGate.countDown();
+
+            try {
+                leader.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException expected) {
+                assertTrue(expected.getCause() instanceof IllegalStateException);
+            }
+            assertEquals("out2", follower.get(5, TimeUnit.SECONDS));
+            assertEquals(2, task.mRuns.get());
+            assertFalse(metrics.isShared());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void aCancelledWaiterStopsWaitingButNotTheRun() throws Exception {
+        InFlightRegistry registry = new InFlightRegistry();
+        GatedTask task = new GatedTask();
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = submit(pool, registry, "a", null, null, task);
+            assertTrue(task.mStarted.await(5, TimeUnit.SECONDS));
+            CompressionJob job = new CompressionJob(1);
+            Future<String> waiter = submit(pool, registry, "a", job, null, task);
+            job.cancel();
+            try {
+                waiter.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException expected) {
+                assertTrue(expected.getCause() instanceof CancellationException);
+            }
+            assertFalse(leader.isDone());
+
+            task.mGate.countDown();
+            assertEquals("out1", leader.get(5, TimeUnit.SECONDS));
+            assertEquals(1, task.mRuns.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void sourcesAreIdentifiedByTheirAbsolutePath() {
+        assertEquals(new File("a.jpg").getAbsolutePath(), InFlightRegistry.identify(source("a.jpg")));
+        assertEquals("/sdcard/a.jpg", InFlightRegistry.identify(source("/sdcard/a.jpg")));
+        assertNull(InFlightRegistry.identify(source("")));
+        assertNull(InFlightRegistry.identify(source(null)));
+    }
+
+    private static InputStreamProvider source(final String path) {
+        return new InputStreamProvider() {
+            @Override
+            public InputStream open() {
+                return null;
+            }
+
+            @Override
+            public String getPath() {
+                return path;
+            }
+        };
+    }
+}
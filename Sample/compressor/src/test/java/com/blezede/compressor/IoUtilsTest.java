@@ -0,0 +1,71 @@
+package com.blezede.compressor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/10 14:40
+ * Description: The transferTo passthrough copy of {@link IoUtils}.
+ */
+public class IoUtilsTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void copiesTheWholeFile() throws IOException {
+        byte[] data = new byte[3 * 1024 * 1024 + 5];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        File source = mFolder.newFile("source.jpg");
+        FileOutputStream out = new FileOutputStream(source);
+        out.write(data);
+        out.close();
+        File dest = new File(mFolder.getRoot(), "copy.jpg");
+
+        assertEquals(dest.getPath(), IoUtils.copyFile(source.getPath(), dest.getPath()));
+        assertArrayEquals(data, ChannelOutputStreamTest.read(dest));
+        assertEquals(2, mFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void copiesAChannelFromItsStart() throws IOException {
+        File source = mFolder.newFile("source.jpg");
+        FileOutputStream out = new FileOutputStream(source);
+        out.write(new byte[]{1, 2, 3, 4});
+        out.close();
+        File dest = new File(mFolder.getRoot(), "copy.jpg");
+        FileInputStream in = new FileInputStream(source);
+        try {
+            in.getChannel().position(2);
+            assertTrue(IoUtils.copy(in.getChannel(), dest));
+        } finally {
+            in.close();
+        }
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, ChannelOutputStreamTest.read(dest));
+    }
+
+    @Test
+    public void failedCopyLeavesNothingBehind() throws IOException {
+        File dest = new File(mFolder.getRoot(), "copy.jpg");
+        assertEquals("", IoUtils.copyFile(new File(mFolder.getRoot(), "missing.jpg").getPath(), dest.getPath()));
+        assertEquals("", IoUtils.copyFile(null, dest.getPath()));
+        assertEquals("", IoUtils.copyFile(mFolder.newFile("source.jpg").getPath(), ""));
+
+        File source = mFolder.newFile("other.jpg");
+        File unwritable = new File(new File(mFolder.getRoot(), "missing"), "copy.jpg");
+        assertEquals("", IoUtils.copyFile(source.getPath(), unwritable.getPath()));
+        assertFalse(dest.exists());
+        assertEquals(2, mFolder.getRoot().list().length);
+    }
+}
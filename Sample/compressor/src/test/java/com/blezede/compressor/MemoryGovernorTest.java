@@ -0,0 +1,142 @@
+package com.blezede.compressor;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/11 11:40
+ * Description: {@link MemoryGovernor} holds compressions back while their footprint does not fit the budget,
+ * and shrinks the budget under memory pressure.
+ */
+public class MemoryGovernorTest {
+
+    /**
+     * Acquire on another thread, counting down once the lease is held.
+     */
+    private static Thread acquire(final MemoryGovernor.Lease lease, final long bytes, final CompressionJob job,
+                                  final CountDownLatch acquired, final AtomicReference<RuntimeException> error) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    lease.acquire(bytes, job);
+                    acquired.countDown();
+                } catch (RuntimeException e) {
+                    error.set(e);
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    public void aLoneCompressionAlwaysStarts() {
+        MemoryGovernor governor = new MemoryGovernor(100);
+        assertTrue(governor.exceedsBudget(500));
+        MemoryGovernor.Lease lease = governor.newLease();
+        lease.acquire(500, null);
+        lease.release();
+    }
+
+    @Test
+    public void leasesWaitUntilTheFootprintFits() throws InterruptedException {
+        MemoryGovernor governor = new MemoryGovernor(100);
+        MemoryGovernor.Lease first = governor.newLease();
+        first.acquire(60, null);
+        MemoryGovernor.Lease small = governor.newLease();
+        small.acquire(40, null);
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        AtomicReference<RuntimeException> error = new AtomicReference<>();
+        Thread waiter = acquire(governor.newLease(), 30, null, acquired, error);
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+
+        first.release();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        waiter.join();
+        assertNull(error.get());
+    }
+
+    @Test
+    public void releasingTwiceGivesBackOnce() throws InterruptedException {
+        MemoryGovernor governor = new MemoryGovernor(100);
+        MemoryGovernor.Lease first = governor.newLease();
+        first.acquire(70, null);
+        MemoryGovernor.Lease second = governor.newLease();
+        second.acquire(30, null);
+        second.release();
+        second.release();
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = acquire(governor.newLease(), 50, null, acquired, new AtomicReference<RuntimeException>());
+        // 70 are still held, a double release must not have freed them
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        first.release();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        waiter.join();
+    }
+
+    @Test
+    public void raisingTheBudgetWakesWaiters() throws InterruptedException {
+        MemoryGovernor governor = new MemoryGovernor(100);
+        governor.newLease().acquire(80, null);
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = acquire(governor.newLease(), 80, null, acquired, new AtomicReference<RuntimeException>());
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        governor.setBudget(200);
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        waiter.join();
+    }
+
+    @Test
+    public void cancelledJobStopsWaiting() throws InterruptedException {
+        MemoryGovernor governor = new MemoryGovernor(100);
+        governor.newLease().acquire(100, null);
+        CompressionJob job = new CompressionJob(1);
+        CountDownLatch acquired = new CountDownLatch(1);
+        AtomicReference<RuntimeException> error = new AtomicReference<>();
+        Thread waiter = acquire(governor.newLease(), 10, job, acquired, error);
+        job.cancel();
+        waiter.join(5000);
+        assertFalse(waiter.isAlive());
+        assertTrue(error.get() instanceof CancellationException);
+        assertEquals(1, acquired.getCount());
+    }
+
+    @Test
+    public void pressureShrinksTheBudget() {
+        MemoryGovernor governor = new MemoryGovernor(400);
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        assertEquals(400, governor.getBudget());
+
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(200, governor.getBudget());
+        assertTrue(governor.exceedsBudget(300));
+
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+        assertEquals(100, governor.getBudget());
+        // a milder level does not undo a harder one
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_MODERATE);
+        assertEquals(100, governor.getBudget());
+    }
+
+    @Test
+    public void lowMemoryQuartersTheBudget() {
+        MemoryGovernor governor = new MemoryGovernor(400);
+        governor.onLowMemory();
+        assertEquals(100, governor.getBudget());
+        governor.setBudget(-1);
+        assertEquals(0, governor.getBudget());
+    }
+}
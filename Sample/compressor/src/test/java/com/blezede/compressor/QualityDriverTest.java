@@ -0,0 +1,141 @@
+package com.blezede.compressor;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.Assert.*;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/11 15:20
+ * Description: {@link QualityDriver} runs the quality search and the final write through any {@link ImageCodec}.
+ */
+public class QualityDriverTest {
+
+    /**
+     * The image is the number of bytes it takes per quality step, every encode writes that many times
+     * one more than the quality and fails below {@link #mFailBelow}.
+     */
+    private static class FakeCodec implements ImageCodec<Integer, Void> {
+
+        final List<String> mEncodes = new ArrayList<>();
+        int mFailBelow;
+
+        @Override
+        public int[] probe(ByteBuffer source) {
+            return null;
+        }
+
+        @Override
+        public Integer decode(ByteBuffer source, int sampleSize, int width, int height, Void config, Integer reuse) {
+            return null;
+        }
+
+        @Override
+        public boolean encode(Integer image, String format, int quality, OutputStream out) throws IOException {
+            mEncodes.add(format + quality);
+            if (quality < mFailBelow) {
+                return false;
+            }
+            out.write(new byte[image * (quality + 1)]);
+            return true;
+        }
+    }
+
+    private static class RecordingListener implements QualityDriver.Listener {
+
+        final List<Long> mBytes = new ArrayList<>();
+
+        @Override
+        public void onEncoded(int quality, long bytes) {
+            mBytes.add(bytes);
+        }
+    }
+
+    @Test
+    public void noSearchWithoutASizeLimit() throws IOException {
+        FakeCodec codec = new FakeCodec();
+        QualityDriver<Integer> driver = new QualityDriver<>(codec, "JPEG", 80, 0, 0.1f, 0);
+        assertNull(driver.search(100, 80, 0, null));
+        assertTrue(codec.mEncodes.isEmpty());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RecordingListener listener = new RecordingListener();
+        assertTrue(driver.write(100, 80, null, out, listener));
+        assertEquals(8100, out.size());
+        assertEquals(8100L, (long) listener.mBytes.get(0));
+        assertEquals("JPEG80", codec.mEncodes.get(0));
+    }
+
+    @Test
+    public void searchFitsWhatIsLeftAfterTheReservedBytes() throws IOException {
+        FakeCodec codec = new FakeCodec();
+        QualityDriver<Integer> driver = new QualityDriver<>(codec, "WEBP", 90, 50000, 0.1f, 0);
+        RecordingListener listener = new RecordingListener();
+        QualitySearch.Result result = driver.search(1000, 90, 10000, listener);
+        assertTrue(result.data.count() <= 40000);
+        assertTrue(result.quality <= 40);
+        assertEquals(codec.mEncodes.size(), listener.mBytes.size());
+
+        // the kept bytes are written as they are
+        int encodes = codec.mEncodes.size();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(driver.write(1000, 90, result, out, null));
+        assertEquals(result.data.count(), out.size());
+        assertEquals(encodes, codec.mEncodes.size());
+    }
+
+    @Test
+    public void imageTooLargeAtAnyQualityIsEncodedAtTheLowest() throws IOException {
+        FakeCodec codec = new FakeCodec();
+        QualityDriver<Integer> driver = new QualityDriver<>(codec, "JPEG", 80, 500, 0.1f, 0);
+        QualitySearch.Result result = driver.search(1000, 80, 0, null);
+        assertNull(result.data);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RecordingListener listener = new RecordingListener();
+        assertTrue(driver.write(1000, 80, result, out, listener));
+        assertEquals("JPEG" + result.quality, codec.mEncodes.get(codec.mEncodes.size() - 1));
+        assertEquals((long) out.size(), (long) listener.mBytes.get(0));
+    }
+
+    @Test
+    public void failedEncodeIsReported() throws IOException {
+        FakeCodec codec = new FakeCodec();
+        codec.mFailBelow = 100;
+        QualityDriver<Integer> driver = new QualityDriver<>(codec, "JPEG", 80, 0, 0.1f, 0);
+        assertFalse(driver.write(10, 80, null, new ByteArrayOutputStream(), null));
+
+        QualityDriver<Integer> limited = new QualityDriver<>(codec, "JPEG", 80, 5000, 0.1f, 0);
+        try {
+            limited.search(10, 80, 0, null);
+            fail();
+        } catch (IOException expected) {
+            // a failed encode must not pass for a fitting one
+        }
+    }
+
+    @Test
+    public void listenerCanStopTheSearch() throws IOException {
+        FakeCodec codec = new FakeCodec();
+        QualityDriver<Integer> driver = new QualityDriver<>(codec, "JPEG", 90, 1000, 0.01f, 0);
+        try {
+            driver.search(1000, 90, 0, new QualityDriver.Listener() {
+                @Override
+                public void onEncoded(int quality, long bytes) {
+                    throw new CancellationException();
+                }
+            });
+            fail();
+        } catch (CancellationException expected) {
+            assertEquals(1, codec.mEncodes.size());
+        }
+    }
+}
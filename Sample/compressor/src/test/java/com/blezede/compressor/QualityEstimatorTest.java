@@ -0,0 +1,115 @@
+package com.blezede.compressor;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/11 11:20
+ * Description: {@link QualityEstimator} rates the detail of an image and predicts the quality that meets a density.
+ */
+public class QualityEstimatorTest {
+
+    /**
+     * Pixels of an ARGB array, failing on reads outside of it.
+     */
+    private static QualityEstimator.Pixels pixels(final int[] argb, final int width, final int height) {
+        return new QualityEstimator.Pixels() {
+            @Override
+            public void get(int[] out, int x, int y, int w, int h) {
+                assertTrue(x >= 0 && y >= 0 && x + w <= width && y + h <= height);
+                for (int row = 0; row < h; row++) {
+                    System.arraycopy(argb, (y + row) * width + x, out, row * w, w);
+                }
+            }
+        };
+    }
+
+    private static int[] flat(int width, int height) {
+        int[] argb = new int[width * height];
+        Arrays.fill(argb, 0xFF336699);
+        return argb;
+    }
+
+    private static int[] noise(int width, int height) {
+        Random random = new Random(7);
+        int[] argb = new int[width * height];
+        for (int i = 0; i < argb.length; i++) {
+            argb[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        return argb;
+    }
+
+    @Test
+    public void flatImageHasNoDetail() {
+        assertEquals(0f, QualityEstimator.complexity(pixels(flat(400, 300), 400, 300), 400, 300), 0f);
+    }
+
+    @Test
+    public void stripesAreAsDetailedAsTheirContrast() {
+        int width = 200;
+        int height = 100;
+        int[] argb = new int[width * height];
+        for (int i = 0; i < argb.length; i++) {
+            argb[i] = (i % width) % 2 == 0 ? 0xFF000000 : 0xFFFFFFFF;
+        }
+        // every horizontal step changes the luma by 255, no vertical step does
+        assertEquals(255 / 2f, QualityEstimator.complexity(pixels(argb, width, height), width, height), 1f);
+    }
+
+    @Test
+    public void imagesSmallerThanAPatchAreReadWhole() {
+        float complexity = QualityEstimator.complexity(pixels(noise(5, 3), 5, 3), 5, 3);
+        assertTrue(complexity > 0);
+        assertEquals(0f, QualityEstimator.complexity(pixels(flat(1, 1), 1, 1), 1, 1), 0f);
+    }
+
+    @Test
+    public void predictionGrowsWithQualityAndDetail() {
+        float previous = 0;
+        for (int quality = QualityEstimator.MIN_QUALITY; quality <= QualityEstimator.MAX_QUALITY; quality++) {
+            float bits = QualityEstimator.predictBitsPerPixel(10, quality);
+            assertTrue(bits >= previous);
+            previous = bits;
+        }
+        assertTrue(QualityEstimator.predictBitsPerPixel(40, 70) > QualityEstimator.predictBitsPerPixel(5, 70));
+    }
+
+    @Test
+    public void estimateStaysWithinTheDensity() {
+        for (float complexity = 0; complexity < 80; complexity += 3.5f) {
+            for (float bits = 0.5f; bits < 8; bits += 0.75f) {
+                int quality = QualityEstimator.estimate(complexity, bits);
+                assertTrue(quality >= QualityEstimator.MIN_QUALITY && quality <= QualityEstimator.MAX_QUALITY);
+                if (quality > QualityEstimator.MIN_QUALITY) {
+                    assertTrue(QualityEstimator.predictBitsPerPixel(complexity, quality) <= bits);
+                }
+                if (quality < QualityEstimator.MAX_QUALITY) {
+                    assertTrue(QualityEstimator.predictBitsPerPixel(complexity, quality + 1) > bits);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void flatImagesKeepAHighQualityAndBusyOnesDrop() {
+        assertEquals(QualityEstimator.MAX_QUALITY, QualityEstimator.estimate(0, 2f));
+        float busy = QualityEstimator.complexity(pixels(noise(256, 256), 256, 256), 256, 256);
+        assertTrue(QualityEstimator.estimate(busy, 2f) < QualityEstimator.MAX_QUALITY);
+        // a density no quality meets still gets the lowest
+        assertEquals(QualityEstimator.MIN_QUALITY, QualityEstimator.estimate(busy, 0.01f));
+    }
+
+    @Test
+    public void driverKeepsTheFixedQualityWhenNotEstimating() {
+        QualityEstimator.Pixels busy = pixels(noise(64, 64), 64, 64);
+        assertEquals(80, new QualityDriver<Object>(null, "JPEG", 80, 0, 0, 0).selectQuality(busy, 64, 64));
+        assertEquals(80, new QualityDriver<Object>(null, "PNG", 80, 0, 0, 2f).selectQuality(busy, 64, 64));
+        int estimated = new QualityDriver<Object>(null, "JPEG", 80, 0, 0, 2f).selectQuality(busy, 64, 64);
+        assertEquals(QualityEstimator.estimate(QualityEstimator.complexity(busy, 64, 64), 2f), estimated);
+    }
+}
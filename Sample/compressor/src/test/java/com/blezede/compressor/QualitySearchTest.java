@@ -0,0 +1,136 @@
+package com.blezede.compressor;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/10 10:20
+ * Description: {@link QualitySearch} against an encoder whose output grows linearly with the quality,
+ * and the {@link CountingOutputStream} it encodes into.
+ */
+public class QualitySearchTest {
+
+    /**
+     * Writes {@code base + quality * perQuality} bytes, each of them the quality, and remembers the attempts.
+     */
+    private static class LinearEncoder implements QualitySearch.Encoder {
+
+        final int mBase;
+        final int mPerQuality;
+        final List<Integer> mQualities = new ArrayList<>();
+
+        LinearEncoder(int base, int perQuality) {
+            this.mBase = base;
+            this.mPerQuality = perQuality;
+        }
+
+        @Override
+        public boolean encode(int quality, CountingOutputStream out) {
+            mQualities.add(quality);
+            byte[] bytes = new byte[mBase + quality * mPerQuality];
+            Arrays.fill(bytes, (byte) quality);
+            out.write(bytes, 0, bytes.length);
+            return true;
+        }
+    }
+
+    @Test
+    public void keepsPreferredQualityThatFits() throws IOException {
+        LinearEncoder encoder = new LinearEncoder(0, 1000);
+        QualitySearch.Result result = QualitySearch.search(encoder, 80, 100000, 0.05f);
+        assertEquals(80, result.quality);
+        assertEquals(1, result.attempts);
+        assertEquals(80000, result.data.count());
+    }
+
+    @Test
+    public void landsWithinToleranceBelowTheBudget() throws IOException {
+        LinearEncoder encoder = new LinearEncoder(0, 1000);
+        long maxSize = 50500;
+        QualitySearch.Result result = QualitySearch.search(encoder, 90, maxSize, 0.05f);
+        long size = result.data.count();
+        assertTrue(size <= maxSize);
+        assertTrue(size >= maxSize * 0.95f);
+        assertEquals(result.quality * 1000, size);
+        assertEquals(encoder.mQualities.size(), result.attempts);
+        assertTrue(result.attempts < 8);
+        // the kept bytes are the ones encoded at the chosen quality
+        ByteBuffer data = result.data.toByteBuffer();
+        assertEquals(result.quality, data.get(data.limit() - 1));
+    }
+
+    @Test
+    public void keepsBestFitWhenToleranceIsNeverReached() throws IOException {
+        LinearEncoder encoder = new LinearEncoder(0, 1000);
+        QualitySearch.Result result = QualitySearch.search(encoder, 100, 50500, 0f);
+        assertEquals(50, result.quality);
+        assertEquals(50000, result.data.count());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        result.data.writeTo(out);
+        assertEquals(50, out.toByteArray()[0]);
+    }
+
+    @Test
+    public void returnsLowestQualityWithoutDataWhenNothingFits() throws IOException {
+        LinearEncoder encoder = new LinearEncoder(10000, 100);
+        QualitySearch.Result result = QualitySearch.search(encoder, 80, 5000, 0.05f);
+        assertNull(result.data);
+        assertEquals(0, result.quality);
+    }
+
+    @Test(expected = IOException.class)
+    public void failedEncodeIsNotAFit() throws IOException {
+        QualitySearch.search(new QualitySearch.Encoder() {
+            @Override
+            public boolean encode(int quality, CountingOutputStream out) {
+                return false;
+            }
+        }, 80, 100000, 0.05f);
+    }
+
+    @Test
+    public void countingStreamKeepsBytesOnlyWithinItsLimit() throws IOException {
+        CountingOutputStream out = new CountingOutputStream(4);
+        out.write(new byte[]{1, 2, 3}, 0, 3);
+        assertTrue(out.isComplete());
+        assertEquals(3, out.toByteBuffer().remaining());
+
+        out.write(new byte[]{4, 5}, 0, 2);
+        out.write(6);
+        assertEquals(6, out.count());
+        assertFalse(out.isComplete());
+        try {
+            out.toByteBuffer();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        out.reset();
+        out.write(9);
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        out.writeTo(copy);
+        assertArrayEquals(new byte[]{9}, copy.toByteArray());
+    }
+
+    @Test
+    public void countingStreamGrowsPastItsFirstBuffer() {
+        CountingOutputStream out = new CountingOutputStream(200 * 1024);
+        byte[] chunk = new byte[50 * 1024];
+        chunk[chunk.length - 1] = 7;
+        for (int i = 0; i < 4; i++) {
+            out.write(chunk, 0, chunk.length);
+        }
+        ByteBuffer data = out.toByteBuffer();
+        assertEquals(200 * 1024, data.remaining());
+        assertEquals(7, data.get(data.limit() - 1));
+    }
+}
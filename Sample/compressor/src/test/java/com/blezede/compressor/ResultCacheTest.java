@@ -0,0 +1,128 @@
+package com.blezede.compressor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/10 13:40
+ * Description: {@link ResultCache} keys, lookups and least recently used eviction.
+ */
+public class ResultCacheTest {
+
+    private static final String OPTIONS = "JPEG|60|1280";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void keyDependsOnContentAndOptions() {
+        ByteBuffer content = ByteBuffer.wrap(new byte[]{1, 2, 3});
+        String key = ResultCache.key(null, content, OPTIONS);
+        assertTrue(key.matches("[0-9a-f]{32}"));
+        assertEquals(key, ResultCache.key("ignored", ByteBuffer.wrap(new byte[]{1, 2, 3}), OPTIONS));
+        assertNotEquals(key, ResultCache.key(null, ByteBuffer.wrap(new byte[]{1, 2, 4}), OPTIONS));
+        assertNotEquals(key, ResultCache.key(null, content, "JPEG|80|1280"));
+        // hashing does not consume the caller's buffer
+        assertEquals(3, content.remaining());
+    }
+
+    @Test
+    public void keyOfAPathChangesWithTheFile() throws IOException {
+        File source = write(mFolder.newFile("source.jpg"), 10);
+        String key = ResultCache.key(source.getPath(), null, OPTIONS);
+        assertNotNull(key);
+        assertEquals(key, ResultCache.key(source.getPath(), null, OPTIONS));
+        write(source, 20);
+        assertNotEquals(key, ResultCache.key(source.getPath(), null, OPTIONS));
+    }
+
+    @Test
+    public void sourceWithoutIdentityHasNoKey() {
+        assertNull(ResultCache.key(null, null, OPTIONS));
+        assertNull(ResultCache.key("", null, OPTIONS));
+        assertNull(ResultCache.key(new File(mFolder.getRoot(), "missing.jpg").getPath(), null, OPTIONS));
+    }
+
+    @Test
+    public void returnsRegisteredOutputOfTheSameFormat() throws IOException {
+        File dir = mFolder.newFolder();
+        ResultCache cache = ResultCache.get(dir.getPath());
+        String key = ResultCache.key(null, ByteBuffer.wrap(new byte[]{1}), OPTIONS);
+        assertNull(cache.lookup(key, ".jpg"));
+
+        File output = write(cache.fileFor(key, ".jpg"), 10);
+        cache.put(key, output);
+        assertEquals(output.getAbsolutePath(), cache.lookup(key, ".jpg"));
+        assertNull(cache.lookup(key, ".png"));
+        // the mismatch dropped the entry
+        assertNull(cache.lookup(key, ".jpg"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedPastTheSizeLimit() throws IOException {
+        File dir = mFolder.newFolder();
+        ResultCache cache = ResultCache.get(dir.getPath());
+        cache.setLimits(250, 0);
+        String a = put(cache, 1);
+        String b = put(cache, 2);
+        assertNotNull(cache.lookup(a, ".jpg"));
+        String c = put(cache, 3);
+
+        assertNotNull(cache.lookup(a, ".jpg"));
+        assertNull(cache.lookup(b, ".jpg"));
+        assertFalse(cache.fileFor(b, ".jpg").exists());
+        assertNotNull(cache.lookup(c, ".jpg"));
+    }
+
+    @Test
+    public void picksUpEntriesLeftOnDiskAndDropsExpiredOnes() throws IOException {
+        File dir = mFolder.newFolder();
+        String old = ResultCache.key(null, ByteBuffer.wrap(new byte[]{1}), OPTIONS);
+        String recent = ResultCache.key(null, ByteBuffer.wrap(new byte[]{2}), OPTIONS);
+        File oldFile = write(new File(dir, old + ".jpg"), 10);
+        File recentFile = write(new File(dir, recent + ".jpg"), 10);
+        long now = System.currentTimeMillis();
+        oldFile.setLastModified(now - 60 * 60 * 1000);
+        recentFile.setLastModified(now);
+        write(new File(dir, "not-an-entry.jpg"), 10);
+
+        ResultCache cache = ResultCache.get(dir.getPath());
+        cache.setLimits(0, 60 * 1000);
+        assertEquals(recentFile.getAbsolutePath(), cache.lookup(recent, ".jpg"));
+        assertNull(cache.lookup(old, ".jpg"));
+        assertFalse(oldFile.exists());
+        assertTrue(new File(dir, "not-an-entry.jpg").exists());
+    }
+
+    @Test
+    public void sameDirectorySharesOneCache() throws IOException {
+        File dir = mFolder.newFolder();
+        assertSame(ResultCache.get(dir.getPath()), ResultCache.get(dir.getAbsolutePath()));
+        assertNotSame(ResultCache.get(dir.getPath()), ResultCache.get(mFolder.newFolder().getPath()));
+    }
+
+    private static String put(ResultCache cache, int content) throws IOException {
+        String key = ResultCache.key(null, ByteBuffer.wrap(new byte[]{(byte) content}), OPTIONS);
+        cache.put(key, write(cache.fileFor(key, ".jpg"), 100));
+        return key;
+    }
+
+    private static File write(File file, int length) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[length]);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,164 @@
+package com.blezede.compressor;
+
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/10 17:20
+ * Description: {@link ResultDispatcher} delivers one call at a time, in load order when asked to.
+ */
+public class ResultDispatcherTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static class RecordingCallback implements CompressCallback, CompressListener {
+
+        final List<String> mEvents = Collections.synchronizedList(new ArrayList<String>());
+        List<CompressResult> mComplete;
+
+        @Override
+        public void onResult(CompressResult result) {
+            mEvents.add("result" + result.getIndex());
+        }
+
+        @Override
+        public void onProgress(int completed, int total) {
+            mEvents.add(completed + "/" + total);
+        }
+
+        @Override
+        public void onComplete(List<CompressResult> results) {
+            mComplete = results;
+        }
+
+        @Override
+        public void onSuccess(String dest) {
+            mEvents.add("success " + dest);
+        }
+
+        @Override
+        public void onFiled(String src) {
+            mEvents.add("failed " + src);
+        }
+    }
+
+    private static InputStreamProvider source(final String path) {
+        return new InputStreamProvider() {
+            @Override
+            public InputStream open() {
+                return null;
+            }
+
+            @Override
+            public String getPath() {
+                return path;
+            }
+        };
+    }
+
+    @Test
+    public void orderedResultsWaitForEarlierSources() {
+        RecordingCallback callback = new RecordingCallback();
+        ResultDispatcher dispatcher = new ResultDispatcher(new CompressionJob(3), 3, null, callback, DIRECT, true);
+        dispatcher.dispatch(new CompressResult(2, null, "c"));
+        assertTrue(callback.mEvents.isEmpty());
+        dispatcher.dispatch(new CompressResult(0, null, "a"));
+        assertEquals(2, callback.mEvents.size());
+        dispatcher.dispatch(new CompressResult(1, null, "b"));
+        assertEquals(Arrays.asList("result0", "1/3", "result1", "2/3", "result2", "3/3"), callback.mEvents);
+        assertEquals(3, callback.mComplete.size());
+        assertEquals("b", callback.mComplete.get(1).getPath());
+    }
+
+    @Test
+    public void unorderedResultsArriveAsTheyFinish() {
+        RecordingCallback callback = new RecordingCallback();
+        ResultDispatcher dispatcher = new ResultDispatcher(new CompressionJob(2), 2, null, callback, DIRECT, false);
+        dispatcher.dispatch(new CompressResult(1, null, "b"));
+        assertNull(callback.mComplete);
+        dispatcher.dispatch(new CompressResult(0, null, "a"));
+        assertEquals(Arrays.asList("result1", "1/2", "result0", "2/2"), callback.mEvents);
+        assertEquals("a", callback.mComplete.get(0).getPath());
+    }
+
+    @Test
+    public void listenerGetsTheOutputOrTheSourcePath() {
+        RecordingCallback listener = new RecordingCallback();
+        ResultDispatcher dispatcher = new ResultDispatcher(new CompressionJob(2), 2, listener, null, DIRECT, true);
+        dispatcher.dispatch(new CompressResult(0, source("in.jpg"), "out.jpg"));
+        dispatcher.dispatch(new CompressResult(1, source("broken.jpg"), ""));
+        assertEquals(Arrays.asList("success out.jpg", "failed broken.jpg"), listener.mEvents);
+    }
+
+    @Test
+    public void cancelledBatchDeliversNothing() {
+        RecordingCallback callback = new RecordingCallback();
+        CompressionJob job = new CompressionJob(1);
+        job.cancel();
+        new ResultDispatcher(job, 1, callback, callback, DIRECT, false).dispatch(new CompressResult(0, null, "a"));
+        assertTrue(callback.mEvents.isEmpty());
+        assertNull(callback.mComplete);
+    }
+
+    @Test
+    public void callsNeverOverlapOnAPooledExecutor() throws InterruptedException {
+        final int total = 200;
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch complete = new CountDownLatch(1);
+        CompressCallback callback = new CompressCallback() {
+            @Override
+            public void onResult(CompressResult result) {
+                if (running.incrementAndGet() > 1) {
+                    overlaps.incrementAndGet();
+                }
+                order.add(result.getIndex());
+                Thread.yield();
+                running.decrementAndGet();
+            }
+
+            @Override
+            public void onProgress(int completed, int total) {
+            }
+
+            @Override
+            public void onComplete(List<CompressResult> results) {
+                complete.countDown();
+            }
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            ResultDispatcher dispatcher = new ResultDispatcher(new CompressionJob(total), total, null, callback, pool, true);
+            for (int i = total - 1; i >= 0; i--) {
+                dispatcher.dispatch(new CompressResult(i, null, "out" + i));
+            }
+            assertTrue(complete.await(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(0, overlaps.get());
+        for (int i = 0; i < total; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.blezede.compressor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/10 11:30
+ * Description: The bucketing and eviction {@link BitmapPool} relies on, with byte arrays in place of bitmaps.
+ */
+public class ReusePoolTest {
+
+    private static class ArrayPool extends ReusePool<byte[]> {
+
+        final List<byte[]> mEvicted = new ArrayList<>();
+
+        ArrayPool(long maxSize) {
+            super(maxSize);
+        }
+
+        @Override
+        int sizeOf(byte[] item) {
+            return item.length;
+        }
+
+        @Override
+        void evict(byte[] item) {
+            mEvicted.add(item);
+        }
+    }
+
+    @Test
+    public void handsOutSmallestItemThatFits() {
+        ArrayPool pool = new ArrayPool(1000);
+        byte[] small = new byte[100];
+        byte[] medium = new byte[200];
+        byte[] large = new byte[400];
+        pool.put(large);
+        pool.put(small);
+        pool.put(medium);
+        assertSame(medium, pool.take(150));
+        assertSame(large, pool.take(150));
+        assertNull(pool.take(150));
+        assertSame(small, pool.take(100));
+        assertEquals(0, pool.getSize());
+    }
+
+    @Test
+    public void doesNotHandOutItemsFarTooLarge() {
+        ArrayPool pool = new ArrayPool(1000);
+        pool.put(new byte[500]);
+        assertNull(pool.take(100));
+        assertNotNull(pool.take(125));
+    }
+
+    @Test
+    public void evictsLeastRecentlyReleasedFirst() {
+        ArrayPool pool = new ArrayPool(300);
+        byte[] first = new byte[100];
+        byte[] second = new byte[100];
+        byte[] third = new byte[100];
+        byte[] fourth = new byte[100];
+        pool.put(first);
+        pool.put(second);
+        pool.put(third);
+        assertTrue(pool.mEvicted.isEmpty());
+        pool.put(fourth);
+        assertEquals(1, pool.mEvicted.size());
+        assertSame(first, pool.mEvicted.get(0));
+        assertEquals(300, pool.getSize());
+    }
+
+    @Test
+    public void rejectsItemsLargerThanThePool() {
+        ArrayPool pool = new ArrayPool(100);
+        byte[] item = new byte[101];
+        pool.put(item);
+        assertSame(item, pool.mEvicted.get(0));
+        assertEquals(0, pool.getSize());
+    }
+
+    @Test
+    public void shrinkingEvictsDownToTheNewSize() {
+        ArrayPool pool = new ArrayPool(1000);
+        for (int i = 0; i < 5; i++) {
+            pool.put(new byte[100]);
+        }
+        pool.setMaxSize(250);
+        assertEquals(3, pool.mEvicted.size());
+        assertEquals(200, pool.getSize());
+        pool.setMaxSize(-1);
+        assertEquals(0, pool.getSize());
+    }
+
+    @Test
+    public void clearEvictsEverything() {
+        ArrayPool pool = new ArrayPool(1000);
+        pool.put(new byte[100]);
+        pool.put(new byte[200]);
+        pool.clear();
+        assertEquals(2, pool.mEvicted.size());
+        assertEquals(0, pool.getSize());
+        assertNull(pool.take(1));
+    }
+
+    @Test
+    public void takenItemIsNoLongerEvicted() {
+        ArrayPool pool = new ArrayPool(1000);
+        byte[] item = new byte[100];
+        pool.put(item);
+        assertSame(item, pool.take(100));
+        pool.clear();
+        assertTrue(pool.mEvicted.isEmpty());
+    }
+}
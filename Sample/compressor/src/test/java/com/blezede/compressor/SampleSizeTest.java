@@ -0,0 +1,50 @@
+package com.blezede.compressor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/10 17:05
+ * Description: {@link SampleSize} picks the sampling that the exact-size decode scales down from.
+ */
+public class SampleSizeTest {
+
+    @Test
+    public void sampleIsTheLargestPowerOfTwoStillAtLeastTheScale() {
+        assertEquals(1, SampleSize.forScale(1f));
+        assertEquals(1, SampleSize.forScale(0.6f));
+        assertEquals(2, SampleSize.forScale(0.5f));
+        assertEquals(2, SampleSize.forScale(0.32f));
+        assertEquals(4, SampleSize.forScale(0.25f));
+        assertEquals(4, SampleSize.forScale(0.2f));
+        assertEquals(8, SampleSize.forScale(0.1f));
+    }
+
+    @Test
+    public void sampledImageIsNeverSmallerThanTheTarget() {
+        for (int longSide = 100; longSide <= 12000; longSide += 37) {
+            for (float scale = 0.02f; scale < 1f; scale += 0.013f) {
+                int sample = SampleSize.forScale(scale);
+                assertTrue(longSide / sample >= Math.floor(longSide * scale));
+            }
+        }
+    }
+
+    @Test
+    public void invalidScaleDecodesWhole() {
+        assertEquals(1, SampleSize.forScale(0f));
+        assertEquals(1, SampleSize.forScale(-1f));
+        assertEquals(1, SampleSize.forScale(2f));
+    }
+
+    @Test
+    public void defaultSamplingKeepsSmallPhotosWhole() {
+        assertEquals(1, SampleSize.computeSize(1200, 900));
+        assertEquals(2, SampleSize.computeSize(4000, 3000));
+        assertEquals(4, SampleSize.computeSize(8000, 6000));
+        // long panoramas are sampled by their short side ratio
+        assertTrue(SampleSize.computeSize(12000, 2000) > 1);
+    }
+}
@@ -0,0 +1,59 @@
+package com.blezede.compressor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/10 16:10
+ * Description: The scale decisions {@link Engine} and the benchmark share through {@link ScalePlan}.
+ */
+public class ScalePlanTest {
+
+    @Test
+    public void maxWidthOrHeightBoundsTheLongSide() {
+        assertEquals(0.32f, ScalePlan.getScale(4000, 3000, 1280), 1e-6);
+        assertEquals(0.32f, ScalePlan.getScale(3000, 4000, 1280), 1e-6);
+        // never upscales
+        assertEquals(1f, ScalePlan.getScale(800, 600, 1280), 0);
+    }
+
+    @Test
+    public void defaultScaleFollowsTheSampleSize() {
+        assertEquals(1f, ScalePlan.getScale(1200, 900, 0), 0);
+        assertEquals(0.5f, ScalePlan.getScale(4000, 3000, 0), 0);
+        assertEquals(1f / SampleSize.computeSize(1080, 4000), ScalePlan.getScale(1080, 4000, 0), 0);
+    }
+
+    @Test
+    public void planDecodesByPowerOfTwoAndTargetsTheExactSize() {
+        ScalePlan plan = new ScalePlan(4000, 3000, 0.32f);
+        assertEquals(2, plan.sampleSize);
+        assertEquals(1280, plan.width);
+        assertEquals(960, plan.height);
+        assertEquals(1280, plan.getLongSide());
+
+        ScalePlan whole = new ScalePlan(800, 600, 1f);
+        assertEquals(1, whole.sampleSize);
+        assertEquals(800, whole.width);
+    }
+
+    @Test
+    public void planNeverShrinksASideToNothing() {
+        ScalePlan plan = new ScalePlan(10000, 2, 0.01f);
+        assertEquals(100, plan.width);
+        assertEquals(1, plan.height);
+    }
+
+    @Test
+    public void remainingScaleCoversWhatSamplingLeft() {
+        ScalePlan plan = new ScalePlan(4000, 3000, 0.32f);
+        // a codec that only samples returns 2000x1500
+        assertEquals(1280 / 2000f, plan.getRemainingScale(2000, 1500), 1e-6);
+        // one that scaled while decoding is done, a pixel of rounding is tolerated
+        assertEquals(0, plan.getRemainingScale(1280, 960), 0);
+        assertEquals(0, plan.getRemainingScale(1281, 961), 0);
+        assertEquals(0, plan.getRemainingScale(960, 1280), 0);
+    }
+}
@@ -0,0 +1,59 @@
+package com.blezede.compressor;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/10 15:00
+ * Description: {@link SequenceNameStrategy} names stay unique when many workers ask at the same time.
+ */
+public class SequenceNameStrategyTest {
+
+    @Test
+    public void namesCarryTheFormatExtension() {
+        SequenceNameStrategy strategy = new SequenceNameStrategy();
+        assertTrue(strategy.getName(null, Bitmap.CompressFormat.JPEG).endsWith(".jpeg"));
+        assertTrue(strategy.getName(null, Bitmap.CompressFormat.PNG).endsWith(".png"));
+        assertTrue(strategy.getName(null, Bitmap.CompressFormat.WEBP).matches("\\d+_[0-9a-z]+_\\d+\\.webp"));
+    }
+
+    @Test
+    public void concurrentNamesNeverCollide() throws InterruptedException {
+        final int threads = 8;
+        final int perThread = 2000;
+        final SequenceNameStrategy strategy = new SequenceNameStrategy();
+        final Set<String> names = Collections.synchronizedSet(new HashSet<String>());
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < perThread; j++) {
+                        names.add(strategy.getName(null, Bitmap.CompressFormat.JPEG));
+                    }
+                }
+            });
+            workers[i].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(threads * perThread, names.size());
+    }
+}
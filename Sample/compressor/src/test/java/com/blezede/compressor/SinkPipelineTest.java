@@ -0,0 +1,161 @@
+package com.blezede.compressor;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/11 9:30
+ * Description: {@link SinkPipeline} writes on its own thread, commits or aborts, and holds back workers
+ * once the sink falls behind.
+ */
+public class SinkPipelineTest {
+
+    private static class MemorySink implements OutputSink {
+
+        final List<String> mCommitted = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> mAborted = Collections.synchronizedList(new ArrayList<String>());
+        volatile CountDownLatch mGate;
+        volatile boolean mFailCommit;
+
+        @Override
+        public OutputStream open(InputStreamProvider source, Bitmap.CompressFormat format) throws IOException {
+            if (mGate != null) {
+                try {
+                    mGate.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            return new ByteArrayOutputStream();
+        }
+
+        @Override
+        public String commit(InputStreamProvider source, OutputStream out) throws IOException {
+            if (mFailCommit) {
+                throw new IOException("upload failed");
+            }
+            String result = new String(((ByteArrayOutputStream) out).toByteArray(), "UTF-8");
+            mCommitted.add(result);
+            return result;
+        }
+
+        @Override
+        public void abort(InputStreamProvider source, OutputStream out) {
+            mAborted.add(new String(((ByteArrayOutputStream) out).toByteArray()));
+        }
+    }
+
+    private static class ResultCallback implements SinkPipeline.Callback {
+
+        final CountDownLatch mDone;
+        final List<String> mResults = Collections.synchronizedList(new ArrayList<String>());
+
+        ResultCallback(int count) {
+            this.mDone = new CountDownLatch(count);
+        }
+
+        @Override
+        public void onWritten(String result) {
+            mResults.add(result);
+            mDone.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(mDone.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private static ByteBuffer bytes(String text, boolean direct) {
+        byte[] data = text.getBytes();
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(data.length) : ByteBuffer.allocate(data.length);
+        buffer.put(data);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void writesHeapAndDirectBuffersToTheSink() throws InterruptedException {
+        MemorySink sink = new MemorySink();
+        SinkPipeline pipeline = new SinkPipeline(sink, Bitmap.CompressFormat.JPEG, 2);
+        ResultCallback callback = new ResultCallback(2);
+        pipeline.submit(null, bytes("heap", false), null, callback);
+        pipeline.submit(null, bytes("direct", true), null, callback);
+        callback.await();
+        assertEquals(Arrays.asList("heap", "direct"), sink.mCommitted);
+        assertEquals(Arrays.asList("heap", "direct"), callback.mResults);
+    }
+
+    @Test
+    public void failedSourceNeverReachesTheSink() throws InterruptedException {
+        MemorySink sink = new MemorySink();
+        ResultCallback callback = new ResultCallback(1);
+        new SinkPipeline(sink, Bitmap.CompressFormat.JPEG, 2).submit(null, null, null, callback);
+        // reported on the submitting thread
+        assertEquals(0, callback.mDone.getCount());
+        assertEquals("", callback.mResults.get(0));
+        assertTrue(sink.mCommitted.isEmpty());
+    }
+
+    @Test
+    public void failedCommitIsAborted() throws InterruptedException {
+        MemorySink sink = new MemorySink();
+        sink.mFailCommit = true;
+        ResultCallback callback = new ResultCallback(1);
+        new SinkPipeline(sink, Bitmap.CompressFormat.JPEG, 2).submit(null, bytes("partial", false), null, callback);
+        callback.await();
+        assertEquals("", callback.mResults.get(0));
+        assertEquals("partial", sink.mAborted.get(0));
+    }
+
+    @Test
+    public void cancelledJobSkipsTheSink() throws InterruptedException {
+        MemorySink sink = new MemorySink();
+        CompressionJob job = new CompressionJob(1);
+        job.cancel();
+        ResultCallback callback = new ResultCallback(1);
+        new SinkPipeline(sink, Bitmap.CompressFormat.JPEG, 2).submit(null, bytes("skipped", false), job, callback);
+        callback.await();
+        assertEquals("", callback.mResults.get(0));
+        assertTrue(sink.mCommitted.isEmpty());
+    }
+
+    @Test
+    public void fullPipelineBlocksTheWorker() throws InterruptedException {
+        final MemorySink sink = new MemorySink();
+        sink.mGate = new CountDownLatch(1);
+        final SinkPipeline pipeline = new SinkPipeline(sink, Bitmap.CompressFormat.JPEG, 1);
+        final ResultCallback callback = new ResultCallback(2);
+        pipeline.submit(null, bytes("first", false), null, callback);
+        final CountDownLatch submitted = new CountDownLatch(1);
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                pipeline.submit(null, bytes("second", false), null, callback);
+                submitted.countDown();
+            }
+        });
+        worker.start();
+        assertFalse(submitted.await(100, TimeUnit.MILLISECONDS));
+
+        sink.mGate.countDown();
+        assertTrue(submitted.await(5, TimeUnit.SECONDS));
+        callback.await();
+        assertEquals(Arrays.asList("first", "second"), sink.mCommitted);
+        worker.join();
+    }
+}
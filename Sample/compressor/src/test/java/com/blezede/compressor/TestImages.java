@@ -0,0 +1,134 @@
+package com.blezede.compressor;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import javax.imageio.ImageIO;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/11 10:05
+ * Description: Encoded images for the tests, written by ImageIO where it can and byte by byte where only
+ * the header matters.
+ */
+class TestImages {
+
+    private TestImages() {
+    }
+
+    /**
+     * @param type a {@link BufferedImage} type, e.g. TYPE_BYTE_GRAY for a grayscale image
+     */
+    static byte[] encode(String format, int width, int height, int type) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, 0x80000000 | (x * 7 & 0xFF) << 16 | (y * 5 & 0xFF) << 8 | 77);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, format, out)) {
+            throw new IOException("no writer for " + format);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * A PNG of the given color type, with a tRNS chunk before its (empty) pixels if asked for.
+     */
+    static byte[] png(int width, int height, int colorType, boolean trns) {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.putLong(0x89504E470D0A1A0AL);
+        buffer.putInt(13).putInt(0x49484452).putInt(width).putInt(height)
+                .put((byte) 8).put((byte) colorType).put((byte) 0).put((byte) 0).put((byte) 0).putInt(0);
+        if (trns) {
+            buffer.putInt(2).putInt(0x74524E53).putShort((short) 0).putInt(0);
+        }
+        buffer.putInt(0).putInt(0x49444154).putInt(0);
+        return toArray(buffer);
+    }
+
+    static byte[] webpVp8x(int width, int height, boolean alpha) {
+        ByteBuffer buffer = riff(0x56503858, 10);
+        buffer.put((byte) (alpha ? 0x10 : 0)).put(new byte[3]);
+        putLittleEndian(buffer, width - 1, 3);
+        putLittleEndian(buffer, height - 1, 3);
+        return toArray(buffer);
+    }
+
+    static byte[] webpVp8l(int width, int height, boolean alpha) {
+        ByteBuffer buffer = riff(0x5650384C, 5);
+        buffer.put((byte) 0x2F);
+        putLittleEndian(buffer, (width - 1) | (height - 1) << 14 | (alpha ? 1 : 0) << 28, 4);
+        return toArray(buffer);
+    }
+
+    static byte[] webpVp8(int width, int height) {
+        ByteBuffer buffer = riff(0x56503820, 10);
+        buffer.put(new byte[3]).put((byte) 0x9D).put((byte) 0x01).put((byte) 0x2A);
+        putLittleEndian(buffer, width, 2);
+        putLittleEndian(buffer, height, 2);
+        return toArray(buffer);
+    }
+
+    static byte[] gif(int width, int height) {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.put("GIF89a".getBytes());
+        putLittleEndian(buffer, width, 2);
+        putLittleEndian(buffer, height, 2);
+        return toArray(buffer);
+    }
+
+    /**
+     * Insert an APP1 segment right after the SOI of {@code jpeg}.
+     */
+    static byte[] withApp1(byte[] jpeg, byte[] tiff) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(jpeg, 0, 2);
+        int length = 2 + 6 + tiff.length;
+        out.write(0xFF);
+        out.write(0xE1);
+        out.write(length >> 8);
+        out.write(length & 0xFF);
+        out.write(new byte[]{'E', 'x', 'i', 'f', 0, 0}, 0, 6);
+        out.write(tiff, 0, tiff.length);
+        out.write(jpeg, 2, jpeg.length - 2);
+        return out.toByteArray();
+    }
+
+    /**
+     * A little endian TIFF block whose IFD0 holds only the orientation.
+     */
+    static byte[] orientation(int orientation) {
+        ByteBuffer tiff = ByteBuffer.allocate(26).order(ByteOrder.LITTLE_ENDIAN);
+        tiff.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(8);
+        tiff.putShort((short) 1);
+        tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0);
+        tiff.putInt(0);
+        return tiff.array();
+    }
+
+    private static ByteBuffer riff(int chunk, int chunkSize) {
+        ByteBuffer buffer = ByteBuffer.allocate(20 + chunkSize);
+        buffer.putInt(0x52494646);
+        putLittleEndian(buffer, 12 + chunkSize, 4);
+        buffer.putInt(0x57454250).putInt(chunk);
+        putLittleEndian(buffer, chunkSize, 4);
+        return buffer;
+    }
+
+    private static void putLittleEndian(ByteBuffer buffer, int value, int count) {
+        for (int i = 0; i < count; i++) {
+            buffer.put((byte) (value >>> (8 * i)));
+        }
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, bytes, 0, bytes.length);
+        return bytes;
+    }
+}
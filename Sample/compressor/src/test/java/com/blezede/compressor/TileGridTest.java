@@ -0,0 +1,92 @@
+package com.blezede.compressor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/10 16:50
+ * Description: The tiles {@link TiledDecoder} decodes cover the source exactly once and stay inside their regions.
+ */
+public class TileGridTest {
+
+    @Test
+    public void tilesCoverTheSourceExactlyOnce() {
+        for (int sample : new int[]{1, 2, 4}) {
+            int width = 5000;
+            int height = 3001;
+            int[][] covered = new int[height][width];
+            TileGrid grid = new TileGrid(width, height, 512, 2, sample);
+            while (grid.next()) {
+                for (int y = grid.top; y < grid.bottom; y++) {
+                    for (int x = grid.left; x < grid.right; x++) {
+                        covered[y][x]++;
+                    }
+                }
+            }
+            for (int[] row : covered) {
+                for (int count : row) {
+                    assertEquals(1, count);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void tileIsPickedFromInsideItsPaddedRegion() {
+        for (int sample : new int[]{1, 2, 4, 8}) {
+            TileGrid grid = new TileGrid(7000, 4999, 512, 2, sample);
+            while (grid.next()) {
+                assertTrue(grid.regionLeft >= 0 && grid.regionTop >= 0);
+                assertTrue(grid.regionRight <= 7000 && grid.regionBottom <= 4999);
+                assertTrue(grid.regionLeft <= grid.left && grid.regionRight >= grid.right);
+                assertTrue(grid.regionTop <= grid.top && grid.regionBottom >= grid.bottom);
+                // the region decoder rounds the sampled size up
+                int decodedWidth = (grid.regionRight - grid.regionLeft + sample - 1) / sample;
+                int decodedHeight = (grid.regionBottom - grid.regionTop + sample - 1) / sample;
+                assertTrue(grid.srcLeft >= 0 && grid.srcRight <= decodedWidth);
+                assertTrue(grid.srcTop >= 0 && grid.srcBottom <= decodedHeight);
+                assertTrue(grid.srcRight - grid.srcLeft <= 512);
+            }
+        }
+    }
+
+    @Test
+    public void everyDecodedTileFitsTheTileBitmap() {
+        // the tile bitmap, and the footprint Engine budgets for it, is DECODED_TILE_SIZE on each edge
+        for (int sample : new int[]{1, 2, 4, 8}) {
+            TileGrid grid = new TileGrid(9000, 6001, TiledDecoder.TILE_SIZE, 2, sample);
+            int largest = 0;
+            while (grid.next()) {
+                int decodedWidth = (grid.regionRight - grid.regionLeft + sample - 1) / sample;
+                int decodedHeight = (grid.regionBottom - grid.regionTop + sample - 1) / sample;
+                largest = Math.max(largest, Math.max(decodedWidth, decodedHeight));
+            }
+            assertTrue(largest <= TiledDecoder.DECODED_TILE_SIZE);
+            assertTrue(largest > TiledDecoder.TILE_SIZE);
+        }
+    }
+
+    @Test
+    public void innerTilesArePaddedOnEverySide() {
+        TileGrid grid = new TileGrid(2048, 2048, 512, 2, 2);
+        int tiles = 0;
+        while (grid.next()) {
+            tiles++;
+            if (grid.left > 0) {
+                assertEquals(grid.left - 4, grid.regionLeft);
+                assertEquals(2, grid.srcLeft);
+            } else {
+                assertEquals(0, grid.srcLeft);
+            }
+        }
+        assertEquals(4, tiles);
+    }
+
+    @Test
+    public void emptySourceHasNoTiles() {
+        assertFalse(new TileGrid(0, 100, 512, 2, 1).next());
+        assertFalse(new TileGrid(100, 0, 512, 2, 1).next());
+    }
+}
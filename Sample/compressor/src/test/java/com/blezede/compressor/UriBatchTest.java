@@ -0,0 +1,61 @@
+package com.blezede.compressor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/11 11:00
+ * Description: How {@link UriBatch} groups MediaStore items into collections and splits them into queries.
+ */
+public class UriBatchTest {
+
+    @Test
+    public void itemsShareTheirCollection() {
+        assertEquals("content://media/external/images/media",
+                UriBatch.getCollection("content://media/external/images/media/42", "42"));
+        assertEquals("content://media/external/video/media",
+                UriBatch.getCollection("content://media/external/video/media/7", "7"));
+    }
+
+    @Test
+    public void onlyNumericIdsAreBatched() {
+        assertNull(UriBatch.getCollection("content://media/external/images/media", "media"));
+        assertNull(UriBatch.getCollection("content://media/external/images/media/-1", "-1"));
+        assertNull(UriBatch.getCollection("content://media/external/images/media/", ""));
+        assertNull(UriBatch.getCollection("content://media/external/images/media/1", null));
+        // a last segment that is not the tail of the Uri, e.g. an encoded query
+        assertNull(UriBatch.getCollection("content://media/external/images/media/1?x=1", "1"));
+    }
+
+    @Test
+    public void selectionHasOneArgumentPerId() {
+        assertEquals("_id IN (?)", UriBatch.getSelection(1));
+        assertEquals("_id IN (?,?,?)", UriBatch.getSelection(3));
+    }
+
+    @Test
+    public void splitKeepsEveryIdInOrder() {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < UriBatch.MAX_ARGS * 2 + 1; i++) {
+            ids.add(i);
+        }
+        List<List<Integer>> parts = UriBatch.split(ids, UriBatch.MAX_ARGS);
+        assertEquals(3, parts.size());
+        assertEquals(UriBatch.MAX_ARGS, parts.get(0).size());
+        assertEquals(UriBatch.MAX_ARGS, parts.get(1).size());
+        assertEquals(Arrays.asList(UriBatch.MAX_ARGS * 2), parts.get(2));
+        assertEquals(Integer.valueOf(UriBatch.MAX_ARGS), parts.get(1).get(0));
+    }
+
+    @Test
+    public void splitOfNothingIsNoQuery() {
+        assertTrue(UriBatch.split(new ArrayList<String>(), UriBatch.MAX_ARGS).isEmpty());
+        assertEquals(1, UriBatch.split(Arrays.asList("1", "2"), UriBatch.MAX_ARGS).size());
+    }
+}
@@ -0,0 +1,68 @@
+package com.blezede.compressor;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * com.blezede.compressor
+ * Time: 2019/5/11 14:10
+ * Description: Several outputs of one decode: the order they are written in and what their result reports.
+ */
+public class VariantTest {
+
+    @Test
+    public void variantsAreWrittenFromTheLargestDown() {
+        assertArrayEquals(new Integer[]{1, 2, 0}, Engine.getVariantOrder(new int[]{160, 2048, 1080}));
+        // equal sizes keep the order they were added in
+        assertArrayEquals(new Integer[]{2, 0, 1}, Engine.getVariantOrder(new int[]{500, 500, 900}));
+        assertArrayEquals(new Integer[]{0}, Engine.getVariantOrder(new int[]{320}));
+    }
+
+    @Test
+    public void resultHoldsEveryVariantAndTheFirstAsItsPath() {
+        CompressResult result = new CompressResult(3, null, new String[]{"a_full.jpg", "a_thumb.jpg"});
+        assertTrue(result.isSuccess());
+        assertEquals("a_full.jpg", result.getPath());
+        assertEquals(Arrays.asList("a_full.jpg", "a_thumb.jpg"), result.getVariantPaths());
+        assertEquals(3, result.getIndex());
+        assertEquals("", result.getSourcePath());
+    }
+
+    @Test
+    public void oneFailedVariantFailsTheSource() {
+        CompressResult result = new CompressResult(0, null, new String[]{"a_full.jpg", ""});
+        assertFalse(result.isSuccess());
+        assertEquals("", result.getPath());
+        // the variants that were written are still reported
+        assertEquals(Arrays.asList("a_full.jpg", ""), result.getVariantPaths());
+        assertFalse(new CompressResult(0, null, new String[]{"a_full.jpg", null}).isSuccess());
+    }
+
+    @Test
+    public void singleOutputIsItsOnlyVariant() {
+        assertEquals(Arrays.asList("a.jpg"), new CompressResult(0, null, "a.jpg").getVariantPaths());
+        CompressResult failed = new CompressResult(0, null, (String) null);
+        assertFalse(failed.isSuccess());
+        assertEquals(Arrays.asList(""), failed.getVariantPaths());
+    }
+
+    @Test
+    public void unsetOptionsFallBackToTheBuilder() {
+        Variant variant = new Variant(null, 320).quality(0).maxFileSize(-1);
+        assertEquals("", variant.getName());
+        assertEquals(0, variant.getQuality());
+        assertEquals(0f, variant.getMaxFileSize(), 0f);
+        assertNull(variant.getCompressFormat());
+
+        Variant thumb = new Variant("thumb", 160).quality(60).maxFileSize(20 * 1024).compressFormat(Bitmap.CompressFormat.WEBP);
+        assertEquals(60, thumb.getQuality());
+        assertEquals(20 * 1024, thumb.getMaxFileSize(), 0f);
+        assertEquals(Bitmap.CompressFormat.WEBP, thumb.getCompressFormat());
+        assertEquals(160f, thumb.getMaxWidthOrHeight(), 0f);
+    }
+}